@@ -0,0 +1,189 @@
+package jpurethermal;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The {@link FrameTracer} emitting JFR events. Only loaded by name, so the
+ * rest of the application still runs on a JVM without jdk.jfr.
+ * <p>
+ * An event object is only allocated when its type is enabled, the check
+ * goes through one shared instance per type.
+ */
+final class JfrFrameTracer implements FrameTracer {
+
+	@Name("jpurethermal.Capture")
+	@Label("Frame Capture")
+	@Description("Frame received from the source and copied into the frame ring")
+	@Category({"PureThermal", "Pipeline"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class CaptureEvent extends Event {
+		@Label("Sequence")
+		long sequence;
+		@Label("Sensor Timestamp")
+		@Timespan(Timespan.NANOSECONDS)
+		long timestamp;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Frame Size")
+		@DataAmount
+		long frameBytes;
+		@Label("Copy Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long copyTime;
+		@Label("Queued")
+		@Description("False if the frame ring dropped the frame")
+		boolean queued;
+	}
+
+	@Name("jpurethermal.Analysis")
+	@Label("Frame Analysis")
+	@Description("Conversion, filter, statistics and publication of the results of a frame")
+	@Category({"PureThermal", "Pipeline"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class AnalysisEvent extends Event {
+		@Label("Sequence")
+		long sequence;
+		@Label("Sensor Timestamp")
+		@Timespan(Timespan.NANOSECONDS)
+		long timestamp;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Frame Size")
+		@DataAmount
+		long frameBytes;
+		@Label("Convert Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long convertTime;
+		@Label("Filter Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long filterTime;
+		@Label("Statistics Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long statsTime;
+		@Label("Publish Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long publishTime;
+		@Label("Capture To Result")
+		@Timespan(Timespan.NANOSECONDS)
+		long captureToResult;
+	}
+
+	@Name("jpurethermal.Render")
+	@Label("Chart Rendering")
+	@Description("Update of the charts and views from the newest snapshot, on the EDT")
+	@Category({"PureThermal", "Pipeline"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class RenderEvent extends Event {
+		@Label("Sequence")
+		long sequence;
+		@Label("Sensor Timestamp")
+		@Timespan(Timespan.NANOSECONDS)
+		long timestamp;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Frame Size")
+		@DataAmount
+		long frameBytes;
+		@Label("Render Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long renderTime;
+		@Label("Glass To Glass")
+		@Timespan(Timespan.NANOSECONDS)
+		long glassToGlass;
+	}
+
+	private static final CaptureEvent CAPTURE = new CaptureEvent();
+	private static final AnalysisEvent ANALYSIS = new AnalysisEvent();
+	private static final RenderEvent RENDER = new RenderEvent();
+
+	@Override
+	public Object beginCapture() {
+		if (!CAPTURE.isEnabled()) return null;
+		CaptureEvent event = new CaptureEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endCapture(Object e, long sequence, long timestamp, int width, int height, long copyNanos, boolean queued) {
+		if (e == null) return;
+		CaptureEvent event = (CaptureEvent) e;
+		event.end();
+		event.sequence = sequence;
+		event.timestamp = timestamp;
+		event.width = width;
+		event.height = height;
+		event.frameBytes = 2L*width*height;
+		event.copyTime = copyNanos;
+		event.queued = queued;
+		event.commit();
+	}
+
+	@Override
+	public Object beginAnalysis() {
+		if (!ANALYSIS.isEnabled()) return null;
+		AnalysisEvent event = new AnalysisEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endAnalysis(Object e, ThermalFrame frame, long convertNanos, long filterNanos, long statsNanos,
+			long publishNanos, long captureToResultNanos) {
+		if (e == null) return;
+		AnalysisEvent event = (AnalysisEvent) e;
+		event.end();
+		event.sequence = frame.getSequence();
+		event.timestamp = frame.getTimestamp();
+		event.width = frame.getWidth();
+		event.height = frame.getHeight();
+		event.frameBytes = 2L*frame.getPixelCount();
+		event.convertTime = convertNanos;
+		event.filterTime = filterNanos;
+		event.statsTime = statsNanos;
+		event.publishTime = publishNanos;
+		event.captureToResult = captureToResultNanos;
+		event.commit();
+	}
+
+	@Override
+	public Object beginRender() {
+		if (!RENDER.isEnabled()) return null;
+		RenderEvent event = new RenderEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endRender(Object e, AnalysisSnapshot snapshot, long renderNanos, long glassToGlassNanos) {
+		if (e == null) return;
+		RenderEvent event = (RenderEvent) e;
+		event.end();
+		event.sequence = snapshot.getSequence();
+		event.timestamp = snapshot.getTimestamp();
+		event.width = snapshot.getWidth();
+		event.height = snapshot.getHeight();
+		event.frameBytes = 2L*snapshot.getWidth()*snapshot.getHeight();
+		event.renderTime = renderNanos;
+		event.glassToGlass = glassToGlassNanos;
+		event.commit();
+	}
+
+}
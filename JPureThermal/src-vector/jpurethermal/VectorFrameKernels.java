@@ -0,0 +1,78 @@
+package jpurethermal;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels on the Vector API, JDK 16+ with --add-modules jdk.incubator.vector,
+ * see {@link FrameKernels}. The loops over a row are flat so the vectors stay
+ * in registers.
+ * <p>
+ * Without AVX the JIT of JDK 17 only compiles the integer lanes to SIMD,
+ * masks run many times slower than scalar code, so the search of the
+ * threshold is scalar below 256 bits vectors. The lookup stays scalar: the
+ * table is in cache and gathers were not faster than scalar loads, nor the
+ * linear conversion computed in double lanes.
+ */
+public class VectorFrameKernels extends ScalarFrameKernels {
+	private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+	private final boolean wide = INTS.vectorBitSize() >= 256;
+
+	@Override
+	public long minMaxSum(short[] raw, int from, int to, int[] minMax) {
+		IntVector min = IntVector.broadcast(INTS, 0xFFFF);
+		IntVector max = IntVector.zero(INTS);
+		IntVector sum = IntVector.zero(INTS);
+		int step = SHORTS.length();
+		int i = from;
+		for (; i <= to-step; i += step) {
+			// two unsigned shorts per int lane, the order does not matter
+			IntVector pairs = ShortVector.fromArray(SHORTS, raw, i).reinterpretAsInts();
+			IntVector a = pairs.and(0xFFFF);
+			IntVector b = pairs.lanewise(VectorOperators.LSHR, 16);
+			min = min.min(a).min(b);
+			max = max.max(a).max(b);
+			sum = sum.add(a).add(b);
+		}
+		int lo = Math.min(minMax[0], min.reduceLanes(VectorOperators.MIN));
+		int hi = Math.max(minMax[1], max.reduceLanes(VectorOperators.MAX));
+		int s = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			int v = raw[i] & 0xFFFF;
+			lo = Math.min(lo, v);
+			hi = Math.max(hi, v);
+			s += v;
+		}
+		minMax[0] = lo;
+		minMax[1] = hi;
+		return s & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public int firstAtLeast(float[] t, int from, int to, float threshold) {
+		if (!wide) return super.firstAtLeast(t, from, to, threshold);
+		int step = FLOATS.length();
+		int i = from;
+		for (; i <= to-step; i += step) {
+			VectorMask<Float> above = FloatVector.fromArray(FLOATS, t, i).compare(VectorOperators.GE, threshold);
+			if (above.anyTrue()) return i+above.firstTrue();
+		}
+		for (; i < to; i++) {
+			if (t[i] >= threshold) return i;
+		}
+		return to;
+	}
+
+	@Override
+	public String toString() {
+		return "vector "+INTS.vectorBitSize()+" bits";
+	}
+
+}
@@ -0,0 +1,191 @@
+package jpurethermal;
+
+/**
+ * Results of the analysis of one frame, in the flat double arrays used by
+ * the jdve data sets. Filled by the analysis thread and published by a
+ * {@link SnapshotPool}, it is not changed while a reader holds it.
+ */
+public class AnalysisSnapshot {
+	private int width, height, bins;
+	private long version = -1;
+	private long sequence;
+	private long timestamp;
+	private long captureNanos;
+	private double pixMin, pixMax;
+	// the temperatures, or the equalized frame possibly upscaled
+	private int imageWidth, imageHeight;
+	private double imageMin, imageMax;
+	private double[] image = new double[0];
+	private double[] imageXScale = new double[0];
+	private double[] imageYScale = new double[0];
+	private double[] horPixelScale = new double[0];
+	private double[] vertPixelScale = new double[0];
+	private double[] histogramX = new double[0];
+	private double[] histogramY = new double[0];
+	// [row][bin] and [bin][column], flattened row by row
+	private double[] horProjection = new double[0];
+	private double[] vertProjection = new double[0];
+
+	/**
+	 * Copies the frame and the analysis results, the image in degrees over [pixMin, pixMax].
+	 */
+	public void fill(ThermalFrame frame, double pixMin, double pixMax, double[] histogramX, double[] histogramY,
+			double[][] horProjection, double[][] vertProjection) {
+		fillResults(frame, pixMin, pixMax, histogramX, histogramY, horProjection, vertProjection);
+		resizeImage(width, height, 1);
+		ThermalFrameDataSet.copy(frame, image);
+		imageMin = pixMin;
+		imageMax = pixMax;
+	}
+
+	/**
+	 * Copies the analysis results, the image equalized by the CLAHE over
+	 * [0, 1] and scale times larger than the frame.
+	 */
+	public void fillEqualized(ThermalFrame frame, ClaheEqualizer clahe, int scale, double pixMin, double pixMax,
+			double[] histogramX, double[] histogramY, double[][] horProjection, double[][] vertProjection) {
+		fillResults(frame, pixMin, pixMax, histogramX, histogramY, horProjection, vertProjection);
+		resizeImage(width*scale, height*scale, scale);
+		clahe.equalize(frame, image, imageWidth, imageHeight);
+		imageMin = 0;
+		imageMax = 1;
+	}
+
+	private void fillResults(ThermalFrame frame, double pixMin, double pixMax, double[] histogramX, double[] histogramY,
+			double[][] horProjection, double[][] vertProjection) {
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+		int b = histogramX.length;
+		if (w != width || h != height || b != bins) {
+			width = w;
+			height = h;
+			bins = b;
+			horPixelScale = new double[w];
+			for(int i=0; i<horPixelScale.length; i++) horPixelScale[i] = i;
+			vertPixelScale = new double[h];
+			for(int i=0; i<vertPixelScale.length; i++) vertPixelScale[i] = i;
+			this.histogramX = new double[b];
+			this.histogramY = new double[b];
+			this.horProjection = new double[h*b];
+			this.vertProjection = new double[b*w];
+		}
+
+		this.sequence = frame.getSequence();
+		this.timestamp = frame.getTimestamp();
+		this.captureNanos = frame.getCaptureNanos();
+		this.pixMin = pixMin;
+		this.pixMax = pixMax;
+		System.arraycopy(histogramX, 0, this.histogramX, 0, b);
+		System.arraycopy(histogramY, 0, this.histogramY, 0, b);
+		for (int i = 0; i < h; i++) {
+			System.arraycopy(horProjection[i], 0, this.horProjection, i*b, b);
+		}
+		for (int i = 0; i < b; i++) {
+			System.arraycopy(vertProjection[i], 0, this.vertProjection, i*w, w);
+		}
+	}
+
+	private void resizeImage(int w, int h, int scale) {
+		if (w == imageWidth && h == imageHeight) return;
+		imageWidth = w;
+		imageHeight = h;
+		image = new double[w*h];
+		// centres of the image pixels in frame pixels
+		imageXScale = new double[w];
+		for (int i = 0; i < w; i++) imageXScale[i] = (i+0.5)/scale-0.5;
+		imageYScale = new double[h];
+		for (int i = 0; i < h; i++) imageYScale[i] = (i+0.5)/scale-0.5;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+	public int getHeight() {
+		return height;
+	}
+	public int getBins() {
+		return bins;
+	}
+	/**
+	 * Publication number, set by the {@link SnapshotPool}.
+	 */
+	public long getVersion() {
+		return version;
+	}
+	void setVersion(long version) {
+		this.version = version;
+	}
+	public long getSequence() {
+		return sequence;
+	}
+	/**
+	 * @see ThermalFrame#getTimestamp()
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	/**
+	 * @see ThermalFrame#getCaptureNanos()
+	 */
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+	public double getPixMin() {
+		return pixMin;
+	}
+	public double getPixMax() {
+		return pixMax;
+	}
+	/**
+	 * The image, imageWidth x imageHeight values row by row.
+	 */
+	public double[] getImage() {
+		return image;
+	}
+	public int getImageWidth() {
+		return imageWidth;
+	}
+	public int getImageHeight() {
+		return imageHeight;
+	}
+	/**
+	 * Range of the values of the image for the palette, pixMin and pixMax or 0 and 1 when equalized.
+	 */
+	public double getImageMin() {
+		return imageMin;
+	}
+	public double getImageMax() {
+		return imageMax;
+	}
+	/**
+	 * X of the columns of the image, in frame pixels.
+	 */
+	public double[] getImageXScale() {
+		return imageXScale;
+	}
+	/**
+	 * Y of the rows of the image, in frame pixels.
+	 */
+	public double[] getImageYScale() {
+		return imageYScale;
+	}
+	public double[] getHorPixelScale() {
+		return horPixelScale;
+	}
+	public double[] getVertPixelScale() {
+		return vertPixelScale;
+	}
+	public double[] getHistogramX() {
+		return histogramX;
+	}
+	public double[] getHistogramY() {
+		return histogramY;
+	}
+	public double[] getHorProjection() {
+		return horProjection;
+	}
+	public double[] getVertProjection() {
+		return vertProjection;
+	}
+
+}
@@ -0,0 +1,265 @@
+package jpurethermal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+
+import org.freedesktop.gstreamer.Gst;
+import org.freedesktop.gstreamer.Version;
+
+import utils.Utils;
+
+/**
+ * Runs several cameras in one process. Each camera has its own source,
+ * frame ring and analysis state, and the analysis of all of them runs on a
+ * fixed number of shared worker threads.
+ * <p>
+ * A camera never has more than one task queued or running, and a task
+ * analyses a single frame before going back to the end of the queue, so the
+ * cameras take turns and the queue never holds more tasks than cameras. A
+ * camera producing faster than its share drops frames in its own ring
+ * without holding back the others.
+ */
+public class CameraManager implements AutoCloseable {
+
+	/**
+	 * One camera and its processing chain.
+	 */
+	public static class Camera {
+		private final String name;
+		private final FrameSource source;
+		private final PureThermalAppSinkListener listener;
+		private long lastProcessed, lastOffered, lastRateNanos = System.nanoTime();
+		private double processRate, offerRate;
+
+		Camera(String name, FrameSource source, PureThermalAppSinkListener listener) {
+			this.name = name;
+			this.source = source;
+			this.listener = listener;
+		}
+
+		public String getName() {
+			return name;
+		}
+		public FrameSource getSource() {
+			return source;
+		}
+		public PureThermalAppSinkListener getListener() {
+			return listener;
+		}
+		public long getOfferedCount() {
+			FrameRing ring = listener.getFrameRing();
+			return ring == null ? 0 : ring.getOfferedCount();
+		}
+		public long getProcessedCount() {
+			return listener.getProcessedCount();
+		}
+		public long getDroppedCount() {
+			return listener.getDroppedCount();
+		}
+		/**
+		 * Frames waiting in the ring of the camera.
+		 */
+		public int getQueueDepth() {
+			return listener.getPending();
+		}
+		/**
+		 * Frames analysed per second, as of the last {@link CameraManager#updateRates()}.
+		 */
+		public double getProcessRate() {
+			return processRate;
+		}
+		/**
+		 * Frames received per second, as of the last {@link CameraManager#updateRates()}.
+		 */
+		public double getOfferRate() {
+			return offerRate;
+		}
+
+		synchronized void updateRates(long now) {
+			long processed = getProcessedCount();
+			long offered = getOfferedCount();
+			double seconds = (now-lastRateNanos)/1e9;
+			if (seconds <= 0) return;
+			processRate = (processed-lastProcessed)/seconds;
+			offerRate = (offered-lastOffered)/seconds;
+			lastProcessed = processed;
+			lastOffered = offered;
+			lastRateNanos = now;
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final List<Camera> cameras = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param workers number of analysis threads shared by the cameras
+	 */
+	public CameraManager(int workers) {
+		AtomicInteger threadCount = new AtomicInteger();
+		// at most one task per camera is ever queued
+		executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "PureThermal analysis "+threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Adds a camera, started by {@link #start()}.
+	 */
+	public Camera addCamera(String name, FrameSource source, int ringCapacity, FrameRing.Policy policy) {
+		PureThermalAppSinkListener listener = new PureThermalAppSinkListener(ringCapacity, policy, executor);
+		listener.setPrintRate(false);
+		listener.getMetrics().setName(name);
+		try {
+			listener.getMetrics().register();
+		} catch (JMException e) {
+			System.err.println("metrics of "+name+" not exported: "+e);
+		}
+		Camera camera = new Camera(name, source, listener);
+		cameras.add(camera);
+		return camera;
+	}
+
+	public Camera addCamera(String name, FrameSource source) {
+		return addCamera(name, source, FrameRing.DEFAULT_CAPACITY, FrameRing.Policy.DROP_OLDEST);
+	}
+
+	public void start() {
+		for (Camera camera : cameras) {
+			camera.getSource().start(camera.getListener());
+		}
+	}
+
+	public void stop() {
+		for (Camera camera : cameras) {
+			camera.getSource().stop();
+		}
+	}
+
+	/**
+	 * Stops the sources and the workers, waiting at most a second for the
+	 * analysis running.
+	 */
+	@Override
+	public void close() {
+		stop();
+		for (Camera camera : cameras) {
+			camera.getListener().getMetrics().unregister();
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public List<Camera> getCameras() {
+		return cameras;
+	}
+
+	public int getWorkerCount() {
+		return executor.getCorePoolSize();
+	}
+	/**
+	 * Analysis tasks waiting for a worker, at most one per camera.
+	 */
+	public int getScheduledCount() {
+		return executor.getQueue().size();
+	}
+	/**
+	 * Frames waiting in the rings of all the cameras.
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Camera camera : cameras) depth += camera.getQueueDepth();
+		return depth;
+	}
+	public long getProcessedCount() {
+		long count = 0;
+		for (Camera camera : cameras) count += camera.getProcessedCount();
+		return count;
+	}
+	public long getDroppedCount() {
+		long count = 0;
+		for (Camera camera : cameras) count += camera.getDroppedCount();
+		return count;
+	}
+
+	/**
+	 * Updates the rates of the cameras since the last call.
+	 * @return frames analysed per second for all the cameras
+	 */
+	public double updateRates() {
+		long now = System.nanoTime();
+		double rate = 0;
+		for (Camera camera : cameras) {
+			camera.updateRates(now);
+			rate += camera.getProcessRate();
+		}
+		return rate;
+	}
+
+	/**
+	 * Runs N test cameras on shared workers and prints the rates every second.
+	 * <pre>
+	 * --cameras=4 --workers=2 --source=synthetic|videotest --size=160x120 --rate=9 --duration=10
+	 * </pre>
+	 */
+	public static void main(String[] args) throws Exception {
+		int cameraCount = 4;
+		int workers = 2;
+		String sourceOption = "synthetic";
+		int width = 160, height = 120;
+		double rate = HeadlessPureThermal.SENSOR_RATE;
+		long durationMs = 10_000;
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=')+1);
+			if (arg.startsWith("--cameras=")) cameraCount = Integer.parseInt(value);
+			else if (arg.startsWith("--workers=")) workers = Integer.parseInt(value);
+			else if (arg.startsWith("--source=")) sourceOption = value;
+			else if (arg.startsWith("--size=")) {
+				String[] wh = value.split("x");
+				width = Integer.parseInt(wh[0]);
+				height = Integer.parseInt(wh[1]);
+			}
+			else if (arg.startsWith("--rate=")) rate = Double.parseDouble(value);
+			else if (arg.startsWith("--duration=")) durationMs = (long) (Double.parseDouble(value)*1000);
+			else throw new IllegalArgumentException("unknown option "+arg);
+		}
+		if (sourceOption.equals("videotest")) {
+			Utils.configurePaths();
+			Gst.init(Version.BASELINE, "CameraManager");
+		}
+
+		try (CameraManager manager = new CameraManager(workers)) {
+			for (int i = 0; i < cameraCount; i++) {
+				FrameSource source = sourceOption.equals("videotest") ? GstFrameSource.videoTest(width, height, (int) rate)
+						: new SyntheticFrameSource(width, height, rate, 0);
+				manager.addCamera("camera "+i, source);
+			}
+			manager.start();
+			long end = System.currentTimeMillis()+durationMs;
+			manager.updateRates();
+			while (System.currentTimeMillis() < end) {
+				Thread.sleep(1000);
+				double total = manager.updateRates();
+				List<String> parts = new ArrayList<>();
+				for (Camera camera : manager.getCameras()) {
+					parts.add(String.format("%s %.1f/%.1f fps q%d", camera.getName(), camera.getProcessRate(), camera.getOfferRate(), camera.getQueueDepth()));
+				}
+				System.out.println(String.format("%.1f frames/s on %d workers, %d frames queued, %d dropped | %s",
+						total, manager.getWorkerCount(), manager.getQueueDepth(), manager.getDroppedCount(), String.join(" | ", parts)));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,292 @@
+package jpurethermal;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.Timer;
+
+import cern.jdve.data.DefaultDataSet;
+import cern.jdve.data.DefaultDataSet3D;
+
+/**
+ * Moves the analysis results to the chart data sets at display rate, on the
+ * Event Dispatch Thread.
+ * <p>
+ * The analysis thread fills the snapshots of a {@link SnapshotPool} and
+ * publishes them. A Swing timer acquires the latest snapshot at each tick and
+ * sets the data sets of the visible charts from it, so each chart is updated
+ * at most once per tick whatever the capture rate. The data sets keep
+ * references to the arrays of the snapshot on display, which the EDT holds
+ * until it moves to a newer one. Other readers, like recorders or streamers,
+ * can acquire the snapshots of the same pool from their own threads.
+ */
+public class ChartPublisher implements ResultSink {
+	public static final int DEFAULT_TICK_MS = 16;
+
+	public enum Target {
+		IMAGE, HISTOGRAM, HORIZONTAL_PROJECTION, VERTICAL_PROJECTION
+	}
+
+	public enum ImageMode {
+		/** the temperatures over the displayed range */
+		TEMPERATURE,
+		/** the frame equalized by a {@link ClaheEqualizer}, for the local contrast */
+		CLAHE
+	}
+
+	/**
+	 * A display updated from the snapshots instead of a jdve data set.
+	 */
+	public interface SnapshotView {
+		Component getComponent();
+		/**
+		 * Called on the EDT with the newest snapshot, only while the component is showing.
+		 */
+		void display(AnalysisSnapshot snapshot);
+	}
+
+	private static class ViewEntry {
+		final SnapshotView view;
+		long version = -1;
+
+		ViewEntry(SnapshotView view) {
+			this.view = view;
+		}
+	}
+
+	private DefaultDataSet histogramDataSet = new DefaultDataSet("Histogram", new double[] {0,1}, new double[] {0,1});
+	private DefaultDataSet3D imageDataSet = new DefaultDataSet3D("Image");
+	private DefaultDataSet3D horizontalProjectionDataSet = new DefaultDataSet3D("Horizontal Projection");
+	private DefaultDataSet3D verticalProjectionDataSet = new DefaultDataSet3D("Vertical Projection");
+
+	// analysis thread side
+	private volatile ImageMode imageMode = ImageMode.TEMPERATURE;
+	private volatile int imageScale = 1;
+	private final ClaheEqualizer clahe = new ClaheEqualizer();
+	private final SnapshotPool pool;
+
+	// EDT side, the snapshot on display held until replaced
+	private AnalysisSnapshot front;
+	private final Component[] charts = new Component[Target.values().length];
+	private final long[] chartVersions = new long[Target.values().length];
+	private final List<ViewEntry> views = new ArrayList<>();
+	private final Timer timer;
+	private long renderCount = 0;
+	private long lastRenderCount = 0;
+	private long lastPublishedCount = 0;
+	private long lastRateTimeMs = System.currentTimeMillis();
+	private volatile double renderRate = 0;
+	private volatile double publishRate = 0;
+	private PipelineMetrics metrics;
+
+	public ChartPublisher() {
+		this(DEFAULT_TICK_MS);
+	}
+
+	public ChartPublisher(int tickMs) {
+		this(tickMs, new SnapshotPool());
+	}
+
+	public ChartPublisher(int tickMs, SnapshotPool pool) {
+		this.pool = pool;
+		for (int i = 0; i < chartVersions.length; i++) chartVersions[i] = -1;
+		timer = new Timer(tickMs, e -> tick());
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Starts the updates of the data sets.
+	 */
+	public void start() {
+		timer.start();
+	}
+	public void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Associates a chart with the data set of the target. The data set is only
+	 * updated while the chart is showing, and never for targets without chart.
+	 */
+	public void setChart(Target target, Component chart) {
+		charts[target.ordinal()] = chart;
+	}
+
+	/**
+	 * Adds a view updated at each tick. Called on the EDT.
+	 */
+	public void addView(SnapshotView view) {
+		views.add(new ViewEntry(view));
+	}
+	public void removeView(SnapshotView view) {
+		views.removeIf(entry -> entry.view == view);
+	}
+
+	/**
+	 * The snapshot to fill before calling {@link #publish()}. Called by the analysis thread only.
+	 * @return null if the readers hold all the other snapshots of the pool
+	 */
+	public AnalysisSnapshot getBackBuffer() {
+		return pool.getBackBuffer();
+	}
+
+	/**
+	 * Makes the back snapshot the newest one. Called by the analysis thread only.
+	 */
+	public void publish() {
+		pool.publish();
+	}
+
+	/**
+	 * The snapshots published for the charts, which any thread can acquire.
+	 */
+	public SnapshotPool getSnapshotPool() {
+		return pool;
+	}
+
+	@Override
+	public void result(ThermalFrame frame, ThermalAnalyzer analyzer) {
+		AnalysisSnapshot back = pool.getBackBuffer();
+		if (back == null) return;
+		if (imageMode == ImageMode.CLAHE) {
+			back.fillEqualized(frame, clahe, imageScale, analyzer.getPixMin(), analyzer.getPixMax(), analyzer.getHistogramX(),
+					analyzer.getHistogramY(), analyzer.getHorProjection(), analyzer.getVertProjection());
+		} else {
+			back.fill(frame, analyzer.getPixMin(), analyzer.getPixMax(), analyzer.getHistogramX(), analyzer.getHistogramY(),
+					analyzer.getHorProjection(), analyzer.getVertProjection());
+		}
+		publish();
+	}
+
+	/**
+	 * What the image shows, can be changed while frames are processed.
+	 */
+	public void setImageMode(ImageMode imageMode) {
+		this.imageMode = imageMode;
+	}
+	public ImageMode getImageMode() {
+		return imageMode;
+	}
+	/**
+	 * @param imageScale size of the equalized image in times the frame size, for a display buffer larger than the sensor
+	 */
+	public void setImageScale(int imageScale) {
+		this.imageScale = Math.max(1, imageScale);
+	}
+	public int getImageScale() {
+		return imageScale;
+	}
+	/**
+	 * The equalizer of the {@link ImageMode#CLAHE} mode, its parameters can be changed while frames are processed.
+	 */
+	public ClaheEqualizer getClahe() {
+		return clahe;
+	}
+
+	/**
+	 * @param metrics where to record the render time and glass to glass latency, or null
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private void tick() {
+		AnalysisSnapshot latest = pool.acquire();
+		if (latest != null) {
+			if (front != null) pool.release(front);
+			front = latest;
+		}
+		Object event = FrameTracer.INSTANCE.beginRender();
+		long start = System.nanoTime();
+
+		boolean rendered = false;
+		long v = front != null ? front.getVersion() : -1;
+		if (v >= 0) {
+			for (Target target : Target.values()) {
+				int i = target.ordinal();
+				if (chartVersions[i] == v) continue;
+				Component chart = charts[i];
+				if (chart == null || !chart.isShowing()) continue;
+				apply(target, front);
+				chartVersions[i] = v;
+				rendered = true;
+			}
+			for (int i = 0; i < views.size(); i++) {
+				ViewEntry entry = views.get(i);
+				if (entry.version == v || !entry.view.getComponent().isShowing()) continue;
+				entry.view.display(front);
+				entry.version = v;
+				rendered = true;
+			}
+		}
+		if (rendered) {
+			renderCount++;
+			long end = System.nanoTime();
+			long capture = front.getCaptureNanos();
+			if (metrics != null) {
+				metrics.record(PipelineMetrics.Stage.RENDER, end-start);
+				if (capture != 0) metrics.record(PipelineMetrics.Stage.GLASS_TO_GLASS, end-capture);
+			}
+			FrameTracer.INSTANCE.endRender(event, front, end-start, capture != 0 ? end-capture : 0);
+		}
+
+		long nowMs = System.currentTimeMillis();
+		if (nowMs >= lastRateTimeMs+1000) {
+			long published = pool.getPublishedCount();
+			double seconds = (nowMs-lastRateTimeMs)/1000.0;
+			renderRate = (renderCount-lastRenderCount)/seconds;
+			publishRate = (published-lastPublishedCount)/seconds;
+			lastRenderCount = renderCount;
+			lastPublishedCount = published;
+			lastRateTimeMs = nowMs;
+		}
+	}
+
+	private void apply(Target target, AnalysisSnapshot s) {
+		switch (target) {
+		case IMAGE:
+			imageDataSet.set(s.getImageXScale(), s.getImageYScale(), s.getImage(), false, false);
+			break;
+		case HISTOGRAM:
+			histogramDataSet.set(s.getHistogramX(), s.getHistogramY());
+			break;
+		case HORIZONTAL_PROJECTION:
+			horizontalProjectionDataSet.set(s.getHistogramX(), s.getVertPixelScale(), s.getHorProjection(), false, false);
+			break;
+		case VERTICAL_PROJECTION:
+			verticalProjectionDataSet.set(s.getHorPixelScale(), s.getHistogramX(), s.getVertProjection(), false, false);
+			break;
+		}
+	}
+
+	/**
+	 * Number of ticks per second that updated at least one chart.
+	 */
+	public double getRenderRate() {
+		return renderRate;
+	}
+	/**
+	 * Number of snapshots published per second by the analysis.
+	 */
+	public double getPublishRate() {
+		return publishRate;
+	}
+	public long getPublishedCount() {
+		return pool.getPublishedCount();
+	}
+
+	public DefaultDataSet getHistogramDataSet() {
+		return histogramDataSet;
+	}
+	public DefaultDataSet3D getImageDataSet() {
+		return imageDataSet;
+	}
+	public DefaultDataSet3D gethorizontalProjectionDataSet() {
+		return horizontalProjectionDataSet;
+	}
+	public DefaultDataSet3D getverticalProjectionDataSet() {
+		return verticalProjectionDataSet;
+	}
+
+}
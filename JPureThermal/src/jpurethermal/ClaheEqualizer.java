@@ -0,0 +1,371 @@
+package jpurethermal;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Contrast limited adaptive histogram equalization of the raw values, for
+ * the display: each pixel is mapped by the histogram of its neighbourhood
+ * instead of a linear palette over the whole range, which shows the details
+ * of both the cold and hot parts of the scene.
+ * <p>
+ * The frame is cut in tiles, by default 8x8. The raw values are put in
+ * {@link #getBins()} integer bins over the range of the frame, the histogram
+ * of each tile is clipped at the clip limit times the mean count, the excess
+ * spread over all the bins, and its cumulated counts give the mapping of the
+ * tile. Each output pixel is mapped by the four nearest tiles, weighted by
+ * its distance to their centres, so no tile border shows. The output can be
+ * larger than the frame, for an upscaled display buffer.
+ * <p>
+ * The raw range, the tiles and the output rows are each split in chunks run
+ * in parallel by the common fork/join pool and the calling thread. The
+ * buffers are allocated for a size and reused.
+ */
+public class ClaheEqualizer {
+	public static final int DEFAULT_TILES = 8;
+	public static final int DEFAULT_BINS = 256;
+	public static final double DEFAULT_CLIP_LIMIT = 3.0;
+
+	private volatile int tilesX = DEFAULT_TILES, tilesY = DEFAULT_TILES;
+	private volatile int bins = DEFAULT_BINS;
+	private volatile double clipLimit = DEFAULT_CLIP_LIMIT;
+	private volatile int parallelism = ForkJoinPool.getCommonPoolParallelism()+1;
+
+	// sizes of the buffers
+	private int width = -1, height = -1, outWidth = -1, outHeight = -1;
+	private int tileCountX, tileCountY, binCount;
+	// bin of each pixel, row by row without stride
+	private short[] binned = new short[0];
+	// per tile, tile by tile
+	private int[] histograms = new int[0];
+	private float[] luts = new float[0];
+	private int[] tileX0 = new int[0], tileY0 = new int[0];
+	// per output column and row: source pixel, first tile, weight of the second
+	private int[] sourceX = new int[0], sourceY = new int[0];
+	private int[] columnTile = new int[0], rowTile = new int[0];
+	private float[] columnWeight = new float[0], rowWeight = new float[0];
+
+	// current frame
+	private ThermalFrame frame;
+	private double[] out;
+	private int rawMin, rawMax;
+	private float binScale;
+	private Chunk[] chunks = new Chunk[0];
+	private long rangeNanos, tilesNanos, interpolateNanos;
+
+	private enum Phase {
+		RANGE, TILES, INTERPOLATE
+	}
+
+	/**
+	 * One part of a phase, the same tasks are reinitialised for each phase.
+	 */
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final int index;
+		Phase phase;
+		int min, max;
+
+		Chunk(int index) {
+			this.index = index;
+		}
+
+		@Override
+		protected void compute() {
+			switch (phase) {
+			case RANGE:
+				range(this);
+				break;
+			case TILES:
+				for (int tile = index; tile < tileCountX*tileCountY; tile += chunks.length) tile(tile);
+				break;
+			case INTERPOLATE:
+				int rows = (outHeight+chunks.length-1)/chunks.length;
+				interpolate(index*rows, Math.min(outHeight, (index+1)*rows));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @param tilesX number of tiles across the frame
+	 * @param tilesY number of tiles down the frame
+	 */
+	public void setTiles(int tilesX, int tilesY) {
+		if (tilesX < 1 || tilesY < 1) throw new IllegalArgumentException("tiles "+tilesX+"x"+tilesY);
+		this.tilesX = tilesX;
+		this.tilesY = tilesY;
+	}
+	public int getTilesX() {
+		return tilesX;
+	}
+	public int getTilesY() {
+		return tilesY;
+	}
+	/**
+	 * @param bins number of histogram bins over the raw range of the frame, up to 65536
+	 */
+	public void setBins(int bins) {
+		if (bins < 2 || bins > 65536) throw new IllegalArgumentException("bins "+bins);
+		this.bins = bins;
+	}
+	public int getBins() {
+		return bins;
+	}
+	/**
+	 * @param clipLimit highest count of a bin, as a multiple of the mean count of the bins of a tile, 1 for a linear mapping
+	 */
+	public void setClipLimit(double clipLimit) {
+		this.clipLimit = Math.max(1, clipLimit);
+	}
+	public double getClipLimit() {
+		return clipLimit;
+	}
+	/**
+	 * @param parallelism number of chunks of each phase, 1 to run on the calling thread only
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Equalizes the frame into out, outWidth x outHeight values from 0 to 1
+	 * row by row, the frame stretched over the output.
+	 */
+	public void equalize(ThermalFrame frame, double[] out, int outWidth, int outHeight) {
+		if (out.length < outWidth*outHeight) throw new IllegalArgumentException("output smaller than "+outWidth+"x"+outHeight);
+		long start = System.nanoTime();
+		resize(frame.getWidth(), frame.getHeight(), outWidth, outHeight);
+		this.frame = frame;
+		this.out = out;
+
+		run(Phase.RANGE);
+		rawMin = Integer.MAX_VALUE;
+		rawMax = Integer.MIN_VALUE;
+		for (Chunk chunk : chunks) {
+			rawMin = Math.min(rawMin, chunk.min);
+			rawMax = Math.max(rawMax, chunk.max);
+		}
+		binScale = (float) binCount/(rawMax-rawMin+1);
+		long ranged = System.nanoTime();
+		run(Phase.TILES);
+		long tiled = System.nanoTime();
+		run(Phase.INTERPOLATE);
+
+		this.frame = null;
+		this.out = null;
+		rangeNanos = ranged-start;
+		tilesNanos = tiled-ranged;
+		interpolateNanos = System.nanoTime()-tiled;
+	}
+
+	private void resize(int w, int h, int ow, int oh) {
+		int tx = Math.min(tilesX, w), ty = Math.min(tilesY, h), b = bins, p = parallelism;
+		if (p != chunks.length) {
+			chunks = new Chunk[p];
+			for (int i = 0; i < p; i++) chunks[i] = new Chunk(i);
+		}
+		if (w == width && h == height && ow == outWidth && oh == outHeight
+				&& tx == tileCountX && ty == tileCountY && b == binCount) return;
+		if (w != width || h != height) binned = new short[w*h];
+		width = w;
+		height = h;
+		outWidth = ow;
+		outHeight = oh;
+		tileCountX = tx;
+		tileCountY = ty;
+		binCount = b;
+		histograms = new int[tx*ty*b];
+		luts = new float[tx*ty*b];
+
+		// tile borders, the last ones at the frame size
+		tileX0 = new int[tx+1];
+		for (int i = 0; i <= tx; i++) tileX0[i] = i*w/tx;
+		tileY0 = new int[ty+1];
+		for (int i = 0; i <= ty; i++) tileY0[i] = i*h/ty;
+
+		sourceX = new int[ow];
+		columnTile = new int[ow];
+		columnWeight = new float[ow];
+		axis(w, ow, tx, sourceX, columnTile, columnWeight);
+		sourceY = new int[oh];
+		rowTile = new int[oh];
+		rowWeight = new float[oh];
+		axis(h, oh, ty, sourceY, rowTile, rowWeight);
+	}
+
+	/**
+	 * Source pixel, first of the two nearest tiles and weight of the second
+	 * for each output position along an axis.
+	 */
+	private static void axis(int size, int outSize, int tiles, int[] source, int[] tile, float[] weight) {
+		double tileSize = (double) size/tiles;
+		for (int o = 0; o < outSize; o++) {
+			// centre of the output pixel in source pixels
+			double s = (o+0.5)*size/outSize;
+			source[o] = Math.min(size-1, (int) s);
+			// position between the tile centres, clamped on the border half tiles
+			double t = Math.max(0, Math.min(tiles-1, s/tileSize-0.5));
+			int t0 = Math.min(tiles-2, (int) t);
+			if (t0 < 0) {
+				tile[o] = 0;
+				weight[o] = 0;
+			} else {
+				tile[o] = t0;
+				weight[o] = (float) (t-t0);
+			}
+		}
+	}
+
+	private void run(Phase phase) {
+		Chunk[] chunks = this.chunks;
+		for (int i = 1; i < chunks.length; i++) {
+			chunks[i].reinitialize();
+			chunks[i].phase = phase;
+			chunks[i].fork();
+		}
+		chunks[0].phase = phase;
+		chunks[0].compute();
+		for (int i = 1; i < chunks.length; i++) {
+			chunks[i].join();
+		}
+	}
+
+	private void range(Chunk chunk) {
+		int rows = (height+chunks.length-1)/chunks.length;
+		int y0 = chunk.index*rows, y1 = Math.min(height, y0+rows);
+		short[] raw = frame.getRaw();
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (int y = y0; y < y1; y++) {
+			int row = frame.index(0, y);
+			for (int i = row; i < row+width; i++) {
+				int v = raw[i] & 0xFFFF;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+		}
+		chunk.min = min;
+		chunk.max = max;
+	}
+
+	/**
+	 * Bins the pixels of the tile, clips its histogram and builds its mapping.
+	 */
+	private void tile(int tile) {
+		int tx = tile%tileCountX, ty = tile/tileCountX;
+		int x0 = tileX0[tx], x1 = tileX0[tx+1];
+		int y0 = tileY0[ty], y1 = tileY0[ty+1];
+		int b = binCount;
+		int last = b-1;
+		int offset = tile*b;
+		int[] histogram = histograms;
+		Arrays.fill(histogram, offset, offset+b, 0);
+
+		short[] raw = frame.getRaw();
+		short[] binned = this.binned;
+		int min = rawMin;
+		float scale = binScale;
+		for (int y = y0; y < y1; y++) {
+			int row = frame.index(0, y);
+			int dst = y*width;
+			for (int x = x0; x < x1; x++) {
+				int k = (int) (((raw[row+x] & 0xFFFF)-min)*scale);
+				if (k > last) k = last;
+				binned[dst+x] = (short) k;
+				histogram[offset+k]++;
+			}
+		}
+
+		// clip, then spread the excess evenly, the remainder one by one
+		int pixels = (x1-x0)*(y1-y0);
+		int limit = Math.max(1, (int) (clipLimit*pixels/b));
+		int excess = 0;
+		for (int i = offset; i < offset+b; i++) {
+			if (histogram[i] > limit) {
+				excess += histogram[i]-limit;
+				histogram[i] = limit;
+			}
+		}
+		int each = excess/b;
+		int remainder = excess-each*b;
+		int step = remainder > 0 ? Math.max(1, b/remainder) : b;
+		for (int i = 0; i < b; i++) {
+			histogram[offset+i] += each;
+			if (remainder > 0 && i%step == 0) {
+				histogram[offset+i]++;
+				remainder--;
+			}
+		}
+
+		float[] lut = luts;
+		float norm = 1f/pixels;
+		int sum = 0;
+		for (int i = offset; i < offset+b; i++) {
+			sum += histogram[i];
+			lut[i] = sum*norm;
+		}
+	}
+
+	private void interpolate(int oy0, int oy1) {
+		short[] binned = this.binned;
+		float[] lut = luts;
+		double[] out = this.out;
+		int b = binCount;
+		int rowTiles = tileCountX*b;
+		int ow = outWidth;
+		int lastX = tileCountX > 1 ? b : 0;
+		int lastY = tileCountY > 1 ? rowTiles : 0;
+		for (int oy = oy0; oy < oy1; oy++) {
+			int src = sourceY[oy]*width;
+			int tileRow = rowTile[oy]*rowTiles;
+			float fy = rowWeight[oy];
+			int dst = oy*ow;
+			for (int ox = 0; ox < ow; ox++) {
+				int k = binned[src+sourceX[ox]] & 0xFFFF;
+				int t = tileRow+columnTile[ox]*b+k;
+				float fx = columnWeight[ox];
+				float top = lut[t]+fx*(lut[t+lastX]-lut[t]);
+				float bottom = lut[t+lastY]+fx*(lut[t+lastY+lastX]-lut[t+lastY]);
+				out[dst+ox] = top+fy*(bottom-top);
+			}
+		}
+	}
+
+	/**
+	 * Raw range of the last frame, over which the bins are spread.
+	 */
+	public int getRawMin() {
+		return rawMin;
+	}
+	public int getRawMax() {
+		return rawMax;
+	}
+	/**
+	 * Time to find the raw range of the last frame.
+	 */
+	public long getRangeNanos() {
+		return rangeNanos;
+	}
+	/**
+	 * Time to bin the pixels and build the mappings of the tiles of the last frame.
+	 */
+	public long getTilesNanos() {
+		return tilesNanos;
+	}
+	/**
+	 * Time to map the output pixels of the last frame.
+	 */
+	public long getInterpolateNanos() {
+		return interpolateNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CLAHE %dx%d tiles, %d bins, clip limit %.1f", tilesX, tilesY, bins, clipLimit);
+	}
+
+}
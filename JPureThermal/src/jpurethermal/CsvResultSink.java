@@ -0,0 +1,48 @@
+package jpurethermal;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes one line per frame: sequence, timestamp in ns, min and max
+ * temperatures and the displayed range.
+ */
+public class CsvResultSink implements ResultSink, Closeable {
+	private final BufferedWriter writer;
+	private final StringBuilder line = new StringBuilder(128);
+	private IOException error;
+
+	public CsvResultSink(File file) throws IOException {
+		writer = new BufferedWriter(new FileWriter(file), 1 << 16);
+		writer.write("sequence,timestamp,min,max,pixMin,pixMax");
+		writer.newLine();
+	}
+
+	@Override
+	public void result(ThermalFrame frame, ThermalAnalyzer analyzer) {
+		if (error != null) return;
+		line.setLength(0);
+		line.append(frame.getSequence()).append(',')
+			.append(frame.getTimestamp()).append(',')
+			.append(String.format(Locale.ROOT, "%.2f,%.2f,%.3f,%.3f",
+					analyzer.getMin(), analyzer.getMax(), analyzer.getPixMin(), analyzer.getPixMax()));
+		try {
+			writer.append(line);
+			writer.newLine();
+		} catch (IOException e) {
+			// keep the analysis going, report at close
+			error = e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+		if (error != null) throw error;
+	}
+
+}
@@ -0,0 +1,158 @@
+package jpurethermal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes the frames of a raw video format into 16 bits values, one decoder
+ * per format and size, as negotiated by the caps. The rows of the buffers
+ * have the default GStreamer stride, padded to 4 bytes.
+ * <p>
+ * The 16 bits formats keep their values, the 8 bits luma of GRAY8, YUY2 and
+ * NV12 is put in 0 to 255. Decoding does not allocate: the frames are written
+ * in the given array or in a flat frame of the decoder, reused.
+ */
+public abstract class FrameDecoder {
+	public static final String GRAY16_LE = "GRAY16_LE";
+	public static final String GRAY16_BE = "GRAY16_BE";
+	public static final String GRAY8 = "GRAY8";
+	public static final String YUY2 = "YUY2";
+	public static final String NV12 = "NV12";
+
+	protected final String format;
+	protected final int width, height;
+	// bytes between the start of two rows in the buffer
+	protected final int stride;
+	private final short[] frame;
+	private final ShortBuffer frameBuffer;
+
+	protected FrameDecoder(String format, int width, int height, int rowBytes) {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException(format+" "+width+"x"+height);
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.stride = (rowBytes+3) & ~3;
+		this.frame = new short[width*height];
+		this.frameBuffer = ShortBuffer.wrap(frame);
+	}
+
+	/**
+	 * @param format the format field of the caps
+	 * @throws IllegalArgumentException if the format is not supported
+	 */
+	public static FrameDecoder forFormat(String format, int width, int height) {
+		if (format == null) throw new IllegalArgumentException("no format");
+		switch (format) {
+		case GRAY16_LE:
+			return new Gray16(format, width, height, ByteOrder.LITTLE_ENDIAN);
+		case GRAY16_BE:
+			return new Gray16(format, width, height, ByteOrder.BIG_ENDIAN);
+		case GRAY8:
+			return new Luma(format, width, height, width, 1);
+		case YUY2:
+			return new Luma(format, width, height, 2*width, 2);
+		case NV12:
+			// the Y plane first, the UV plane after it is not read
+			return new Luma(format, width, height, width, 1);
+		default:
+			throw new IllegalArgumentException("format "+format+" not supported");
+		}
+	}
+
+	public String getFormat() {
+		return format;
+	}
+	public int getWidth() {
+		return width;
+	}
+	public int getHeight() {
+		return height;
+	}
+	/**
+	 * Bytes between the start of two rows in the buffer.
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Decodes the frame of the buffer, from its position, into dest from
+	 * offset, destStride values between two rows. The position and the order
+	 * of the buffer are left unchanged.
+	 */
+	public abstract void decode(ByteBuffer bb, short[] dest, int offset, int destStride);
+
+	/**
+	 * Decodes the frame of the buffer into the flat frame of the decoder.
+	 * @return the frame, valid until the next call
+	 */
+	public ShortBuffer decode(ByteBuffer bb) {
+		decode(bb, frame, 0, width);
+		frameBuffer.clear();
+		return frameBuffer;
+	}
+
+	@Override
+	public String toString() {
+		return format+" "+width+"x"+height;
+	}
+
+	/**
+	 * GRAY16_LE and GRAY16_BE, read in the order of the format whatever the
+	 * order of the mapped buffer: the values are swapped when the orders differ.
+	 */
+	private static class Gray16 extends FrameDecoder {
+		private final ByteOrder order;
+
+		Gray16(String format, int width, int height, ByteOrder order) {
+			super(format, width, height, 2*width);
+			this.order = order;
+		}
+
+		@Override
+		public void decode(ByteBuffer bb, short[] dest, int offset, int destStride) {
+			boolean swap = bb.order() != order;
+			int start = bb.position();
+			for (int y = 0; y < height; y++) {
+				int row = start+y*stride;
+				int o = offset+y*destStride;
+				if (swap) {
+					for (int x = 0; x < width; x++) {
+						dest[o+x] = Short.reverseBytes(bb.getShort(row+2*x));
+					}
+				} else {
+					for (int x = 0; x < width; x++) {
+						dest[o+x] = bb.getShort(row+2*x);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 8 bits luma, one byte out of step in a row: GRAY8 and the Y plane of
+	 * NV12 by 1, YUY2 by 2.
+	 */
+	private static class Luma extends FrameDecoder {
+		private final int step;
+
+		Luma(String format, int width, int height, int rowBytes, int step) {
+			super(format, width, height, rowBytes);
+			this.step = step;
+		}
+
+		@Override
+		public void decode(ByteBuffer bb, short[] dest, int offset, int destStride) {
+			int start = bb.position();
+			for (int y = 0; y < height; y++) {
+				int row = start+y*stride;
+				int o = offset+y*destStride;
+				for (int x = 0; x < width; x++) {
+					dest[o+x] = (short) (bb.get(row+step*x) & 0xFF);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package jpurethermal;
+
+import org.freedesktop.gstreamer.Caps;
+import org.freedesktop.gstreamer.Structure;
+
+/**
+ * The {@link FrameDecoder} of the samples of a stream, the caps parsed again
+ * only when they change. Used by one streaming thread at a time.
+ */
+public class FrameDecoderCache {
+	private Caps caps;
+	private volatile FrameDecoder decoder;
+
+	/**
+	 * @throws IllegalArgumentException if the format of the caps is not supported
+	 */
+	public FrameDecoder get(Caps caps) {
+		// the same caps object as long as they are not negotiated again
+		if (caps != this.caps && (this.caps == null || !caps.isEqual(this.caps))) {
+			Structure s = caps.getStructure(0);
+			decoder = FrameDecoder.forFormat(s.getString("format"), s.getInteger("width"), s.getInteger("height"));
+			this.caps = caps;
+		}
+		return decoder;
+	}
+
+	/**
+	 * The decoder of the last caps, or null.
+	 */
+	public FrameDecoder getDecoder() {
+		return decoder;
+	}
+
+}
@@ -0,0 +1,69 @@
+package jpurethermal;
+
+/**
+ * The per pixel loops of the pipeline over a row of a frame: conversion of
+ * the unsigned raw values, min/max/sum of the raw values and search of the
+ * pixels above a threshold. A scalar implementation is always there; one on
+ * the incubating Vector API of JDK 16+ is used instead when it was built and
+ * the module is loaded. Both give the same results bit for bit.
+ * <p>
+ * The vector kernels are in the src-vector folder, out of the Java 8 build:
+ * <pre>
+ * javac --release 17 --add-modules jdk.incubator.vector -cp bin -d bin src-vector/jpurethermal/VectorFrameKernels.java
+ * java --add-modules jdk.incubator.vector ...
+ * </pre>
+ * The system property jpurethermal.kernels=scalar forces the scalar ones.
+ */
+public abstract class FrameKernels {
+	public static final String PROPERTY = "jpurethermal.kernels";
+	/** values per call of {@link #minMaxSum(short[], int, int, int[])}, so the sums fit in int lanes */
+	public static final int MAX_RUN = 32768;
+	private static final String VECTOR_CLASS = "jpurethermal.VectorFrameKernels";
+
+	private static final FrameKernels SCALAR = new ScalarFrameKernels();
+	private static final FrameKernels VECTOR = loadVector();
+	private static final FrameKernels SELECTED = VECTOR == null || "scalar".equals(System.getProperty(PROPERTY)) ? SCALAR : VECTOR;
+
+	/**
+	 * The kernels chosen at startup.
+	 */
+	public static FrameKernels get() {
+		return SELECTED;
+	}
+	public static FrameKernels scalar() {
+		return SCALAR;
+	}
+	/**
+	 * @return the vector kernels, null if not built or the module not loaded
+	 */
+	public static FrameKernels vector() {
+		return VECTOR;
+	}
+
+	private static FrameKernels loadVector() {
+		try {
+			return (FrameKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// not built, older JVM or run without --add-modules jdk.incubator.vector
+			return null;
+		}
+	}
+
+	/**
+	 * out[i] = table[raw[i] unsigned] for i in [from, to[.
+	 */
+	public abstract void lookup(short[] raw, int from, int to, float[] table, float[] out);
+
+	/**
+	 * Min and max of the unsigned raw[from..to[, merged into minMax[0] and
+	 * minMax[1], at most {@link #MAX_RUN} values.
+	 * @return their sum
+	 */
+	public abstract long minMaxSum(short[] raw, int from, int to, int[] minMax);
+
+	/**
+	 * @return the index of the first t[i] >= threshold in [from, to[, to if none
+	 */
+	public abstract int firstAtLeast(float[] t, int from, int to, float threshold);
+
+}
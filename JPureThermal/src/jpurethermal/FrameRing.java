@@ -0,0 +1,205 @@
+package jpurethermal;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed pool of preallocated frames passed from the capture thread to one
+ * analysis thread without locks. The capture thread copies each buffer into
+ * the next free slot and returns, the analysis thread takes the slots in
+ * order and releases them when done. Nothing is allocated once the ring is
+ * built.
+ * <p>
+ * When all the slots are pending, {@link Policy#DROP_OLDEST} discards the
+ * oldest frame not yet taken and {@link Policy#BLOCK} waits for the analysis
+ * thread to release one.
+ */
+public class FrameRing {
+	public static final int DEFAULT_CAPACITY = 4;
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+	private static final long NONE = Long.MIN_VALUE;
+
+	public enum Policy {
+		DROP_OLDEST, BLOCK
+	}
+
+	private final ThermalFrame[] slots;
+	private final long[] offerNanos;
+	private final int capacity;
+	private final Policy policy;
+	private volatile long lateThresholdNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+	// next sequence written by the producer
+	private volatile long head = 0;
+	// next sequence to take, advanced by the consumer or by the producer when dropping
+	private final AtomicLong tail = new AtomicLong(0);
+	// sequence being processed by the consumer, NONE if none
+	private volatile long reading = NONE;
+	private volatile Thread waitingConsumer;
+	private volatile Thread waitingProducer;
+
+	private final AtomicLong offered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong late = new AtomicLong();
+
+	public FrameRing(int width, int height) {
+		this(width, height, DEFAULT_CAPACITY, Policy.DROP_OLDEST);
+	}
+
+	/**
+	 * @param capacity number of slots, at least 2
+	 */
+	public FrameRing(int width, int height, int capacity, Policy policy) {
+		if (capacity < 2) throw new IllegalArgumentException("capacity "+capacity+" < 2");
+		this.capacity = capacity;
+		this.policy = policy;
+		slots = new ThermalFrame[capacity];
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new ThermalFrame(width, height);
+		}
+		offerNanos = new long[capacity];
+	}
+
+	public boolean hasSize(int width, int height) {
+		return slots[0].hasSize(width, height);
+	}
+
+	/**
+	 * Applies the radiometry to the temperatures view of all the slots.
+	 */
+	public void setRadiometry(Radiometry radiometry) {
+		for (ThermalFrame frame : slots) {
+			frame.setRadiometry(radiometry);
+		}
+	}
+
+	/**
+	 * Copies the buffer in the next slot. Called by the capture thread only.
+	 * @param captureNanos see {@link ThermalFrame#getCaptureNanos()}
+	 * @return false if the frame was dropped
+	 */
+	public boolean offer(ShortBuffer sb, long sequence, long timestamp, long captureNanos) {
+		offered.incrementAndGet();
+		long h = head;
+		while (true) {
+			long t = tail.get();
+			if (h-t >= capacity) {
+				// all the slots are pending
+				if (policy == Policy.DROP_OLDEST) {
+					if (tail.compareAndSet(t, t+1)) dropped.incrementAndGet();
+				} else {
+					waitForConsumer();
+				}
+				continue;
+			}
+			if (reading == h-capacity) {
+				// the slot is still being processed
+				if (policy == Policy.DROP_OLDEST) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				waitForConsumer();
+				continue;
+			}
+			break;
+		}
+
+		int index = (int) (h % capacity);
+		ThermalFrame frame = slots[index];
+		frame.read(sb);
+		frame.setSequence(sequence);
+		frame.setTimestamp(timestamp);
+		frame.setCaptureNanos(captureNanos);
+		offerNanos[index] = System.nanoTime();
+		head = h+1;
+
+		Thread consumer = waitingConsumer;
+		if (consumer != null) LockSupport.unpark(consumer);
+		return true;
+	}
+
+	/**
+	 * Takes the oldest pending frame, waiting for one if needed. Called by the
+	 * analysis thread only, which must call {@link #release()} when done with it.
+	 * @return the frame, or null if none came before the timeout
+	 */
+	public ThermalFrame take(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime()+unit.toNanos(timeout);
+		while (true) {
+			ThermalFrame frame = poll();
+			if (frame != null) return frame;
+			long remaining = deadline-System.nanoTime();
+			if (remaining <= 0) return null;
+			waitingConsumer = Thread.currentThread();
+			if (tail.get() >= head) LockSupport.parkNanos(this, Math.min(remaining, PARK_NANOS));
+			waitingConsumer = null;
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * @return the oldest pending frame, or null if there is none
+	 */
+	public ThermalFrame poll() {
+		while (true) {
+			long t = tail.get();
+			if (t >= head) return null;
+			reading = t;
+			if (tail.compareAndSet(t, t+1)) {
+				int index = (int) (t % capacity);
+				if (System.nanoTime()-offerNanos[index] > lateThresholdNanos) late.incrementAndGet();
+				return slots[index];
+			}
+			reading = NONE;
+		}
+	}
+
+	/**
+	 * Gives back the frame returned by the last {@link #take(long, TimeUnit)} or {@link #poll()}.
+	 */
+	public void release() {
+		reading = NONE;
+		Thread producer = waitingProducer;
+		if (producer != null) LockSupport.unpark(producer);
+	}
+
+	private void waitForConsumer() {
+		waitingProducer = Thread.currentThread();
+		LockSupport.parkNanos(this, PARK_NANOS);
+		waitingProducer = null;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+	public Policy getPolicy() {
+		return policy;
+	}
+	/**
+	 * Number of frames waiting to be taken.
+	 */
+	public int getPending() {
+		return (int) Math.max(0, head-tail.get());
+	}
+	public long getOfferedCount() {
+		return offered.get();
+	}
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	/**
+	 * Number of frames taken more than the late threshold after they were offered.
+	 */
+	public long getLateCount() {
+		return late.get();
+	}
+	public long getLateThresholdNanos() {
+		return lateThresholdNanos;
+	}
+	public void setLateThresholdNanos(long lateThresholdNanos) {
+		this.lateThresholdNanos = lateThresholdNanos;
+	}
+
+}
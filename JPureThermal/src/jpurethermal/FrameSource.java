@@ -0,0 +1,36 @@
+package jpurethermal;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Something delivering raw 16-bit frames: a camera, a test pattern, a file.
+ * A source pushes its frames to a {@link Consumer} from its own thread.
+ */
+public interface FrameSource {
+
+	/**
+	 * Receives the frames, on the thread of the source. The buffer is only
+	 * valid during the call.
+	 */
+	interface Consumer {
+		/**
+		 * @param timestamp of the frame in ns, as given by the source
+		 * @param captureNanos {@link System#nanoTime()} when the frame was
+		 * captured, as well as the source knows it
+		 */
+		void frame(ShortBuffer sb, int width, int height, long timestamp, long captureNanos);
+	}
+
+	/**
+	 * Starts delivering frames to the consumer.
+	 */
+	void start(Consumer consumer);
+
+	void stop();
+
+	/**
+	 * @return false once stopped or at the end of a finite source
+	 */
+	boolean isRunning();
+
+}
@@ -0,0 +1,81 @@
+package jpurethermal;
+
+/**
+ * Per frame events of the capture, the analysis and the rendering, to
+ * correlate stutters with garbage collections and safepoints in a Java
+ * Flight Recorder recording.
+ * <p>
+ * The stages call {@link #INSTANCE}: the JFR events when the running JVM has
+ * the jdk.jfr module, a tracer doing nothing otherwise. The events are
+ * disabled by default, a stage then only reads the enabled flag of the event
+ * type. They are enabled by the jpurethermal.jfc settings of the project,
+ * with the collector and safepoint events:
+ * <pre>
+ * java -XX:StartFlightRecording=settings=jpurethermal.jfc,filename=session.jfr -cp ... jpurethermal.HeadlessPureThermal
+ * jfr summary session.jfr
+ * jfr print --events jpurethermal.Analysis,jdk.GarbageCollection,jdk.SafepointBegin session.jfr
+ * </pre>
+ * A begin method returns the started event, or null when the events are off,
+ * to give back to the end method with the fields of the event.
+ * <p>
+ * The JFR tracer is in the src-jfr folder, out of the Java 8 build:
+ * <pre>
+ * javac --release 11 -cp bin -d bin src-jfr/jpurethermal/JfrFrameTracer.java
+ * </pre>
+ */
+public interface FrameTracer {
+	String JFR_TRACER = "jpurethermal.JfrFrameTracer";
+
+	FrameTracer NONE = new FrameTracer() {};
+
+	FrameTracer INSTANCE = load();
+
+	/**
+	 * The JFR tracer if the JVM supports it, else {@link #NONE}.
+	 */
+	static FrameTracer load() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (FrameTracer) Class.forName(JFR_TRACER).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return NONE;
+		}
+	}
+
+	/**
+	 * Before a frame received from the source is queued for the analysis.
+	 */
+	default Object beginCapture() {
+		return null;
+	}
+	/**
+	 * @param copyNanos time to copy the frame into the ring
+	 * @param queued false if the frame was dropped instead
+	 */
+	default void endCapture(Object event, long sequence, long timestamp, int width, int height, long copyNanos, boolean queued) {
+	}
+
+	default Object beginAnalysis() {
+		return null;
+	}
+	/**
+	 * @param convertNanos 0 without temporal filter, the conversion is then in statsNanos
+	 * @param captureToResultNanos time since the capture of the frame, 0 if unknown
+	 */
+	default void endAnalysis(Object event, ThermalFrame frame, long convertNanos, long filterNanos, long statsNanos,
+			long publishNanos, long captureToResultNanos) {
+	}
+
+	/**
+	 * Before the charts are updated from a snapshot, on the EDT.
+	 */
+	default Object beginRender() {
+		return null;
+	}
+	/**
+	 * @param glassToGlassNanos time since the capture of the frame, 0 if unknown
+	 */
+	default void endRender(Object event, AnalysisSnapshot snapshot, long renderNanos, long glassToGlassNanos) {
+	}
+
+}
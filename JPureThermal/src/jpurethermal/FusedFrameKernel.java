@@ -0,0 +1,375 @@
+package jpurethermal;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Statistics of a frame in two sweeps over bands of rows: the range, with
+ * the conversion to temperatures fused in when they are used, then the
+ * histogram and both projections together. The displayed range follows the
+ * range of the same frame, so the bins are only known after the first sweep.
+ * <p>
+ * Frames of at least {@link #getParallelThreshold()} pixels are split in
+ * bands run in parallel by the common fork/join pool and the calling thread,
+ * smaller ones run in a single band on the calling thread. Each band counts
+ * its own histogram and vertical projection, merged at the end, and the rows
+ * of the horizontal projection are its own. The results do not depend on the
+ * split, but for the rounding of the mean of the temperatures.
+ */
+public class FusedFrameKernel {
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 320*240;
+
+	private final HistogramBinner binner;
+	private final int bins, limit;
+	private final FrameKernels kernels = FrameKernels.get();
+	private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+	private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	private Band[] bands = new Band[0];
+	private int bandCount;
+	private int width = -1, height = -1;
+	// horizontal projection counts, row by row
+	private int[] horCounts = new int[0];
+
+	// current frame
+	private ThermalFrame frame;
+	private boolean raw;
+	private float[] temperatures;
+	private boolean converting;
+	private int[] lut;
+	private double binMin, binMax;
+	private double[][] horProjection, vertProjection;
+
+	// results of the range
+	private int rawMin, rawMax;
+	private double min, max, mean;
+	private long rangeNanos, binNanos;
+
+	private enum Phase {
+		RANGE, BIN, MERGE
+	}
+
+	/**
+	 * One band of rows, the same tasks are reinitialised for each phase.
+	 */
+	private class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final int index;
+		Phase phase;
+		int y0, y1;
+		final int[] rawMinMax = new int[2];
+		long rawSum;
+		double min, max, sum;
+		final int[] histogram = new int[bins];
+		// vertical projection counts, bin by bin
+		int[] vert = new int[0];
+
+		Band(int index) {
+			this.index = index;
+		}
+
+		@Override
+		protected void compute() {
+			switch (phase) {
+			case RANGE:
+				range(this);
+				break;
+			case BIN:
+				bin(this);
+				break;
+			case MERGE:
+				int rows = (bins+bandCount-1)/bandCount;
+				merge(Math.min(bins, index*rows), Math.min(bins, (index+1)*rows));
+				break;
+			}
+		}
+	}
+
+	public FusedFrameKernel(HistogramBinner binner) {
+		this.binner = binner;
+		this.bins = binner.getBins();
+		this.limit = binner.getLimit();
+	}
+
+	/**
+	 * @param parallelism most bands of a frame, by default the number of
+	 * processors, 1 to run on the calling thread only
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+	public int getParallelism() {
+		return parallelism;
+	}
+	/**
+	 * @param parallelThreshold pixels from which a frame is split in bands
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * First sweep: min, max and mean of the frame, from the raw values or
+	 * from the temperatures, derived in the same sweep if needed.
+	 * @param raw from the raw values, for a frame with a linear conversion and temperatures not filtered
+	 */
+	public void range(ThermalFrame frame, boolean raw) {
+		long start = System.nanoTime();
+		resize(frame.getWidth(), frame.getHeight());
+		this.frame = frame;
+		this.raw = raw;
+		if (!raw) {
+			converting = frame.beginConversion();
+			temperatures = frame.getTemperaturesArray();
+		}
+		run(Phase.RANGE);
+		if (converting) frame.endConversion();
+		converting = false;
+
+		int n = width*height;
+		if (raw) {
+			Radiometry.Conversion c = frame.getConversion();
+			int lo = 0xFFFF, hi = 0;
+			long sum = 0;
+			for (int i = 0; i < bandCount; i++) {
+				lo = Math.min(lo, bands[i].rawMinMax[0]);
+				hi = Math.max(hi, bands[i].rawMinMax[1]);
+				sum += bands[i].rawSum;
+			}
+			rawMin = lo;
+			rawMax = hi;
+			min = c.toTemperature(lo);
+			max = c.toTemperature(hi);
+			mean = ((double) sum/n-c.getOffset())*c.getScale();
+		} else {
+			double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE, sum = 0;
+			for (int i = 0; i < bandCount; i++) {
+				// in the order of the rows, as in a single band
+				if (bands[i].min < lo) lo = bands[i].min;
+				if (bands[i].max > hi) hi = bands[i].max;
+				sum += bands[i].sum;
+			}
+			min = lo;
+			max = hi;
+			mean = sum/n;
+		}
+		this.frame = null;
+		temperatures = null;
+		rangeNanos = System.nanoTime()-start;
+	}
+
+	/**
+	 * Second sweep: clears then fills histogramY[bins],
+	 * horProjection[height][bins] and vertProjection[bins][width] over
+	 * [min, max], like the {@link HistogramBinner}. From the raw values the
+	 * range of the frame must have been found by {@link #range(ThermalFrame, boolean)}.
+	 */
+	public void bin(ThermalFrame frame, boolean raw, double min, double max,
+			double[] histogramY, double[][] horProjection, double[][] vertProjection) {
+		long start = System.nanoTime();
+		resize(frame.getWidth(), frame.getHeight());
+		this.frame = frame;
+		this.raw = raw;
+		this.binMin = min;
+		this.binMax = max;
+		this.horProjection = horProjection;
+		this.vertProjection = vertProjection;
+		if (raw) lut = binner.rawBins(frame, rawMin, rawMax, min, max);
+		else temperatures = frame.getTemperatures();
+
+		run(Phase.BIN);
+		run(Phase.MERGE);
+		Arrays.fill(histogramY, 0);
+		for (int i = 0; i < bandCount; i++) {
+			int[] h = bands[i].histogram;
+			for (int k = 0; k < bins; k++) histogramY[k] += h[k];
+		}
+
+		this.frame = null;
+		this.horProjection = null;
+		this.vertProjection = null;
+		lut = null;
+		temperatures = null;
+		binNanos = System.nanoTime()-start;
+	}
+
+	private void resize(int w, int h) {
+		int p = parallelism;
+		if (p != bands.length) {
+			bands = new Band[p];
+			for (int i = 0; i < p; i++) bands[i] = new Band(i);
+			width = -1;
+		}
+		int count = w*h >= parallelThreshold ? Math.min(p, h) : 1;
+		if (w == width && h == height && count == bandCount) return;
+		width = w;
+		height = h;
+		bandCount = count;
+		if (horCounts.length != h*bins) horCounts = new int[h*bins];
+		for (int i = 0; i < count; i++) {
+			Band band = bands[i];
+			band.y0 = i*h/count;
+			band.y1 = (i+1)*h/count;
+			if (band.vert.length != bins*w) band.vert = new int[bins*w];
+		}
+	}
+
+	private void run(Phase phase) {
+		Band[] bands = this.bands;
+		int count = bandCount;
+		for (int i = 1; i < count; i++) {
+			bands[i].reinitialize();
+			bands[i].phase = phase;
+			bands[i].fork();
+		}
+		bands[0].phase = phase;
+		bands[0].compute();
+		for (int i = 1; i < count; i++) {
+			bands[i].join();
+		}
+	}
+
+	private void range(Band band) {
+		ThermalFrame frame = this.frame;
+		int w = width;
+		if (raw) {
+			short[] r = frame.getRaw();
+			int[] minMax = band.rawMinMax;
+			minMax[0] = 0xFFFF;
+			minMax[1] = 0;
+			long sum = 0;
+			for (int y = band.y0; y < band.y1; y++) {
+				int rowStart = frame.index(0, y);
+				for (int i = rowStart; i < rowStart+w; i += FrameKernels.MAX_RUN) {
+					sum += kernels.minMaxSum(r, i, Math.min(i+FrameKernels.MAX_RUN, rowStart+w), minMax);
+				}
+			}
+			band.rawSum = sum;
+			return;
+		}
+		float[] t = temperatures;
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE, sum = 0;
+		for (int y = band.y0; y < band.y1; y++) {
+			// converted while the row is in cache
+			if (converting) frame.convertRows(y, y+1);
+			int rowStart = frame.index(0, y);
+			for (int i = rowStart; i < rowStart+w; i++) {
+				float v = t[i];
+				if (v > hi) hi = v;
+				if (v < lo) lo = v;
+				sum += v;
+			}
+		}
+		band.min = lo;
+		band.max = hi;
+		band.sum = sum;
+	}
+
+	private void bin(Band band) {
+		ThermalFrame frame = this.frame;
+		int w = width;
+		int[] histogram = band.histogram;
+		int[] vert = band.vert;
+		int[] hor = horCounts;
+		Arrays.fill(histogram, 0);
+		Arrays.fill(vert, 0);
+		Arrays.fill(hor, band.y0*bins, band.y1*bins, 0);
+		int last = bins-1;
+		if (raw && lut != null) {
+			int[] lut = this.lut;
+			int offset = rawMin;
+			short[] r = frame.getRaw();
+			for (int y = band.y0; y < band.y1; y++) {
+				int rowStart = frame.index(0, y);
+				int horRow = y*bins;
+				for (int x = 0; x < w; x++) {
+					int k = lut[(r[rowStart+x] & 0xFFFF)-offset];
+					if (k < 0) continue;
+					histogram[k]++;
+					if (hor[horRow+k] < limit) hor[horRow+k]++;
+					int v = (last-k)*w+x;
+					if (vert[v] < limit) vert[v]++;
+				}
+			}
+		} else if (!raw && binMax > binMin) {
+			float[] t = temperatures;
+			double min = binMin, max = binMax;
+			double scale = bins/(max-min);
+			for (int y = band.y0; y < band.y1; y++) {
+				int rowStart = frame.index(0, y);
+				int horRow = y*bins;
+				for (int x = 0; x < w; x++) {
+					double value = t[rowStart+x];
+					if (value < min || value > max) continue;
+					int k = (int) ((value-min) * scale);
+					if (k > last) k = last;
+					histogram[k]++;
+					if (hor[horRow+k] < limit) hor[horRow+k]++;
+					int v = (last-k)*w+x;
+					if (vert[v] < limit) vert[v]++;
+				}
+			}
+		}
+		for (int y = band.y0; y < band.y1; y++) {
+			double[] row = horProjection[y];
+			for (int k = 0; k < bins; k++) row[k] = hor[y*bins+k];
+		}
+	}
+
+	/**
+	 * Sums the vertical projections of the bands for the bins [k0, k1[, a
+	 * sum of clamped counts clamped again is the clamped sum.
+	 */
+	private void merge(int k0, int k1) {
+		int w = width;
+		for (int k = k0; k < k1; k++) {
+			double[] row = vertProjection[k];
+			int[] vert = bands[0].vert;
+			for (int x = 0; x < w; x++) row[x] = vert[k*w+x];
+			if (bandCount == 1) continue;
+			for (int i = 1; i < bandCount; i++) {
+				vert = bands[i].vert;
+				for (int x = 0; x < w; x++) row[x] += vert[k*w+x];
+			}
+			for (int x = 0; x < w; x++) row[x] = Math.min(row[x], limit);
+		}
+	}
+
+	public int getRawMin() {
+		return rawMin;
+	}
+	public int getRawMax() {
+		return rawMax;
+	}
+	public double getMin() {
+		return min;
+	}
+	public double getMax() {
+		return max;
+	}
+	public double getMean() {
+		return mean;
+	}
+	/**
+	 * Bands of the last frame.
+	 */
+	public int getBandCount() {
+		return bandCount;
+	}
+	/**
+	 * Time of the first sweep of the last frame.
+	 */
+	public long getRangeNanos() {
+		return rangeNanos;
+	}
+	/**
+	 * Time of the second sweep of the last frame, merge included.
+	 */
+	public long getBinNanos() {
+		return binNanos;
+	}
+
+}
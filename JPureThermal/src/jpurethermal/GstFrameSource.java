@@ -0,0 +1,240 @@
+package jpurethermal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.gstreamer.Bin;
+import org.freedesktop.gstreamer.Buffer;
+import org.freedesktop.gstreamer.Bus;
+import org.freedesktop.gstreamer.Clock;
+import org.freedesktop.gstreamer.FlowReturn;
+import org.freedesktop.gstreamer.Gst;
+import org.freedesktop.gstreamer.Pipeline;
+import org.freedesktop.gstreamer.Sample;
+import org.freedesktop.gstreamer.elements.AppSink;
+
+/**
+ * Frames of a GStreamer pipeline ending with an appsink. The description
+ * is the part before the appsink and must deliver raw video in a format of
+ * the {@link FrameDecoder}, GRAY16_LE for the radiometric Lepton frames.
+ * GStreamer must be initialised before {@link #start(Consumer)}.
+ * <p>
+ * The appsink queue is bounded, the oldest samples dropped when it is full,
+ * and not synchronised on the clock. The samples are taken either in the
+ * new-sample signal callback, on the streaming thread, or by a thread of
+ * the source pulling them.
+ */
+public class GstFrameSource implements FrameSource, AppSink.NEW_SAMPLE {
+	public static final int DEFAULT_MAX_BUFFERS = 2;
+	public static final long DEFAULT_PULL_TIMEOUT_MS = 100;
+	private static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	public enum CaptureMode {
+		/** emit-signals and a JNA upcall per sample, on the streaming thread */
+		CALLBACK,
+		/** a thread of the source blocks on try-pull-sample */
+		PULL
+	}
+
+	/** The PureThermal board of the original setup, on Windows */
+	public static final String PURETHERMAL_WINDOWS =
+			"mfvideosrc device-path=\"\\\\\\\\\\?\\\\usb\\#vid_1e4e\\&pid_0100\\&mi_00\\#6\\&d03da6\\&0\\&0000\\#\\{e5323777-f976-4f5b-9b55-b94699c46e44\\}\\\\global\""
+			+ " ! capsfilter caps=video/x-raw,width=160,height=120,framerate=10000000/1111111,format=GRAY16_LE";
+
+	private final String description;
+	private Pipeline pipeline;
+	private AppSink appSink;
+	private volatile Consumer consumer;
+	private volatile boolean running = false;
+	private CaptureMode captureMode = CaptureMode.CALLBACK;
+	private int maxBuffers = DEFAULT_MAX_BUFFERS;
+	private boolean drop = true;
+	private long pullTimeoutMs = DEFAULT_PULL_TIMEOUT_MS;
+	private Thread pullThread;
+	private volatile Clock clock;
+	private final FrameDecoderCache decoders = new FrameDecoderCache();
+
+	public GstFrameSource(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * To be set before {@link #start(Consumer)}.
+	 */
+	public void setCaptureMode(CaptureMode captureMode) {
+		this.captureMode = captureMode;
+	}
+	public CaptureMode getCaptureMode() {
+		return captureMode;
+	}
+	/**
+	 * @param maxBuffers samples the appsink queues at most, 0 for no limit
+	 */
+	public void setMaxBuffers(int maxBuffers) {
+		this.maxBuffers = maxBuffers;
+	}
+	/**
+	 * @param drop drop the oldest sample when the appsink queue is full, or block the streaming thread
+	 */
+	public void setDrop(boolean drop) {
+		this.drop = drop;
+	}
+	/**
+	 * @param pullTimeoutMs time a pull waits for a sample before checking the source is still running
+	 */
+	public void setPullTimeout(long pullTimeoutMs) {
+		this.pullTimeoutMs = pullTimeoutMs;
+	}
+
+	/**
+	 * A V4L2 device, like a PureThermal board on Linux.
+	 */
+	public static GstFrameSource v4l2(String device, int width, int height) {
+		return new GstFrameSource("v4l2src device="+device
+				+ " ! video/x-raw,format=GRAY16_LE,width="+width+",height="+height);
+	}
+
+	/**
+	 * A moving test pattern.
+	 * @param fps frame rate, or 0 for as fast as the frames are taken
+	 */
+	public static GstFrameSource videoTest(int width, int height, int fps) {
+		boolean live = fps > 0;
+		return new GstFrameSource("videotestsrc pattern=ball is-live="+live
+				+ " ! video/x-raw,format=GRAY16_LE,width="+width+",height="+height+",framerate="+(live ? fps : 1000)+"/1");
+	}
+
+	@Override
+	public void start(Consumer consumer) {
+		this.consumer = consumer;
+		Bin bin = Gst.parseBinFromDescription(description, true);
+
+		appSink = new AppSink("GstFrameSource");
+		appSink.set("max-buffers", maxBuffers);
+		appSink.set("drop", drop);
+		appSink.set("sync", false);
+		if (captureMode == CaptureMode.CALLBACK) {
+			appSink.set("emit-signals", true);
+			appSink.connect((AppSink.NEW_SAMPLE) this);
+		} else {
+			appSink.set("emit-signals", false);
+		}
+
+		pipeline = new Pipeline();
+		pipeline.getBus().connect((Bus.EOS) source -> running = false);
+		pipeline.getBus().connect((Bus.ERROR) (source, code, message) -> {
+			System.err.println("GStreamer error from "+source.getName()+": "+message);
+			running = false;
+		});
+		pipeline.addMany(bin, appSink);
+		Pipeline.linkMany(bin, appSink);
+		running = true;
+		pipeline.play();
+
+		if (captureMode == CaptureMode.PULL) {
+			pullThread = new Thread(this::pull, "GstFrameSource pull");
+			pullThread.setDaemon(true);
+			pullThread.start();
+		}
+	}
+
+	@Override
+	public FlowReturn newSample(AppSink elem) {
+		deliver(elem.pullSample());
+		return FlowReturn.OK;
+	}
+
+	private void pull() {
+		AppSink sink = appSink;
+		long timeoutNs = TimeUnit.MILLISECONDS.toNanos(pullTimeoutMs);
+		while (running) {
+			Sample sample = sink.emit(Sample.class, "try-pull-sample", timeoutNs);
+			if (sample != null) {
+				deliver(sample);
+			} else if (sink.isEOS()) {
+				running = false;
+			}
+		}
+	}
+
+	private void deliver(Sample sample) {
+		FrameDecoder decoder;
+		try {
+			decoder = decoders.get(sample.getCaps());
+		} catch (IllegalArgumentException e) {
+			System.err.println("GStreamer caps not supported: "+e.getMessage());
+			running = false;
+			sample.dispose();
+			return;
+		}
+
+		Buffer buffer = sample.getBuffer();
+		long pts = buffer.getPresentationTimestamp();
+		long captureNanos = System.nanoTime();
+		long age = pts >= 0 ? getRunningTime()-pts : -1;
+		// live sources only, a non live one runs ahead of the clock
+		if (age > 0 && age < MAX_AGE_NANOS) captureNanos -= age;
+		ByteBuffer bb = buffer.map(false);
+		if (bb != null) {
+			consumer.frame(decoder.decode(bb), decoder.getWidth(), decoder.getHeight(), pts, captureNanos);
+			buffer.unmap();
+		}
+		sample.dispose();
+	}
+
+	/**
+	 * Running time of the pipeline in ns, the clock of the presentation
+	 * timestamps of a live source, or -1 when not playing.
+	 */
+	public long getRunningTime() {
+		Pipeline p = pipeline;
+		if (p == null) return -1;
+		Clock c = clock;
+		if (c == null) {
+			c = p.getClock();
+			if (c == null) return -1;
+			clock = c;
+		}
+		return c.getTime()-p.getBaseTime();
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		if (pullThread != null) {
+			try {
+				pullThread.join(2*pullTimeoutMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			pullThread = null;
+		}
+		clock = null;
+		if (pipeline != null) {
+			pipeline.stop();
+			pipeline.dispose();
+			pipeline = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+	/**
+	 * The decoder of the last caps, or null before the first sample.
+	 */
+	public FrameDecoder getDecoder() {
+		return decoders.getDecoder();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+}
@@ -0,0 +1,368 @@
+package jpurethermal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.management.JMException;
+
+import org.freedesktop.gstreamer.Gst;
+import org.freedesktop.gstreamer.Version;
+
+import utils.Utils;
+
+/**
+ * Runs the processing chain without any window, from a {@link FrameSource}
+ * to {@link ResultSink}s, and reports the rates at the end. With an
+ * unthrottled source and the blocking ring policy the analysis rate is the
+ * throughput of the machine.
+ * <p>
+ * Options:
+ * <pre>
+ * --source=synthetic | videotest | v4l2[:device] | file:path | recording:path | gst:description
+ * --size=160x120       frame size of the synthetic, videotest, v4l2 and file sources
+ * --rate=0             frames per second of the source, 0 for unthrottled
+ * --speed=0            playback speed of a recording, 1 for real time, 0 for unthrottled
+ * --from=0 --to=end    frames of a recording to play
+ * --frames=0           frames to deliver for the synthetic source, 0 for no limit
+ * --duration=10        seconds to run, 0 until the source ends
+ * --capture=callback   appsink capture mode of the GStreamer sources, callback or pull
+ * --policy=block       ring policy when the analysis is late, block or drop
+ * --filter=none        temporal filter, ema[:alpha], mean[:frames] or median[:frames]
+ * --agc=minmax         displayed range, minmax or percentile[:low:high[:attack:decay]]
+ * --roi=x,y,w,h        region of interest, repeated for several regions
+ * --roi-series=path    writes the time series of the regions to a CSV file
+ * --hotspots=rel:0.8   detects the hot regions, above a fraction of the displayed range or abs:degrees
+ * --csv=path           writes the results of each frame to a CSV file
+ * --record=directory   records the raw frames, see {@link RawRecorder}
+ * --log=0              seconds between two metrics lines, 0 for none
+ * --quiet              no statistics every second
+ * </pre>
+ */
+public class HeadlessPureThermal {
+	/** Nominal frame rate of the Lepton sensors */
+	public static final double SENSOR_RATE = 9.0;
+
+	private FrameSource source;
+	private FrameRing.Policy policy = FrameRing.Policy.BLOCK;
+	private long durationMs = 10_000;
+	private File csvFile;
+	private File recordDirectory;
+	private boolean quiet = false;
+	private long logPeriodMs = 0;
+	private String filter = "none";
+	private String agc = "minmax";
+	private final List<int[]> rois = new ArrayList<>();
+	private File roiSeriesFile;
+	private String hotspots;
+
+	public HeadlessPureThermal(FrameSource source) {
+		this.source = source;
+	}
+
+	public void setPolicy(FrameRing.Policy policy) {
+		this.policy = policy;
+	}
+	/**
+	 * @param durationMs time to run, 0 until the source ends
+	 */
+	public void setDuration(long durationMs) {
+		this.durationMs = durationMs;
+	}
+	public void setCsvFile(File csvFile) {
+		this.csvFile = csvFile;
+	}
+	/**
+	 * @param recordDirectory where to record the raw frames, null for none
+	 */
+	public void setRecordDirectory(File recordDirectory) {
+		this.recordDirectory = recordDirectory;
+	}
+	/**
+	 * @param logPeriodMs time between two lines of {@link PipelineMetrics}, 0 for none
+	 */
+	public void setLogPeriod(long logPeriodMs) {
+		this.logPeriodMs = logPeriodMs;
+	}
+	/**
+	 * @param filter temporal filter, none, ema[:alpha], mean[:frames] or median[:frames]
+	 */
+	public void setFilter(String filter) {
+		this.filter = filter;
+	}
+	/**
+	 * @param agc displayed range, minmax or percentile[:low:high[:attack:decay]], percentiles as fractions
+	 */
+	public void setAgc(String agc) {
+		this.agc = agc;
+	}
+	/**
+	 * Adds a region of interest of w x h pixels from x, y.
+	 */
+	public void addRoi(int x, int y, int w, int h) {
+		rois.add(new int[] {x, y, w, h});
+	}
+	/**
+	 * @param roiSeriesFile where to write the time series of the regions at the end, null for none
+	 */
+	public void setRoiSeriesFile(File roiSeriesFile) {
+		this.roiSeriesFile = roiSeriesFile;
+	}
+	/**
+	 * @param hotspots threshold of the hot regions, rel:fraction or abs:degrees, null for no detection
+	 */
+	public void setHotspots(String hotspots) {
+		this.hotspots = hotspots;
+	}
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Processes the frames of the source until the duration is over or the
+	 * source ends, then waits for the pending frames.
+	 */
+	public void run() throws IOException, InterruptedException {
+		PureThermalAppSinkListener listener = new PureThermalAppSinkListener(FrameRing.DEFAULT_CAPACITY, policy);
+		listener.setPrintRate(!quiet);
+		PipelineMetrics metrics = listener.getMetrics();
+		metrics.setName("headless");
+		try {
+			metrics.register();
+		} catch (JMException e) {
+			System.err.println("metrics not exported: "+e);
+		}
+		if (logPeriodMs > 0) metrics.startLogging(logPeriodMs, System.out);
+		configureFilter(listener.getAnalyzer().getTemporalFilter(), filter);
+		configureAgc(listener.getAnalyzer(), agc);
+		RoiEngine roiEngine = null;
+		if (!rois.isEmpty()) {
+			roiEngine = listener.getRoiEngine();
+			roiEngine.setSeriesCapacity(1 << 16);
+			for (int[] r : rois) {
+				roiEngine.addRoi("roi"+roiEngine.getRois().length, r[0], r[1], r[2], r[3]);
+			}
+		}
+		HotspotDetector hotspotDetector = null;
+		if (hotspots != null) {
+			hotspotDetector = listener.getHotspotDetector();
+			configureHotspots(hotspotDetector, hotspots);
+		}
+		StatisticsSink statistics = new StatisticsSink();
+		if (!quiet) listener.getAnalyzer().addSink(statistics);
+		CsvResultSink csv = null;
+		if (csvFile != null) {
+			csv = new CsvResultSink(csvFile);
+			listener.getAnalyzer().addSink(csv);
+		}
+
+		FrameSource.Consumer consumer = listener;
+		RawRecorder recorder = null;
+		if (recordDirectory != null) {
+			RawRecorder r = new RawRecorder(recordDirectory, "recording");
+			consumer = (sb, w, h, timestamp, captureNanos) -> {
+				r.frame(sb, w, h, timestamp, captureNanos);
+				listener.frame(sb, w, h, timestamp, captureNanos);
+			};
+			recorder = r;
+		}
+
+		System.out.println("Source: "+source);
+		System.out.println("Kernels: "+FrameKernels.get());
+		System.out.println("Temporal filter: "+listener.getAnalyzer().getTemporalFilter());
+		ThermalAnalyzer analyzer = listener.getAnalyzer();
+		System.out.println("Range: "+(analyzer.getRangeMode() == ThermalAnalyzer.RangeMode.PERCENTILE
+				? analyzer.getPercentileGain() : "min/max"));
+		long startNanos = System.nanoTime();
+		source.start(consumer);
+		long deadline = durationMs > 0 ? System.currentTimeMillis()+durationMs : Long.MAX_VALUE;
+		while (source.isRunning() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		source.stop();
+		FrameRing ring = listener.getFrameRing();
+		while (ring != null && ring.getPending() > 0) {
+			Thread.sleep(1);
+		}
+		listener.stop();
+		metrics.stopLogging();
+		metrics.unregister();
+		double seconds = (System.nanoTime()-startNanos)/1e9;
+		if (csv != null) csv.close();
+		if (recorder != null) {
+			recorder.close();
+			System.out.println(recorder.getFrameCount()+" frames recorded in "+recorder.getSegmentCount()+" segments to "+recordDirectory);
+		}
+
+		long offered = ring == null ? 0 : ring.getOfferedCount();
+		long processed = listener.getProcessedCount();
+		System.out.println(String.format("%d frames offered, %d analysed, %d dropped in %.2f s: %.1f frames/s analysed, %.0fx the sensor rate",
+				offered, processed, listener.getDroppedCount(), seconds, processed/seconds, processed/seconds/SENSOR_RATE));
+		if (source instanceof PlaybackFrameSource) {
+			PlaybackFrameSource playback = (PlaybackFrameSource) source;
+			System.out.println(String.format("Playback: %d frames at %.1f frames/s", playback.getDeliveredCount(), playback.getThroughput()));
+		}
+		if (roiEngine != null) {
+			System.out.println(String.format("Regions: %d, tables built in %.1f us, regions updated in %.1f us for the last frame",
+					roiEngine.getRois().length, roiEngine.getBuildNanos()/1000.0, roiEngine.getEvaluateNanos()/1000.0));
+			for (Roi roi : roiEngine.getRois()) {
+				System.out.println(String.format("  %s: mean %.2f  std %.2f  min %.2f  max %.2f", roi,
+						roi.getMean(), roi.getStdDev(), roi.getMin(), roi.getMax()));
+			}
+			if (roiSeriesFile != null) writeRoiSeries(roiEngine, roiSeriesFile);
+		}
+		if (hotspotDetector != null) {
+			System.out.println(String.format("Hotspots: %d above %.2f in the last frame, detected in %.1f us",
+					hotspotDetector.getHotspotCount(), hotspotDetector.getLastThreshold(), hotspotDetector.getDetectNanos()/1000.0));
+			for (Hotspot hotspot : hotspotDetector.getHotspots()) {
+				System.out.println("  "+hotspot);
+			}
+		}
+	}
+
+	private static void writeRoiSeries(RoiEngine roiEngine, File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file)) {
+			out.println("roi,sequence,timestamp,mean,std,min,max");
+			for (Roi roi : roiEngine.getRois()) {
+				Roi.Series series = roi.getSeries();
+				for (int i = 0; i < series.size(); i++) {
+					out.println(String.format(Locale.ROOT, "%s,%d,%d,%.3f,%.3f,%.2f,%.2f", roi.getName(), series.sequences[i],
+							series.timestamps[i], series.means[i], series.stdDevs[i], series.mins[i], series.maxs[i]));
+				}
+			}
+		}
+	}
+
+	private static void configureFilter(TemporalFilter temporalFilter, String filter) {
+		String[] parts = filter.split(":");
+		TemporalFilter.Mode mode = TemporalFilter.Mode.valueOf(parts[0].toUpperCase());
+		if (parts.length > 1) {
+			if (mode == TemporalFilter.Mode.EMA) temporalFilter.setAlpha(Float.parseFloat(parts[1]));
+			else temporalFilter.setWindow(Integer.parseInt(parts[1]));
+		}
+		temporalFilter.setMode(mode);
+	}
+
+	private static void configureAgc(ThermalAnalyzer analyzer, String agc) {
+		String[] parts = agc.split(":");
+		if (parts[0].equals("minmax")) {
+			analyzer.setRangeMode(ThermalAnalyzer.RangeMode.MIN_MAX);
+			return;
+		}
+		if (!parts[0].equals("percentile")) throw new IllegalArgumentException("unknown agc "+agc);
+		PercentileGain gain = analyzer.getPercentileGain();
+		if (parts.length > 2) gain.setPercentiles(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+		if (parts.length > 4) gain.setSmoothing(Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+		analyzer.setRangeMode(ThermalAnalyzer.RangeMode.PERCENTILE);
+	}
+
+	private static void configureHotspots(HotspotDetector hotspotDetector, String hotspots) {
+		String[] parts = hotspots.split(":");
+		HotspotDetector.ThresholdMode mode = parts[0].equals("abs") ? HotspotDetector.ThresholdMode.ABSOLUTE
+				: HotspotDetector.ThresholdMode.RELATIVE;
+		float threshold = parts.length > 1 ? Float.parseFloat(parts[1]) : hotspotDetector.getThreshold();
+		hotspotDetector.setThreshold(mode, threshold);
+	}
+
+	private static int[] parseSize(String size) {
+		String[] wh = size.split("x");
+		return new int[] {Integer.parseInt(wh[0]), Integer.parseInt(wh[1])};
+	}
+
+	public static void main(String[] args) throws Exception {
+		String sourceOption = "synthetic";
+		int[] size = {160, 120};
+		double rate = 0;
+		double speed = 0;
+		long from = 0;
+		long to = -1;
+		long frames = 0;
+		long durationMs = 10_000;
+		FrameRing.Policy policy = FrameRing.Policy.BLOCK;
+		GstFrameSource.CaptureMode capture = GstFrameSource.CaptureMode.CALLBACK;
+		File csvFile = null;
+		File recordDirectory = null;
+		boolean quiet = false;
+		long logPeriodMs = 0;
+		String filter = "none";
+		String agc = "minmax";
+		List<int[]> rois = new ArrayList<>();
+		File roiSeriesFile = null;
+		String hotspots = null;
+
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=')+1);
+			if (arg.startsWith("--source=")) sourceOption = value;
+			else if (arg.startsWith("--size=")) size = parseSize(value);
+			else if (arg.startsWith("--rate=")) rate = Double.parseDouble(value);
+			else if (arg.startsWith("--speed=")) speed = Double.parseDouble(value);
+			else if (arg.startsWith("--from=")) from = Long.parseLong(value);
+			else if (arg.startsWith("--to=")) to = Long.parseLong(value);
+			else if (arg.startsWith("--frames=")) frames = Long.parseLong(value);
+			else if (arg.startsWith("--duration=")) durationMs = (long) (Double.parseDouble(value)*1000);
+			else if (arg.startsWith("--capture=")) capture = GstFrameSource.CaptureMode.valueOf(value.toUpperCase());
+			else if (arg.startsWith("--policy=")) policy = value.equals("drop") ? FrameRing.Policy.DROP_OLDEST : FrameRing.Policy.BLOCK;
+			else if (arg.startsWith("--filter=")) filter = value;
+			else if (arg.startsWith("--agc=")) agc = value;
+			else if (arg.startsWith("--roi=")) {
+				String[] r = value.split(",");
+				rois.add(new int[] {Integer.parseInt(r[0]), Integer.parseInt(r[1]), Integer.parseInt(r[2]), Integer.parseInt(r[3])});
+			}
+			else if (arg.startsWith("--roi-series=")) roiSeriesFile = new File(value);
+			else if (arg.startsWith("--hotspots=")) hotspots = value;
+			else if (arg.startsWith("--csv=")) csvFile = new File(value);
+			else if (arg.startsWith("--record=")) recordDirectory = new File(value);
+			else if (arg.startsWith("--log=")) logPeriodMs = (long) (Double.parseDouble(value)*1000);
+			else if (arg.equals("--quiet")) quiet = true;
+			else throw new IllegalArgumentException("unknown option "+arg);
+		}
+
+		FrameSource source;
+		if (sourceOption.equals("synthetic")) {
+			source = new SyntheticFrameSource(size[0], size[1], rate, frames);
+		} else if (sourceOption.startsWith("file:")) {
+			source = new RawFileFrameSource(new File(sourceOption.substring(5)), size[0], size[1], rate, false);
+		} else if (sourceOption.startsWith("recording:")) {
+			// a directory of the default recording name, or directory/name
+			File path = new File(sourceOption.substring(10));
+			RawRecording recording = path.isDirectory() ? new RawRecording(path, "recording")
+					: new RawRecording(path.getAbsoluteFile().getParentFile(), path.getName());
+			PlaybackFrameSource playback = new PlaybackFrameSource(recording);
+			playback.setRange(from, to < 0 ? recording.getFrameCount() : to);
+			playback.setSpeed(speed);
+			source = playback;
+		} else {
+			Utils.configurePaths();
+			Gst.init(Version.BASELINE, "HeadlessPureThermal");
+			if (sourceOption.equals("videotest")) {
+				source = GstFrameSource.videoTest(size[0], size[1], (int) rate);
+			} else if (sourceOption.startsWith("v4l2")) {
+				String device = sourceOption.startsWith("v4l2:") ? sourceOption.substring(5) : "/dev/video0";
+				source = GstFrameSource.v4l2(device, size[0], size[1]);
+			} else if (sourceOption.startsWith("gst:")) {
+				source = new GstFrameSource(sourceOption.substring(4));
+			} else {
+				throw new IllegalArgumentException("unknown source "+sourceOption);
+			}
+			((GstFrameSource) source).setCaptureMode(capture);
+		}
+
+		HeadlessPureThermal headless = new HeadlessPureThermal(source);
+		headless.setPolicy(policy);
+		headless.setDuration(durationMs);
+		headless.setFilter(filter);
+		headless.setAgc(agc);
+		for (int[] r : rois) headless.addRoi(r[0], r[1], r[2], r[3]);
+		headless.setRoiSeriesFile(roiSeriesFile);
+		headless.setHotspots(hotspots);
+		headless.setCsvFile(csvFile);
+		headless.setRecordDirectory(recordDirectory);
+		headless.setQuiet(quiet);
+		headless.setLogPeriod(logPeriodMs);
+		headless.run();
+	}
+
+}
@@ -0,0 +1,119 @@
+package jpurethermal;
+
+import java.util.Arrays;
+
+/**
+ * Fills the histogram and the two projections of a frame in a single pass.
+ * The bin of a pixel is computed directly from its value instead of being
+ * searched in the histogram X axis.
+ * <p>
+ * From the raw values the bin of each raw value of the frame range is
+ * computed once, with the same arithmetic as from the temperatures, for the
+ * sweeps of the {@link FusedFrameKernel}.
+ */
+public class HistogramBinner {
+	public static final int PROJECTION_CLAMP = 16;
+	private final int bins;
+	private final double clamp;
+	// bin of each raw value from the raw min, -1 out of the range
+	private int[] rawBins = new int[0];
+
+	public HistogramBinner(int bins) {
+		this(bins, PROJECTION_CLAMP);
+	}
+
+	/**
+	 * @param clamp maximum count of a projection cell
+	 */
+	public HistogramBinner(int bins, double clamp) {
+		this.bins = bins;
+		this.clamp = clamp;
+	}
+
+	public int getBins() {
+		return bins;
+	}
+
+	/**
+	 * Bin index of a value for a histogram spanning [min, max] with equal width bins.
+	 * Values equal to max fall in the last bin.
+	 * @return the bin index, or -1 if the value is out of range
+	 */
+	public int binIndex(double value, double min, double max) {
+		if (value < min || value > max || max <= min) return -1;
+		int k = (int) ((value-min) * (bins/(max-min)));
+		return k < bins ? k : bins-1;
+	}
+
+	public double getClamp() {
+		return clamp;
+	}
+	/**
+	 * The clamp of the projections for integer counts: an int count is below
+	 * the clamp when below its ceiling.
+	 */
+	public int getLimit() {
+		return (int) Math.ceil(clamp);
+	}
+
+	/**
+	 * The bin of each raw value of [rawMin, rawMax] from rawMin, computed as
+	 * from the temperatures, -1 out of [min, max].
+	 * @return a table valid until the next call, null if there is nothing to bin
+	 */
+	int[] rawBins(ThermalFrame frame, int rawMin, int rawMax, double min, double max) {
+		if (!(max > min) || rawMax < rawMin) return null;
+		int range = rawMax-rawMin+1;
+		if (rawBins.length < range) rawBins = new int[range];
+		int[] lut = rawBins;
+		double scale = bins/(max-min);
+		int last = bins-1;
+		for (int v = rawMin; v <= rawMax; v++) {
+			double value = frame.toTemperature(v);
+			if (value < min || value > max) {
+				lut[v-rawMin] = -1;
+			} else {
+				int k = (int) ((value-min) * scale);
+				lut[v-rawMin] = k > last ? last : k;
+			}
+		}
+		return lut;
+	}
+
+	/**
+	 * Clears then fills histogramY[bins], horProjection[height][bins] and
+	 * vertProjection[bins][width] from the temperatures view of the frame.
+	 * Projections are clamped, by default at {@link #PROJECTION_CLAMP}.
+	 */
+	public void bin(ThermalFrame frame, double min, double max,
+			double[] histogramY, double[][] horProjection, double[][] vertProjection) {
+		Arrays.fill(histogramY, 0.0);
+		for (int i = 0; i < horProjection.length; i++) {
+			Arrays.fill(horProjection[i], 0.0);
+		}
+		for (int i = 0; i < vertProjection.length; i++) {
+			Arrays.fill(vertProjection[i], 0.0);
+		}
+		if (max <= min) return;
+
+		float[] temperatures = frame.getTemperatures();
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		double scale = bins/(max-min);
+		int last = bins-1;
+		for (int heightIdx = 0; heightIdx < height; heightIdx++) {
+			int rowStart = frame.index(0, heightIdx);
+			double[] horRow = horProjection[heightIdx];
+			for (int widthIdx = 0; widthIdx < width; widthIdx++) {
+				double value = temperatures[rowStart+widthIdx];
+				if (value < min || value > max) continue;
+				int k = (int) ((value-min) * scale);
+				if (k > last) k = last;
+				histogramY[k]++;
+				if (horRow[k] < clamp) horRow[k]++;
+				if (vertProjection[last-k][widthIdx] < clamp) vertProjection[last-k][widthIdx]++;
+			}
+		}
+	}
+
+}
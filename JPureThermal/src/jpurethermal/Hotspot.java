@@ -0,0 +1,105 @@
+package jpurethermal;
+
+/**
+ * A connected region of pixels above the threshold of a
+ * {@link HotspotDetector}, with the same id in the following frames as long
+ * as it is found again near its previous position.
+ */
+public class Hotspot {
+	int id;
+	int age;
+	long firstSequence;
+	int area;
+	double sumX, sumY, sumT;
+	float peak;
+	int peakX, peakY;
+	int minX, minY, maxX, maxY;
+
+	void copyFrom(Hotspot h) {
+		id = h.id;
+		age = h.age;
+		firstSequence = h.firstSequence;
+		area = h.area;
+		sumX = h.sumX;
+		sumY = h.sumY;
+		sumT = h.sumT;
+		peak = h.peak;
+		peakX = h.peakX;
+		peakY = h.peakY;
+		minX = h.minX;
+		minY = h.minY;
+		maxX = h.maxX;
+		maxY = h.maxY;
+	}
+
+	public Hotspot copy() {
+		Hotspot h = new Hotspot();
+		h.copyFrom(this);
+		return h;
+	}
+
+	/**
+	 * Identifier kept while the hotspot is tracked, from 1.
+	 */
+	public int getId() {
+		return id;
+	}
+	/**
+	 * Number of consecutive frames the hotspot was found in, 1 when it appears.
+	 */
+	public int getAge() {
+		return age;
+	}
+	/**
+	 * Sequence of the frame the hotspot appeared in.
+	 */
+	public long getFirstSequence() {
+		return firstSequence;
+	}
+	/**
+	 * Number of pixels.
+	 */
+	public int getArea() {
+		return area;
+	}
+	public double getCentroidX() {
+		return sumX/area;
+	}
+	public double getCentroidY() {
+		return sumY/area;
+	}
+	public double getMeanTemperature() {
+		return sumT/area;
+	}
+	public float getPeakTemperature() {
+		return peak;
+	}
+	public int getPeakX() {
+		return peakX;
+	}
+	public int getPeakY() {
+		return peakY;
+	}
+	/**
+	 * Bounding box, min and max included.
+	 */
+	public int getMinX() {
+		return minX;
+	}
+	public int getMinY() {
+		return minY;
+	}
+	public int getMaxX() {
+		return maxX;
+	}
+	public int getMaxY() {
+		return maxY;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("#%d %d px at (%.1f, %.1f) [%d,%d]-[%d,%d] peak %.2f mean %.2f age %d",
+				id, area, getCentroidX(), getCentroidY(), minX, minY, maxX, maxY, peak, getMeanTemperature(), age);
+	}
+
+}
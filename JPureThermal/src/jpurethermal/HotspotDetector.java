@@ -0,0 +1,390 @@
+package jpurethermal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the hot regions of each frame: the pixels above a threshold, either
+ * absolute or relative to the displayed range of the {@link ThermalAnalyzer},
+ * grouped in 8 (or 4) connected {@link Hotspot}s tracked from frame to frame.
+ * <p>
+ * The labeling is a single pass over the frame with a union-find of the
+ * provisional labels. Only the labels of the previous and current rows are
+ * kept, and the area, sums, peak and bounding box of a region are merged
+ * into the root of its labels as they are joined, so no second pass is
+ * needed. A region of the frame takes the id of the nearest region of the
+ * previous frame within the tracking distance, the largest regions first.
+ * <p>
+ * All the buffers are allocated for a frame size and reused, detection does
+ * not allocate afterwards. The results are read from any thread with
+ * {@link #getHotspots()}.
+ */
+public class HotspotDetector implements ResultSink {
+	public static final int DEFAULT_MAX_HOTSPOTS = 64;
+
+	public enum ThresholdMode {
+		/** threshold in degrees */
+		ABSOLUTE,
+		/** threshold as a fraction of the displayed range, 0 for pixMin, 1 for pixMax */
+		RELATIVE
+	}
+
+	private volatile ThresholdMode thresholdMode = ThresholdMode.RELATIVE;
+	private volatile float threshold = 0.8f;
+	private volatile int minArea = 4;
+	private volatile boolean eightConnected = true;
+	private volatile double trackingDistance = 8;
+	private final int maxHotspots;
+	private final FrameKernels kernels = FrameKernels.get();
+
+	// labeling buffers, sized for the frame
+	private int width = -1, height = -1;
+	private int[] previousRow = new int[0], currentRow = new int[0];
+	private int[] parent = new int[0];
+	private int[] area = new int[0];
+	private long[] sumX = new long[0], sumY = new long[0];
+	private double[] sumT = new double[0];
+	private float[] peak = new float[0];
+	private int[] peakX = new int[0], peakY = new int[0];
+	private int[] minX = new int[0], minY = new int[0], maxX = new int[0], maxY = new int[0];
+	private int labelCount;
+
+	// regions of the current and previous frames, and the published ones
+	private Hotspot[] current, previous;
+	private int currentCount, previousCount;
+	private final boolean[] matched;
+	private int nextId = 1;
+	private final Hotspot[] published;
+	private int publishedCount;
+	private long publishedSequence = -1;
+	private volatile float lastThreshold = Float.NaN;
+	private volatile long detectNanos;
+
+	public HotspotDetector() {
+		this(DEFAULT_MAX_HOTSPOTS);
+	}
+
+	/**
+	 * @param maxHotspots regions reported per frame, the largest ones
+	 */
+	public HotspotDetector(int maxHotspots) {
+		this.maxHotspots = maxHotspots;
+		current = pool(maxHotspots);
+		previous = pool(maxHotspots);
+		published = pool(maxHotspots);
+		matched = new boolean[maxHotspots];
+	}
+
+	private static Hotspot[] pool(int n) {
+		Hotspot[] pool = new Hotspot[n];
+		for (int i = 0; i < n; i++) pool[i] = new Hotspot();
+		return pool;
+	}
+
+	/**
+	 * @param threshold in degrees, or fraction of the displayed range, see {@link ThresholdMode}
+	 */
+	public void setThreshold(ThresholdMode mode, float threshold) {
+		this.threshold = threshold;
+		this.thresholdMode = mode;
+	}
+	public ThresholdMode getThresholdMode() {
+		return thresholdMode;
+	}
+	public float getThreshold() {
+		return threshold;
+	}
+	/**
+	 * @param minArea smallest region reported, in pixels
+	 */
+	public void setMinArea(int minArea) {
+		this.minArea = Math.max(1, minArea);
+	}
+	/**
+	 * @param eightConnected diagonal neighbours are connected, else only the 4 direct ones
+	 */
+	public void setEightConnected(boolean eightConnected) {
+		this.eightConnected = eightConnected;
+	}
+	/**
+	 * @param trackingDistance largest move of a centroid between two frames for a region to keep its id, in pixels
+	 */
+	public void setTrackingDistance(double trackingDistance) {
+		this.trackingDistance = trackingDistance;
+	}
+
+	@Override
+	public void result(ThermalFrame frame, ThermalAnalyzer analyzer) {
+		float t = threshold;
+		if (thresholdMode == ThresholdMode.RELATIVE) {
+			t = (float) (analyzer.getPixMin()+t*(analyzer.getPixMax()-analyzer.getPixMin()));
+		}
+		detect(frame, t);
+	}
+
+	/**
+	 * Finds and tracks the regions of the frame at or above the threshold, in degrees.
+	 */
+	public void detect(ThermalFrame frame, float threshold) {
+		long start = System.nanoTime();
+		label(frame, threshold);
+		collect();
+		track(frame.getSequence());
+		publish(frame.getSequence());
+		lastThreshold = threshold;
+		detectNanos = System.nanoTime()-start;
+	}
+
+	private void resize(int w, int h) {
+		width = w;
+		height = h;
+		previousRow = new int[w];
+		currentRow = new int[w];
+		// most provisional labels, a checkerboard with 4 connectivity
+		int labels = (w*h+1)/2+1;
+		parent = new int[labels];
+		area = new int[labels];
+		sumX = new long[labels];
+		sumY = new long[labels];
+		sumT = new double[labels];
+		peak = new float[labels];
+		peakX = new int[labels];
+		peakY = new int[labels];
+		minX = new int[labels];
+		minY = new int[labels];
+		maxX = new int[labels];
+		maxY = new int[labels];
+	}
+
+	private void label(ThermalFrame frame, float threshold) {
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+		if (w != width || h != height) resize(w, h);
+		float[] t = frame.getTemperatures();
+		int stride = frame.getStride();
+		boolean eight = eightConnected;
+		int[] prev = previousRow, cur = currentRow;
+		Arrays.fill(prev, 0);
+		int labels = 0;
+
+		for (int y = 0; y < h; y++) {
+			int row = y*stride;
+			int left = 0;
+			for (int x = 0; x < w; x++) {
+				float v = t[row+x];
+				if (!(v >= threshold)) {
+					// up to the next pixel above the threshold
+					int next = kernels.firstAtLeast(t, row+x+1, row+w, threshold)-row;
+					Arrays.fill(cur, x, next, 0);
+					left = 0;
+					x = next-1;
+					continue;
+				}
+				int label = left;
+				int n = prev[x];
+				if (n != 0) {
+					// the pixels above on both sides are connected to n already
+					if (label == 0) label = find(n);
+					else if (n != label) label = join(label, n);
+				} else if (eight) {
+					// the pixel above on the left is connected to the left one already
+					if (label == 0 && x > 0 && (n = prev[x-1]) != 0) label = find(n);
+					if (x+1 < w && (n = prev[x+1]) != 0) label = label == 0 ? find(n) : join(label, n);
+				}
+				if (label == 0) {
+					label = ++labels;
+					parent[label] = label;
+					area[label] = 0;
+					sumX[label] = 0;
+					sumY[label] = 0;
+					sumT[label] = 0;
+					peak[label] = v;
+					peakX[label] = x;
+					peakY[label] = y;
+					minX[label] = x;
+					minY[label] = y;
+					maxX[label] = x;
+					maxY[label] = y;
+				}
+				// label is a root
+				area[label]++;
+				sumX[label] += x;
+				sumY[label] += y;
+				sumT[label] += v;
+				if (v > peak[label]) {
+					peak[label] = v;
+					peakX[label] = x;
+					peakY[label] = y;
+				}
+				if (x < minX[label]) minX[label] = x;
+				if (x > maxX[label]) maxX[label] = x;
+				maxY[label] = y;
+				cur[x] = label;
+				left = label;
+			}
+			int[] swap = prev;
+			prev = cur;
+			cur = swap;
+		}
+		labelCount = labels;
+	}
+
+	private int find(int label) {
+		int[] parent = this.parent;
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+
+	/**
+	 * Joins the regions of a root and of another label, the statistics go to
+	 * the smaller root.
+	 * @return the root of both
+	 */
+	private int join(int root, int label) {
+		int other = find(label);
+		if (other == root) return root;
+		int to = Math.min(root, other);
+		int from = Math.max(root, other);
+		parent[from] = to;
+		area[to] += area[from];
+		sumX[to] += sumX[from];
+		sumY[to] += sumY[from];
+		sumT[to] += sumT[from];
+		if (peak[from] > peak[to]) {
+			peak[to] = peak[from];
+			peakX[to] = peakX[from];
+			peakY[to] = peakY[from];
+		}
+		if (minX[from] < minX[to]) minX[to] = minX[from];
+		if (minY[from] < minY[to]) minY[to] = minY[from];
+		if (maxX[from] > maxX[to]) maxX[to] = maxX[from];
+		if (maxY[from] > maxY[to]) maxY[to] = maxY[from];
+		return to;
+	}
+
+	/**
+	 * Fills the current regions with the largest roots.
+	 */
+	private void collect() {
+		int count = 0;
+		int min = minArea;
+		for (int label = 1; label <= labelCount; label++) {
+			if (parent[label] != label || area[label] < min) continue;
+			int slot;
+			if (count < maxHotspots) {
+				slot = count++;
+			} else {
+				// replaces the smallest region if larger
+				slot = 0;
+				for (int i = 1; i < count; i++) {
+					if (current[i].area < current[slot].area) slot = i;
+				}
+				if (current[slot].area >= area[label]) continue;
+			}
+			Hotspot hs = current[slot];
+			hs.area = area[label];
+			hs.sumX = sumX[label];
+			hs.sumY = sumY[label];
+			hs.sumT = sumT[label];
+			hs.peak = peak[label];
+			hs.peakX = peakX[label];
+			hs.peakY = peakY[label];
+			hs.minX = minX[label];
+			hs.minY = minY[label];
+			hs.maxX = maxX[label];
+			hs.maxY = maxY[label];
+		}
+		currentCount = count;
+
+		// largest first
+		for (int i = 1; i < count; i++) {
+			Hotspot hs = current[i];
+			int j = i-1;
+			while (j >= 0 && current[j].area < hs.area) {
+				current[j+1] = current[j];
+				j--;
+			}
+			current[j+1] = hs;
+		}
+	}
+
+	private void track(long sequence) {
+		Arrays.fill(matched, false);
+		double limit = trackingDistance*trackingDistance;
+		for (int i = 0; i < currentCount; i++) {
+			Hotspot hs = current[i];
+			double cx = hs.getCentroidX(), cy = hs.getCentroidY();
+			int best = -1;
+			double bestDistance = limit;
+			for (int j = 0; j < previousCount; j++) {
+				if (matched[j]) continue;
+				double dx = previous[j].getCentroidX()-cx;
+				double dy = previous[j].getCentroidY()-cy;
+				double d = dx*dx+dy*dy;
+				if (d <= bestDistance) {
+					bestDistance = d;
+					best = j;
+				}
+			}
+			if (best >= 0) {
+				matched[best] = true;
+				hs.id = previous[best].id;
+				hs.age = previous[best].age+1;
+				hs.firstSequence = previous[best].firstSequence;
+			} else {
+				hs.id = nextId++;
+				hs.age = 1;
+				hs.firstSequence = sequence;
+			}
+		}
+		Hotspot[] swap = previous;
+		previous = current;
+		current = swap;
+		previousCount = currentCount;
+	}
+
+	private synchronized void publish(long sequence) {
+		for (int i = 0; i < previousCount; i++) {
+			published[i].copyFrom(previous[i]);
+		}
+		publishedCount = previousCount;
+		publishedSequence = sequence;
+	}
+
+	/**
+	 * Copies of the regions of the last frame, largest first.
+	 */
+	public synchronized List<Hotspot> getHotspots() {
+		List<Hotspot> list = new ArrayList<>(publishedCount);
+		for (int i = 0; i < publishedCount; i++) {
+			list.add(published[i].copy());
+		}
+		return list;
+	}
+	public synchronized int getHotspotCount() {
+		return publishedCount;
+	}
+	/**
+	 * Sequence of the last frame, -1 before the first one.
+	 */
+	public synchronized long getSequence() {
+		return publishedSequence;
+	}
+	/**
+	 * Threshold used for the last frame, in degrees.
+	 */
+	public float getLastThreshold() {
+		return lastThreshold;
+	}
+	/**
+	 * Time to detect and track the regions of the last frame.
+	 */
+	public long getDetectNanos() {
+		return detectNanos;
+	}
+
+}
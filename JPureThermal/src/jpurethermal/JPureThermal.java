@@ -6,14 +6,12 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 
+import javax.management.JMException;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
-import org.freedesktop.gstreamer.Bin;
 import org.freedesktop.gstreamer.Gst;
-import org.freedesktop.gstreamer.Pipeline;
 import org.freedesktop.gstreamer.Version;
-import org.freedesktop.gstreamer.elements.AppSink;
 
 import cern.jdve.Chart;
 import cern.jdve.Style;
@@ -25,58 +23,51 @@ import utils.Utils;
 
 public class JPureThermal extends JPanel {
 
-	private static Pipeline pipeline;
+	private FrameSource source;
 	private PureThermalAppSinkListener pureThermalAppSinkListener;
 	private CursorInteractor verticalCursorInteractor;
 	private CursorInteractor horizontalCursorInteractor;
+	private boolean directImageRendering;
 	
 	public JPureThermal() {
-		// mfvideosrc device.path="\\\\\?\\usb\#vid_1e4e\&pid_0100\&mi_00\#6\&d03da6\&0\&0000\#\{e5323777-f976-4f5b-9b55-b94699c46e44\}\\global"     -> PureThermal (fw:v1.3.0)
-		
-//		videosComponent = new GstVideoComponentThermal();
+		this(new GstFrameSource(GstFrameSource.PURETHERMAL_WINDOWS), true);
+	}
 
-//		Bin bin = Gst.parseBinFromDescription(
-//				"mfvideosrc device-path=\"\\\\\\\\\\?\\\\usb\\#vid_1e4e\\&pid_0100\\&mi_00\\#6\\&d03da6\\&0\\&0000\\#\\{e5323777-f976-4f5b-9b55-b94699c46e44\\}\\\\global\""
-//						+ " ! capsfilter caps=video/x-raw,width=160,height=120,framerate=10000000/1111111,format=GRAY16_LE",
-//						true);
+	/**
+	 * @param source the camera, see {@link GstFrameSource} for the pipelines
+	 * @param directImageRendering paint the image with a {@link ThermalImageComponent}
+	 * instead of a jdve contour chart
+	 */
+	public JPureThermal(FrameSource source, boolean directImageRendering) {
+		this.source = source;
+		this.directImageRendering = directImageRendering;
+		// mfvideosrc device.path="\\\\\?\\usb\#vid_1e4e\&pid_0100\&mi_00\#6\&d03da6\&0\&0000\#\{e5323777-f976-4f5b-9b55-b94699c46e44\}\\global"     -> PureThermal (fw:v1.3.0)
 
 //		Bin bin = Gst.parseBinFromDescription(Utils.getPureThermalDescriptionForGst(), true);
 
-		Bin bin = Gst.parseBinFromDescription(
-				"mfvideosrc device-path=\"\\\\\\\\\\?\\\\usb\\#vid_1e4e\\&pid_0100\\&mi_00\\#6\\&d03da6\\&0\\&0000\\#\\{e5323777-f976-4f5b-9b55-b94699c46e44\\}\\\\global\""
-						+ " ! capsfilter caps=video/x-raw,width=160,height=120,framerate=10000000/1111111,format=GRAY16_LE",
-						true);
-		
-		
-
-		AppSink videosink = new AppSink("GstVideoComponentPureThermal");
-		videosink.set("emit-signals", true);
-		
 		pureThermalAppSinkListener = new PureThermalAppSinkListener();
-		videosink.connect((AppSink.NEW_SAMPLE) pureThermalAppSinkListener);
-		
-		pipeline = new Pipeline();
-		
-		Bin bin2 = new Bin();
-		
-		
-		pipeline.addMany(bin, videosink);
-		Pipeline.linkMany(bin, videosink);
-		pipeline.play();
+		try {
+			pureThermalAppSinkListener.getMetrics().register();
+		} catch (JMException e) {
+			System.err.println("metrics not exported: "+e);
+		}
+		source.start(pureThermalAppSinkListener);
 
 		initGUI();
 	}
 
 	private void initGUI() {
 		setLayout(new GridBagLayout());
+		ChartPublisher publisher = pureThermalAppSinkListener.getPublisher();
 
 		// histogram chart
 		Chart histoChart = new Chart();
 		histoChart.setPreferredSize(new Dimension(200, 200));
 		BarChartRenderer bcr = new BarChartRenderer();
 		bcr.setStyle(0, new Style(Color.black));
-		bcr.setDataSet(pureThermalAppSinkListener.getHistogramDataSet());
+		bcr.setDataSet(publisher.getHistogramDataSet());
 		histoChart.addRenderer(bcr);
+		publisher.setChart(ChartPublisher.Target.HISTOGRAM, histoChart);
 		histoChart.getYScale().setLogarithmic(10);
 		add(histoChart, new GridBagConstraints(2, 0, 1, 1, 0.1, 0.1, GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
 		
@@ -86,8 +77,9 @@ public class JPureThermal extends JPanel {
 		CustomPalette cphp = new CustomPalette();
 		cphp.setCustomPalette(new Color[] {Color.white, Color.darkGray, Color.black});
 		ContourChartRenderer crhp = new ContourChartRenderer(cphp);
-		crhp.setDataSet(pureThermalAppSinkListener.gethorizontalProjectionDataSet());
+		crhp.setDataSet(publisher.gethorizontalProjectionDataSet());
 		horizontalProjectionChart.addRenderer(crhp);
+		publisher.setChart(ChartPublisher.Target.HORIZONTAL_PROJECTION, horizontalProjectionChart);
 		horizontalProjectionChart.setYScaleVisible(false);
 //		verticalCursorInteractor = new CursorInteractor(true);
 //		horizontalProjectionChart.addInteractor(verticalCursorInteractor);
@@ -99,37 +91,76 @@ public class JPureThermal extends JPanel {
 		CustomPalette cpvp = new CustomPalette();
 		cpvp.setCustomPalette(new Color[] {Color.white, Color.darkGray, Color.black});
 		ContourChartRenderer crvp = new ContourChartRenderer(cpvp);
-		crvp.setDataSet(pureThermalAppSinkListener.getverticalProjectionDataSet());
+		crvp.setDataSet(publisher.getverticalProjectionDataSet());
 		verticalProjectionChart.addRenderer(crvp);
+		publisher.setChart(ChartPublisher.Target.VERTICAL_PROJECTION, verticalProjectionChart);
 		verticalProjectionChart.setXScaleVisible(false);
 //		horizontalCursorInteractor = new CursorInteractor(false);
 //		verticalProjectionChart.addInteractor(horizontalCursorInteractor);
 		add(verticalProjectionChart, new GridBagConstraints(1, 1, 1, 1, 0.1, 0.1, GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
 
-		// image chart
-		Chart imageChart = new Chart();
-		imageChart.setPreferredSize(new Dimension(300, 200));
-		CustomPalette cp = new CustomPalette();
-		cp.setCustomPalette(new Color[] {Color.white, Color.black, Color.magenta.darker(), Color.red, Color.yellow, Color.white});
-		ContourChartRenderer cr = new ContourChartRenderer(cp);
-		cr.setDataSet(pureThermalAppSinkListener.getImageDataSet());
-		imageChart.addRenderer(cr);
-//		DataPickerInteractor dpi = new DataPickerInteractor(false, false, true);
-//		ValueInteractor vi = new ValueInteractor(verticalCursorInteractor, horizontalCursorInteractor);
-//		dpi.addChartInteractionListener(vi);
-//		imageChart.addInteractor(dpi);
-		add(imageChart, new GridBagConstraints(1, 0, 1, 1, 0.1, 0.1, GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+		// image
+		if (directImageRendering) {
+			ThermalImageComponent imageComponent = new ThermalImageComponent();
+			imageComponent.setPreferredSize(new Dimension(300, 200));
+			publisher.addView(imageComponent);
+			add(imageComponent, new GridBagConstraints(1, 0, 1, 1, 0.1, 0.1, GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+		} else {
+			Chart imageChart = new Chart();
+			imageChart.setPreferredSize(new Dimension(300, 200));
+			CustomPalette cp = new CustomPalette();
+			cp.setCustomPalette(ThermalImageComponent.DEFAULT_PALETTE);
+			ContourChartRenderer cr = new ContourChartRenderer(cp);
+			cr.setDataSet(publisher.getImageDataSet());
+			imageChart.addRenderer(cr);
+			publisher.setChart(ChartPublisher.Target.IMAGE, imageChart);
+//			DataPickerInteractor dpi = new DataPickerInteractor(false, false, true);
+//			ValueInteractor vi = new ValueInteractor(verticalCursorInteractor, horizontalCursorInteractor);
+//			dpi.addChartInteractionListener(vi);
+//			imageChart.addInteractor(dpi);
+			add(imageChart, new GridBagConstraints(1, 0, 1, 1, 0.1, 0.1, GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+		}
+
+		// waterfall of the hottest pixel of each row
+		TimeScanComponent timeScanComponent = new TimeScanComponent(pureThermalAppSinkListener.getTimeScan());
+		timeScanComponent.setPreferredSize(new Dimension(200, 100));
+		publisher.addView(timeScanComponent);
+		add(timeScanComponent, new GridBagConstraints(2, 1, 1, 1, 0.1, 0.1, GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+
+		publisher.start();
+	}
+
+	/**
+	 * @param imageMode temperatures, or equalized for the local contrast
+	 * @param scale size of the equalized image in times the frame size
+	 */
+	public void setImageMode(ChartPublisher.ImageMode imageMode, int scale) {
+		ChartPublisher publisher = pureThermalAppSinkListener.getPublisher();
+		publisher.setImageScale(scale);
+		publisher.setImageMode(imageMode);
+	}
 
+	/**
+	 * @param mode what the waterfall records from each frame
+	 * @param position row or column for the row and column modes, -1 for the middle
+	 */
+	public void setTimeScan(TimeScan.Mode mode, int position) {
+		TimeScan timeScan = pureThermalAppSinkListener.getTimeScan();
+		timeScan.setPosition(position);
+		timeScan.setMode(mode);
 	}
 
 	public static void main(String[] args) {
 
 		Utils.configurePaths();
-		Gst.init(Version.BASELINE, "JPureThermal", args);
+		args = Gst.init(Version.BASELINE, "JPureThermal", args);
 		Utils.printDevicesList();
 
+		// an optional argument replaces the PureThermal pipeline, like "v4l2src device=/dev/video0"
+		String description = args.length > 0 ? args[0] : GstFrameSource.PURETHERMAL_WINDOWS;
+
 		JFrame f = new JFrame("Camera Test");
-		f.add(new JPureThermal());
+		f.add(new JPureThermal(new GstFrameSource(description), true));
 		f.pack();
 		f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
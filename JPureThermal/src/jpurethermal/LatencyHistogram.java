@@ -0,0 +1,107 @@
+package jpurethermal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations in ns counted in logarithmic buckets, 8 per power of two, so
+ * the percentiles are within 12.5%. Recording is a few array writes without
+ * lock or allocation. A histogram has one writing thread at a time and any
+ * number of readers.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+	private static final int SUB_BITS = 3;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = 64*SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	static int bucket(long nanos) {
+		if (nanos < SUB) return (int) Math.max(0, nanos);
+		int exp = 63-Long.numberOfLeadingZeros(nanos);
+		return (exp-SUB_BITS+1)*SUB + (int) ((nanos >>> (exp-SUB_BITS)) & (SUB-1));
+	}
+
+	/**
+	 * Highest duration counted in the bucket.
+	 */
+	static long bucketHigh(int bucket) {
+		if (bucket < SUB) return bucket;
+		int exp = bucket/SUB+SUB_BITS-1;
+		long low = (long) (SUB+bucket%SUB) << (exp-SUB_BITS);
+		return low+(1L << (exp-SUB_BITS))-1;
+	}
+
+	/**
+	 * Called by the writing thread only.
+	 */
+	public void record(long nanos) {
+		int b = bucket(nanos);
+		counts.lazySet(b, counts.get(b)+1);
+		sum.lazySet(sum.get()+nanos);
+		if (nanos > max.get()) max.lazySet(nanos);
+		count.lazySet(count.get()+1);
+	}
+
+	/**
+	 * Copy of the counts, to compute percentiles over an interval with
+	 * {@link #percentile(long[], long[], double)}.
+	 */
+	public long[] getCounts() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) copy[i] = counts.get(i);
+		return copy;
+	}
+
+	/**
+	 * Percentile of the durations counted between two copies of the counts.
+	 * @param before the older copy, or null for all
+	 * @param p between 0 and 1
+	 * @return the duration in ns, 0 if nothing was counted
+	 */
+	public static long percentile(long[] after, long[] before, double p) {
+		long total = 0;
+		for (int i = 0; i < after.length; i++) total += after[i]-(before == null ? 0 : before[i]);
+		if (total == 0) return 0;
+		long rank = (long) Math.ceil(p*total);
+		long seen = 0;
+		for (int i = 0; i < after.length; i++) {
+			seen += after[i]-(before == null ? 0 : before[i]);
+			if (seen >= rank && seen > 0) return bucketHigh(i);
+		}
+		return bucketHigh(after.length-1);
+	}
+
+	public long percentile(double p) {
+		return percentile(getCounts(), null, p);
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+	public long getSum() {
+		return sum.get();
+	}
+	@Override
+	public double getMeanMicros() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get()/1000.0/n;
+	}
+	@Override
+	public double getP50Micros() {
+		return percentile(0.5)/1000.0;
+	}
+	@Override
+	public double getP99Micros() {
+		return percentile(0.99)/1000.0;
+	}
+	@Override
+	public double getMaxMicros() {
+		return max.get()/1000.0;
+	}
+
+}
@@ -0,0 +1,12 @@
+package jpurethermal;
+
+/**
+ * JMX view of a {@link LatencyHistogram}, since its creation.
+ */
+public interface LatencyHistogramMBean {
+	long getCount();
+	double getMeanMicros();
+	double getP50Micros();
+	double getP99Micros();
+	double getMaxMicros();
+}
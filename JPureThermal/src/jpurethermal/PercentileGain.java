@@ -0,0 +1,216 @@
+package jpurethermal;
+
+import java.util.Arrays;
+
+/**
+ * Automatic gain control from percentiles of the raw values: the displayed
+ * range goes from the low to the high percentile of the frame, by default
+ * the 1st and 99th, so a few hot or dead pixels do not take the palette.
+ * <p>
+ * The percentiles come from a histogram of the 16 bits raw values, one bin
+ * per value, without sorting, and the pixel counts of its blocks of 256
+ * bins. A percentile is searched in the 256 blocks then in the 256 bins of
+ * its block, and only the blocks used by the last frame are cleared. The raw
+ * values are those of the sensor, before the temporal filter, converted with
+ * the table of the frame.
+ * <p>
+ * The limits follow the percentiles quickly when the range widens, by the
+ * attack fraction per frame, and slowly when it narrows, by the decay
+ * fraction, so the palette does not pump with the noise of the scene.
+ */
+public class PercentileGain {
+	private static final int BINS = 65536;
+	private static final int BLOCK_BITS = 8;
+	private static final int BLOCKS = BINS >>> BLOCK_BITS;
+
+	private final int[] counts = new int[BINS];
+	// pixels per block of 256 bins
+	private final int[] blockCounts = new int[BLOCKS];
+	// blocks with pixels in the last frame
+	private final boolean[] used = new boolean[BLOCKS];
+	private int count;
+
+	private volatile double lowPercentile = 0.01;
+	private volatile double highPercentile = 0.99;
+	private volatile double attack = 0.5;
+	private volatile double decay = 0.1;
+	private volatile boolean started = false;
+	private double low, high;
+	private int lowRaw, highRaw;
+	private long buildNanos, searchNanos;
+
+	/**
+	 * @param lowPercentile fraction of the pixels below the displayed range, from 0
+	 * @param highPercentile fraction of the pixels up to the top of the displayed range, to 1
+	 */
+	public void setPercentiles(double lowPercentile, double highPercentile) {
+		if (!(0 <= lowPercentile && lowPercentile < highPercentile && highPercentile <= 1)) {
+			throw new IllegalArgumentException("percentiles "+lowPercentile+", "+highPercentile);
+		}
+		this.lowPercentile = lowPercentile;
+		this.highPercentile = highPercentile;
+	}
+	public double getLowPercentile() {
+		return lowPercentile;
+	}
+	public double getHighPercentile() {
+		return highPercentile;
+	}
+
+	/**
+	 * @param attack fraction of the way to the percentiles moved per frame when the range widens, 1 for immediately
+	 * @param decay fraction of the way moved per frame when the range narrows
+	 */
+	public void setSmoothing(double attack, double decay) {
+		this.attack = Math.min(1, Math.max(0, attack));
+		this.decay = Math.min(1, Math.max(0, decay));
+	}
+	public double getAttack() {
+		return attack;
+	}
+	public double getDecay() {
+		return decay;
+	}
+
+	/**
+	 * Restarts from the percentiles of the next frame.
+	 */
+	public void reset() {
+		started = false;
+	}
+
+	/**
+	 * Builds the histogram of the frame, finds its percentiles and moves the
+	 * limits towards them.
+	 */
+	public void update(ThermalFrame frame) {
+		long start = System.nanoTime();
+		build(frame);
+		long built = System.nanoTime();
+		lowRaw = percentile(lowPercentile);
+		highRaw = percentile(highPercentile);
+		double l = frame.toTemperature(lowRaw);
+		double h = frame.toTemperature(highRaw);
+		if (!started) {
+			low = l;
+			high = h;
+			started = true;
+		} else {
+			low += (l < low ? attack : decay)*(l-low);
+			high += (h > high ? attack : decay)*(h-high);
+		}
+		buildNanos = built-start;
+		searchNanos = System.nanoTime()-built;
+	}
+
+	/**
+	 * Clears the bins of the previous frame and counts the raw values of this one.
+	 */
+	public void build(ThermalFrame frame) {
+		int[] counts = this.counts;
+		int[] blockCounts = this.blockCounts;
+		boolean[] used = this.used;
+		for (int b = 0; b < BLOCKS; b++) {
+			if (used[b]) {
+				Arrays.fill(counts, b << BLOCK_BITS, (b+1) << BLOCK_BITS, 0);
+				used[b] = false;
+			}
+		}
+		short[] raw = frame.getRaw();
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+		for (int y = 0; y < h; y++) {
+			int rowStart = frame.index(0, y);
+			for (int i = rowStart; i < rowStart+w; i++) {
+				int v = raw[i] & 0xFFFF;
+				counts[v]++;
+				// a store only, counting the blocks here would chain the
+				// increments of the neighbour pixels, mostly in the same block
+				used[v >>> BLOCK_BITS] = true;
+			}
+		}
+		for (int b = 0; b < BLOCKS; b++) {
+			if (!used[b]) {
+				blockCounts[b] = 0;
+				continue;
+			}
+			// independent sums, the additions do not wait for each other
+			int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			for (int i = b << BLOCK_BITS; i < (b+1) << BLOCK_BITS; i += 4) {
+				s0 += counts[i];
+				s1 += counts[i+1];
+				s2 += counts[i+2];
+				s3 += counts[i+3];
+			}
+			blockCounts[b] = s0+s1+s2+s3;
+		}
+		count = w*h;
+	}
+
+	/**
+	 * Smallest raw value of the last built frame with at least the fraction p
+	 * of the pixels at or below it. The block of the value is found first,
+	 * from the nearest end of the histogram, then the value in the block.
+	 */
+	public int percentile(double p) {
+		if (count == 0) return 0;
+		// rank of the value from 1
+		long rank = Math.max(1, Math.min(count, (long) Math.ceil(p*count)));
+		if (rank <= count/2) {
+			long sum = 0;
+			int b = 0;
+			while (sum+blockCounts[b] < rank) sum += blockCounts[b++];
+			int i = b << BLOCK_BITS;
+			while ((sum += counts[i]) < rank) i++;
+			return i;
+		}
+		// from the top, the value with more than count-rank pixels above or at it
+		long above = count-rank;
+		long sum = 0;
+		int b = BLOCKS-1;
+		while (sum+blockCounts[b] <= above) sum += blockCounts[b--];
+		int i = ((b+1) << BLOCK_BITS)-1;
+		while ((sum += counts[i]) <= above) i--;
+		return i;
+	}
+
+	/**
+	 * Bottom of the displayed range, in the unit of the frames.
+	 */
+	public double getLow() {
+		return low;
+	}
+	/**
+	 * Top of the displayed range, in the unit of the frames.
+	 */
+	public double getHigh() {
+		return high;
+	}
+	/**
+	 * Raw values at the low and high percentiles of the last frame.
+	 */
+	public int getLowRaw() {
+		return lowRaw;
+	}
+	public int getHighRaw() {
+		return highRaw;
+	}
+	/**
+	 * Time to build the histogram of the last frame.
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+	/**
+	 * Time to find the percentiles of the last frame.
+	 */
+	public long getSearchNanos() {
+		return searchNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("percentiles %.3f-%.3f, attack %.2f, decay %.2f", lowPercentile, highPercentile, attack, decay);
+	}
+
+}
@@ -0,0 +1,254 @@
+package jpurethermal;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Telemetry of one processing chain: latency of each stage, latency from the
+ * capture of a frame to its results and to its display, frame counts and
+ * memory allocated by the analysis per frame.
+ * <p>
+ * Recording is cheap enough to stay on: two {@link System#nanoTime()} per
+ * stage and a few array writes per frame. The figures are exported as JMX
+ * MBeans under jpurethermal:type=Pipeline and jpurethermal:type=Stage, and
+ * can be printed as a key=value line at a fixed period.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+	public static final String DOMAIN = "jpurethermal";
+
+	public enum Stage {
+		/** copy of the source buffer into the frame ring, capture thread */
+		MAP,
+		/** raw values to temperatures before the temporal filter, else in STATS */
+		CONVERT,
+		/** temporal filter of the temperatures */
+		FILTER,
+		/** min/max, range, histogram and projections, the conversion without filter */
+		STATS,
+		/** result sinks, snapshot for the charts included */
+		PUBLISH,
+		/** update of the charts and views, EDT */
+		RENDER,
+		/** from the capture of a frame to the end of its analysis, frames with a capture time only */
+		CAPTURE_TO_RESULT,
+		/** from the capture of a frame to its rendering, frames with a capture time only */
+		GLASS_TO_GLASS;
+
+		public String key() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final boolean allocationSupported = threadBean instanceof com.sun.management.ThreadMXBean
+			&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+
+	private volatile String name = "PureThermal";
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+	private volatile FrameRing ring;
+	// previous rings of the chain, replaced when the frame size changed
+	private long ringOffered, ringDropped, ringLate;
+	private volatile long processed;
+	private volatile long allocatedBytes;
+	private volatile long allocationFrames;
+	private volatile double captureRate, processRate;
+
+	private final List<ObjectName> registered = new ArrayList<>();
+	private Timer timer;
+
+	public PipelineMetrics() {
+		for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+	}
+
+	public String getName() {
+		return name;
+	}
+	/**
+	 * @param name of the chain in the MBean names and the log, set before registering
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Called by the thread of the stage.
+	 */
+	public void record(Stage stage, long nanos) {
+		histograms[stage.ordinal()].record(nanos);
+	}
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Current bytes allocated by the calling thread, -1 if the JVM cannot tell.
+	 */
+	public static long threadAllocatedBytes() {
+		if (!allocationSupported) return -1;
+		return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Counts a frame analysed by the calling thread.
+	 * @param allocatedBefore {@link #threadAllocatedBytes()} before the analysis
+	 */
+	public void processed(long allocatedBefore) {
+		processed++;
+		if (allocatedBefore >= 0) {
+			allocatedBytes += threadAllocatedBytes()-allocatedBefore;
+			allocationFrames++;
+		}
+	}
+
+	synchronized void setFrameRing(FrameRing frameRing) {
+		FrameRing old = ring;
+		if (old != null) {
+			ringOffered += old.getOfferedCount();
+			ringDropped += old.getDroppedCount();
+			ringLate += old.getLateCount();
+		}
+		ring = frameRing;
+	}
+
+	void setCaptureRate(double captureRate) {
+		this.captureRate = captureRate;
+	}
+
+	@Override
+	public synchronized long getFramesOffered() {
+		FrameRing r = ring;
+		return ringOffered+(r == null ? 0 : r.getOfferedCount());
+	}
+	@Override
+	public long getFramesProcessed() {
+		return processed;
+	}
+	@Override
+	public synchronized long getFramesDropped() {
+		FrameRing r = ring;
+		return ringDropped+(r == null ? 0 : r.getDroppedCount());
+	}
+	@Override
+	public synchronized long getFramesLate() {
+		FrameRing r = ring;
+		return ringLate+(r == null ? 0 : r.getLateCount());
+	}
+	@Override
+	public int getQueueDepth() {
+		FrameRing r = ring;
+		return r == null ? 0 : r.getPending();
+	}
+	@Override
+	public double getCaptureRate() {
+		return captureRate;
+	}
+	/**
+	 * Frames analysed per second over the last logging period.
+	 */
+	@Override
+	public double getProcessRate() {
+		return processRate;
+	}
+	/**
+	 * Mean since the start, the log lines give it over each period.
+	 */
+	@Override
+	public double getAllocatedBytesPerFrame() {
+		long n = allocationFrames;
+		return n == 0 ? 0 : (double) allocatedBytes/n;
+	}
+
+	/**
+	 * Registers the MBeans of the chain and of its stages.
+	 */
+	public synchronized void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String quoted = ObjectName.quote(name);
+		ObjectName pipeline = new ObjectName(DOMAIN+":type=Pipeline,name="+quoted);
+		server.registerMBean(this, pipeline);
+		registered.add(pipeline);
+		for (Stage stage : Stage.values()) {
+			ObjectName stageName = new ObjectName(DOMAIN+":type=Stage,pipeline="+quoted+",name="+stage.key());
+			server.registerMBean(histograms[stage.ordinal()], stageName);
+			registered.add(stageName);
+		}
+	}
+
+	public synchronized void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName objectName : registered) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch (JMException e) {
+				// already gone
+			}
+		}
+		registered.clear();
+	}
+
+	/**
+	 * Prints a line of the figures over each period, on a timer thread. The
+	 * percentiles, rates and allocation are over the period, the counts since
+	 * the start.
+	 */
+	public synchronized void startLogging(long periodMs, PrintStream out) {
+		stopLogging();
+		timer = new Timer("PipelineMetrics "+name, true);
+		timer.scheduleAtFixedRate(new TimerTask() {
+			private long lastNanos = System.nanoTime();
+			private long lastProcessed = processed;
+			private long lastAllocatedBytes = allocatedBytes;
+			private long lastAllocationFrames = allocationFrames;
+			private final long[][] lastCounts = new long[histograms.length][];
+
+			@Override
+			public void run() {
+				long now = System.nanoTime();
+				long p = processed;
+				processRate = (p-lastProcessed)*1e9/(now-lastNanos);
+				lastProcessed = p;
+				lastNanos = now;
+				long bytes = allocatedBytes;
+				long frames = allocationFrames;
+				double allocation = frames > lastAllocationFrames ? (double) (bytes-lastAllocatedBytes)/(frames-lastAllocationFrames) : 0;
+				lastAllocatedBytes = bytes;
+				lastAllocationFrames = frames;
+
+				StringBuilder line = new StringBuilder(512);
+				line.append("metrics pipeline=\"").append(name).append('"');
+				line.append(String.format(Locale.ROOT, " offered=%d processed=%d dropped=%d late=%d queue=%d capture_fps=%.1f process_fps=%.1f alloc_bytes_per_frame=%.0f",
+						getFramesOffered(), p, getFramesDropped(), getFramesLate(), getQueueDepth(), captureRate, processRate, allocation));
+				for (Stage stage : Stage.values()) {
+					int i = stage.ordinal();
+					long[] counts = histograms[i].getCounts();
+					if (histograms[i].getCount() > 0) {
+						line.append(String.format(Locale.ROOT, " %s_p50_us=%.1f %s_p99_us=%.1f",
+								stage.key(), LatencyHistogram.percentile(counts, lastCounts[i], 0.5)/1000.0,
+								stage.key(), LatencyHistogram.percentile(counts, lastCounts[i], 0.99)/1000.0));
+					}
+					lastCounts[i] = counts;
+				}
+				out.println(line);
+			}
+		}, periodMs, periodMs);
+	}
+
+	public synchronized void stopLogging() {
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package jpurethermal;
+
+/**
+ * JMX view of the counters of a {@link PipelineMetrics}. The stage
+ * latencies are registered as separate {@link LatencyHistogramMBean}s.
+ */
+public interface PipelineMetricsMBean {
+	long getFramesOffered();
+	long getFramesProcessed();
+	long getFramesDropped();
+	long getFramesLate();
+	int getQueueDepth();
+	double getCaptureRate();
+	double getProcessRate();
+	double getAllocatedBytesPerFrame();
+}
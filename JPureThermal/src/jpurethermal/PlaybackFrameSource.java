@@ -0,0 +1,159 @@
+package jpurethermal;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link RawRecording} back, the frames handed to the consumer
+ * straight from the mapped segments. The frames are paced by their recorded
+ * timestamps, possibly sped up, or delivered as fast as the consumer takes
+ * them to reprocess recordings faster than real time.
+ */
+public class PlaybackFrameSource extends ThreadedFrameSource {
+	private final RawRecording recording;
+	private volatile double speed = 0;
+	private volatile long first = 0;
+	private volatile long end;
+	private volatile boolean loop = false;
+	private final AtomicLong position = new AtomicLong();
+	// pacing anchor, reset by seek
+	private volatile boolean anchored = false;
+	private long anchorNanos, anchorTimestamp;
+
+	private long startNanos, stopNanos;
+	private volatile long delivered = 0;
+
+	public PlaybackFrameSource(RawRecording recording) {
+		super(0, 0);
+		this.recording = recording;
+		end = recording.getFrameCount();
+	}
+
+	/**
+	 * @param speed 1 for the recorded rate, 2 for twice as fast..., 0 for unthrottled
+	 */
+	public void setSpeed(double speed) {
+		this.speed = speed;
+		anchored = false;
+	}
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Plays frames first (included) to end (excluded) only, and moves to first.
+	 */
+	public void setRange(long first, long end) {
+		long count = recording.getFrameCount();
+		if (first < 0 || first > end || end > count) {
+			throw new IndexOutOfBoundsException("range ["+first+", "+end+"[ out of [0, "+count+"[");
+		}
+		this.first = first;
+		this.end = end;
+		seek(first);
+	}
+
+	/**
+	 * Plays the range of the frames recorded between the two timestamps.
+	 */
+	public void setTimeRange(long fromTimestamp, long toTimestamp) {
+		setRange(recording.find(fromTimestamp), recording.find(toTimestamp));
+	}
+
+	/**
+	 * Moves to frame n, kept in the range.
+	 */
+	public void seek(long n) {
+		position.set(Math.max(first, Math.min(end, n)));
+		anchored = false;
+	}
+
+	/**
+	 * Moves to the first frame recorded at or after the timestamp.
+	 */
+	public void seekTime(long timestamp) {
+		seek(recording.find(timestamp));
+	}
+
+	/**
+	 * @param loop start again from the beginning of the range at its end
+	 */
+	public void setLoop(boolean loop) {
+		this.loop = loop;
+	}
+
+	@Override
+	public void start(Consumer consumer) {
+		delivered = 0;
+		startNanos = System.nanoTime();
+		stopNanos = 0;
+		anchored = false;
+		super.start(consumer);
+	}
+
+	@Override
+	protected boolean deliver(long n, Consumer consumer) {
+		long read = position.get();
+		long p = read;
+		if (p >= end) {
+			if (!loop || end == first) {
+				stopNanos = System.nanoTime();
+				return false;
+			}
+			p = first;
+			anchored = false;
+		}
+
+		RawRecording.Segment segment = recording.segmentOf(p);
+		int i = (int) (p-segment.getFirstFrame());
+		long timestamp = segment.getTimestamp(i);
+
+		double s = speed;
+		if (s > 0) {
+			if (!anchored) {
+				anchorNanos = System.nanoTime();
+				anchorTimestamp = timestamp;
+				anchored = true;
+			}
+			long due = anchorNanos+(long) ((timestamp-anchorTimestamp)/s);
+			long wait = due-System.nanoTime();
+			if (wait > 0) LockSupport.parkNanos(this, wait);
+		}
+
+		ShortBuffer sb = segment.getPixels(i);
+		consumer.frame(sb, segment.getWidth(), segment.getHeight(), timestamp, System.nanoTime());
+		// a seek during the call wins
+		position.compareAndSet(read, p+1);
+		delivered++;
+		return true;
+	}
+
+	public RawRecording getRecording() {
+		return recording;
+	}
+	/**
+	 * Number of the next frame to play.
+	 */
+	public long getPosition() {
+		return position.get();
+	}
+	public long getDeliveredCount() {
+		return delivered;
+	}
+
+	/**
+	 * Frames delivered per second since the start, until the end of the range.
+	 */
+	public double getThroughput() {
+		long now = stopNanos != 0 ? stopNanos : System.nanoTime();
+		return now > startNanos ? delivered*1e9/(now-startNanos) : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "playback of "+recording.getFrameCount()+" frames, frames "+first+" to "+end
+				+ (speed > 0 ? " at "+speed+"x" : " unthrottled");
+	}
+
+}
@@ -1,150 +1,256 @@
 package jpurethermal;
 
-import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
-import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.freedesktop.gstreamer.Buffer;
-import org.freedesktop.gstreamer.FlowReturn;
-import org.freedesktop.gstreamer.Sample;
-import org.freedesktop.gstreamer.Structure;
-import org.freedesktop.gstreamer.elements.AppSink;
-
-import cern.jdve.data.DefaultDataSet;
-import cern.jdve.data.DefaultDataSet3D;
-
-public class PureThermalAppSinkListener implements AppSink.NEW_SAMPLE {
+/**
+ * Copies the frames of a {@link FrameSource}, like the appsink of a
+ * {@link GstFrameSource}, in a {@link FrameRing} and returns right away. The
+ * frames are analysed on a separate thread, or by an executor shared with
+ * other cameras.
+ */
+public class PureThermalAppSinkListener implements FrameSource.Consumer {
 	public static final int HISTOGRAM_RESOLUTION = 128;
 	private int bufferWidth, bufferHeight;
-	private DefaultDataSet histogramDataSet = new DefaultDataSet("Histogram", new double[] {0,1}, new double[] {0,1});
-	private DefaultDataSet3D imageDataSet = new DefaultDataSet3D("Image");
-	private DefaultDataSet3D horizontalProjectionDataSet = new DefaultDataSet3D("Horizontal Projection");
-	private DefaultDataSet3D verticalProjectionDataSet = new DefaultDataSet3D("Vertical Projection");
-	private double pixMin = 0;
-	private double pixMax = 10;
 	private long lastTimeMs = java.lang.System.currentTimeMillis();
 	private long nowTimeMs = lastTimeMs;
 	private int fps = 0;
-	private double[] histogramX = new double[HISTOGRAM_RESOLUTION];
-	private double[] histogramY = new double[HISTOGRAM_RESOLUTION];
-	private double[][] image = new double[8][8];
-	private double[][] horProjection = new double[8][8];
-	private double[][] vertProjection = new double[8][8];
-	private double[] vertPixelScale = new double[8];
-	private double[] horPixelScale = new double[8];
-	private double min = Double.MAX_VALUE;
-	private double max = Double.MIN_VALUE;
+	private volatile int captureRate = 0;
+	private volatile boolean printRate = true;
+	private Radiometry radiometry = new Radiometry();
+	private ThermalAnalyzer analyzer = new ThermalAnalyzer(HISTOGRAM_RESOLUTION);
+	private final int ringCapacity;
+	private final FrameRing.Policy ringPolicy;
+	private volatile FrameRing frameRing;
+	private long sequence = 0;
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private ChartPublisher publisher;
+	private RoiEngine roiEngine;
+	private HotspotDetector hotspotDetector;
+	private TimeScan timeScan;
+	private Thread analysisThread;
+	private final Executor executor;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Runnable analysisTask = this::analyseNext;
 
 	public PureThermalAppSinkListener() {
-		
+		this(FrameRing.DEFAULT_CAPACITY, FrameRing.Policy.DROP_OLDEST);
 	}
 
-	@Override
-	public FlowReturn newSample(AppSink elem) {
-		Sample sample = elem.pullSample();
-		Structure capsStruct = sample.getCaps().getStructure(0);
-		int w = capsStruct.getInteger("width");
-		int h = capsStruct.getInteger("height");
-		double pixValue;
+	public PureThermalAppSinkListener(int ringCapacity, FrameRing.Policy ringPolicy) {
+		this(ringCapacity, ringPolicy, null);
+	}
+
+	/**
+	 * @param executor runs the analysis, one frame per task so the cameras
+	 * sharing it take turns, or null for a thread of its own
+	 */
+	public PureThermalAppSinkListener(int ringCapacity, FrameRing.Policy ringPolicy, Executor executor) {
+		this.ringCapacity = ringCapacity;
+		this.ringPolicy = ringPolicy;
+		this.executor = executor;
+		analyzer.setMetrics(metrics);
+		if (executor == null) {
+			analysisThread = new Thread(this::analyse, "PureThermal analysis");
+			analysisThread.setDaemon(true);
+			analysisThread.start();
+		}
+	}
 
-		// init arrays
-		if( h!=bufferHeight || w!=bufferWidth) { 
+	@Override
+	public void frame(ShortBuffer sb, int w, int h, long timestamp, long captureNanos) {
+		Object event = FrameTracer.INSTANCE.beginCapture();
+		long start = System.nanoTime();
+		// init frames
+		if( h!=bufferHeight || w!=bufferWidth) {
 			bufferHeight = h;
 			bufferWidth = w;
-			image = new double[bufferHeight][bufferWidth];
-			vertProjection = new double[HISTOGRAM_RESOLUTION][bufferWidth];
-			horProjection = new double[bufferHeight][HISTOGRAM_RESOLUTION];
-			vertPixelScale = new double[bufferHeight];
-			for(int i=0; i<vertPixelScale.length; i++) vertPixelScale[i] = i;
-			horPixelScale = new double[bufferWidth];
-			for(int i=0; i<horPixelScale.length; i++) horPixelScale[i] = i;
+			FrameRing ring = new FrameRing(bufferWidth, bufferHeight, ringCapacity, ringPolicy);
+			ring.setRadiometry(radiometry);
+			metrics.setFrameRing(ring);
+			frameRing = ring;
 		}
 
-		Buffer buffer = sample.getBuffer();
-		ByteBuffer bb = buffer.map(false);
-		ShortBuffer sb = bb.asShortBuffer();
-
-		if (sb != null) {
-			min = Double.MAX_VALUE;
-			max = Double.MIN_VALUE;
-
-			// convert to degrees, fill the image, find min/max
-			for (int i = 0; i < sb.capacity(); i++) {
-				pixValue = Short.toUnsignedInt(sb.get(i));
-				pixValue = (pixValue-27315.0)*0.01;
-				if (pixValue > max) max = pixValue;
-				if (pixValue < min) min = pixValue;
-				image[i/bufferWidth][i%bufferWidth] = pixValue;
-			}
-
-			// adapt ranges
-			imageDataSet.set(horPixelScale, vertPixelScale, image, false, false);
-			if(max > pixMax) pixMax+= (max-pixMax)/4;
-			else pixMax -= (pixMax-max)/4;
-			if (min < pixMin) pixMin -= (pixMin-min)/4;
-			else pixMin += (min-pixMin)/4;
+		long n = sequence++;
+		boolean queued = frameRing.offer(sb, n, timestamp, captureNanos);
+		long copied = System.nanoTime()-start;
+		metrics.record(PipelineMetrics.Stage.MAP, copied);
+		FrameTracer.INSTANCE.endCapture(event, n, timestamp, w, h, copied, queued);
+		if (executor != null) schedule();
 
-			// make X axis histogram values
-			double stepSize = (pixMax-pixMin)/histogramX.length;
-			for (int i = 0; i < histogramX.length; i++) {
-				histogramX[i] = pixMin+(stepSize*i);
-			}
-
-			// init arrays
-			Arrays.fill(histogramY, 0.0);
-			for (int i = 0; i < horProjection.length; i++) {
-				Arrays.fill(horProjection[i], 0.0);
-			}
-			for (int i = 0; i < vertProjection.length; i++) {
-				Arrays.fill(vertProjection[i], 0.0);
-			}
+		// compute fps, counting this frame in the second it ends
+		fps++;
+		nowTimeMs = java.lang.System.currentTimeMillis();
+		if (nowTimeMs >= lastTimeMs+1000) {
+			if (printRate) System.out.println(fps+" FPS");
+			captureRate = fps;
+			metrics.setCaptureRate(fps*1000.0/(nowTimeMs-lastTimeMs));
+			lastTimeMs = nowTimeMs;
+			fps = 0;
+		}
+	}
 
-			// compute histogram and projections datasets
-			for (int heightIdx = 0; heightIdx < bufferHeight; heightIdx++) {
-				for (int widthIdx = 0; widthIdx < bufferWidth; widthIdx++) {
-					for (int k = 0; k < histogramX.length-1; k++) {
-						if (image[heightIdx][widthIdx] >= histogramX[k] && image[heightIdx][widthIdx] < histogramX[k+1] ) {
-							histogramY[k]++;
-							if(horProjection[heightIdx][k] < 16) horProjection[heightIdx][k]++;
-							if (vertProjection[histogramX.length-k-1][widthIdx] < 16) vertProjection[histogramX.length-k-1][widthIdx]++;
-						}
-					}
+	private void analyse() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				FrameRing ring = frameRing;
+				if (ring == null) {
+					Thread.sleep(10);
+					continue;
 				}
+				ThermalFrame frame = ring.take(10, TimeUnit.MILLISECONDS);
+				if (frame == null) continue;
+				analyse(ring, frame);
 			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
 
-			// set the data
-			histogramDataSet.set(histogramX, histogramY);
-			horizontalProjectionDataSet.set(histogramX, vertPixelScale, horProjection, false, false);
-			verticalProjectionDataSet.set(horPixelScale, histogramX, vertProjection, false, false);
-
-			buffer.unmap();
+	private void analyse(FrameRing ring, ThermalFrame frame) {
+		long allocated = PipelineMetrics.threadAllocatedBytes();
+		try {
+			analyzer.process(frame);
+		} finally {
+			ring.release();
 		}
-		sample.dispose();
+		metrics.processed(allocated);
+	}
 
-		// compute fps
-		nowTimeMs = java.lang.System.currentTimeMillis();
-		if (nowTimeMs > lastTimeMs+1000) {
-			System.out.println(fps+" FPS");
-			lastTimeMs = nowTimeMs;
-			fps = 0;
-		} else {
-			fps++;
+	/**
+	 * Queues one analysis task if none is queued or running, so the listener
+	 * never holds more than one place in the executor queue.
+	 */
+	private void schedule() {
+		if (!scheduled.compareAndSet(false, true)) return;
+		try {
+			executor.execute(analysisTask);
+		} catch (RejectedExecutionException e) {
+			// shut down, the frames stay in the ring
+			scheduled.set(false);
 		}
+	}
 
-		return FlowReturn.OK;
+	private void analyseNext() {
+		FrameRing ring = frameRing;
+		ThermalFrame frame = ring.poll();
+		if (frame != null) analyse(ring, frame);
+		scheduled.set(false);
+		// more frames: back to the end of the queue, behind the other cameras
+		if (ring.getPending() > 0 || frameRing != ring) schedule();
 	}
 
-	public DefaultDataSet getHistogramDataSet() {
-		return histogramDataSet;
+	/**
+	 * Stops the analysis thread, and waits for the frame being analysed.
+	 */
+	public void stop() {
+		if (analysisThread == null) return;
+		analysisThread.interrupt();
+		try {
+			analysisThread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the current frame ring, null before the first sample
+	 */
+	public FrameRing getFrameRing() {
+		return frameRing;
+	}
+	public ThermalAnalyzer getAnalyzer() {
+		return analyzer;
+	}
+	/**
+	 * Radiometric parameters, can be changed while capturing.
+	 */
+	public Radiometry getRadiometry() {
+		return radiometry;
+	}
+	/**
+	 * Chart data sets, updated at display rate. The publisher is only created,
+	 * and fed, once asked for, so nothing is copied for the charts when running
+	 * headless.
+	 */
+	public synchronized ChartPublisher getPublisher() {
+		if (publisher == null) {
+			publisher = new ChartPublisher();
+			publisher.setMetrics(metrics);
+			analyzer.addSink(publisher);
+		}
+		return publisher;
+	}
+	/**
+	 * Statistics of regions of interest, created and fed once asked for.
+	 */
+	public synchronized RoiEngine getRoiEngine() {
+		if (roiEngine == null) {
+			roiEngine = new RoiEngine();
+			analyzer.addSink(roiEngine);
+		}
+		return roiEngine;
+	}
+	/**
+	 * Detection of the hot regions, created and fed once asked for.
+	 */
+	public synchronized HotspotDetector getHotspotDetector() {
+		if (hotspotDetector == null) {
+			hotspotDetector = new HotspotDetector();
+			analyzer.addSink(hotspotDetector);
+		}
+		return hotspotDetector;
+	}
+	/**
+	 * History of one line per frame for a waterfall, created and fed once asked for.
+	 */
+	public synchronized TimeScan getTimeScan() {
+		if (timeScan == null) {
+			timeScan = new TimeScan();
+			analyzer.addSink(timeScan);
+		}
+		return timeScan;
+	}
+	/**
+	 * Number of frames waiting for the analysis.
+	 */
+	public int getPending() {
+		FrameRing ring = frameRing;
+		return ring == null ? 0 : ring.getPending();
+	}
+	/**
+	 * Number of frames analysed so far.
+	 */
+	public long getProcessedCount() {
+		return metrics.getFramesProcessed();
+	}
+	/**
+	 * Latencies and counters of the chain, see {@link PipelineMetrics#register()}.
+	 */
+	public PipelineMetrics getMetrics() {
+		return metrics;
 	}
-	public DefaultDataSet3D getImageDataSet() {
-		return imageDataSet;
+	/**
+	 * Frames offered to the ring but dropped because the analysis was late.
+	 */
+	public long getDroppedCount() {
+		FrameRing ring = frameRing;
+		return ring == null ? 0 : ring.getDroppedCount();
 	}
-	public DefaultDataSet3D gethorizontalProjectionDataSet() {
-		return horizontalProjectionDataSet;
+	/**
+	 * @param printRate print the capture rate every second
+	 */
+	public void setPrintRate(boolean printRate) {
+		this.printRate = printRate;
 	}
-	public DefaultDataSet3D getverticalProjectionDataSet() {
-		return verticalProjectionDataSet;
+	/**
+	 * Frames received during the last second.
+	 */
+	public int getCaptureRate() {
+		return captureRate;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,228 @@
+package jpurethermal;
+
+/**
+ * Conversion of raw Lepton values (centi-Kelvin, apparent temperature) to
+ * object temperatures, through a table covering the whole 16 bits range.
+ * <p>
+ * The object temperature is solved from the radiance balance
+ * W = tau*e*W(obj) + tau*(1-e)*W(refl) + (1-tau)*W(atm), with W(T) taken
+ * proportional to T^4.
+ * <p>
+ * The table is rebuilt by the thread changing the parameters, then swapped.
+ * Readers only load the current table and never wait on a rebuild.
+ * <p>
+ * With an emissivity and a transmission of 1 the table is the linear
+ * (raw - offset) * scale of the unit, see {@link Conversion#isLinear()}, and
+ * the statistics can then be computed from the raw values.
+ */
+public class Radiometry {
+	public static final int TABLE_SIZE = 65536;
+
+	public enum Unit {
+		CELSIUS("\u00B0C"), FAHRENHEIT("\u00B0F"), KELVIN("K");
+
+		private final String symbol;
+
+		Unit(String symbol) {
+			this.symbol = symbol;
+		}
+		public String getSymbol() {
+			return symbol;
+		}
+		public double fromKelvin(double kelvin) {
+			switch (this) {
+			case FAHRENHEIT: return (kelvin-273.15)*1.8 + 32.0;
+			case KELVIN: return kelvin;
+			default: return kelvin-273.15;
+			}
+		}
+	}
+
+	private double emissivity = 1.0;
+	private double reflectedTemperature = 22.0;
+	private double atmosphericTemperature = 22.0;
+	private double transmission = 1.0;
+	private Unit unit = Unit.CELSIUS;
+	private volatile Conversion conversion;
+
+	/**
+	 * A table and its linear form if it has one, swapped together and never
+	 * modified: all the values of a frame are read from the one it took.
+	 */
+	public static final class Conversion {
+		private final float[] table;
+		private final boolean linear;
+		private final double offset, scale;
+
+		Conversion(float[] table, boolean linear, double offset, double scale) {
+			this.table = table;
+			this.linear = linear;
+			this.offset = offset;
+			this.scale = scale;
+		}
+
+		/**
+		 * The conversion (raw - offset) * scale.
+		 */
+		static Conversion linear(double offset, double scale) {
+			return new Conversion(linearTable(offset, scale), true, offset, scale);
+		}
+
+		/**
+		 * The table, indexed by the unsigned raw value. Must not be modified.
+		 */
+		public float[] getTable() {
+			return table;
+		}
+		public float toTemperature(int raw) {
+			return table[raw & 0xFFFF];
+		}
+		/**
+		 * True if the table is (raw - offset) * scale.
+		 */
+		public boolean isLinear() {
+			return linear;
+		}
+		/**
+		 * Offset of the table when linear.
+		 */
+		public double getOffset() {
+			return offset;
+		}
+		/**
+		 * Scale of the table when linear.
+		 */
+		public double getScale() {
+			return scale;
+		}
+	}
+
+	public Radiometry() {
+		conversion = buildConversion();
+	}
+
+	/**
+	 * A table applying (raw - offset) * scale.
+	 */
+	public static float[] linearTable(double offset, double scale) {
+		float[] t = new float[TABLE_SIZE];
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			t[i] = (float) ((i-offset)*scale);
+		}
+		return t;
+	}
+
+	/**
+	 * The current table, indexed by the unsigned raw value. Must not be modified.
+	 */
+	public float[] getTable() {
+		return conversion.table;
+	}
+
+	public float toTemperature(int raw) {
+		return conversion.table[raw & 0xFFFF];
+	}
+
+	/**
+	 * The current conversion, linear for an emissivity and a transmission of 1.
+	 */
+	public Conversion getConversion() {
+		return conversion;
+	}
+
+	public double getEmissivity() {
+		return emissivity;
+	}
+	/**
+	 * Reflected apparent temperature, in degrees Celsius
+	 */
+	public double getReflectedTemperature() {
+		return reflectedTemperature;
+	}
+	/**
+	 * Atmospheric temperature, in degrees Celsius
+	 */
+	public double getAtmosphericTemperature() {
+		return atmosphericTemperature;
+	}
+	public double getTransmission() {
+		return transmission;
+	}
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public synchronized void setEmissivity(double emissivity) {
+		setParameters(emissivity, reflectedTemperature, atmosphericTemperature, transmission, unit);
+	}
+	public synchronized void setReflectedTemperature(double reflectedTemperature) {
+		setParameters(emissivity, reflectedTemperature, atmosphericTemperature, transmission, unit);
+	}
+	public synchronized void setAtmosphericTemperature(double atmosphericTemperature) {
+		setParameters(emissivity, reflectedTemperature, atmosphericTemperature, transmission, unit);
+	}
+	public synchronized void setTransmission(double transmission) {
+		setParameters(emissivity, reflectedTemperature, atmosphericTemperature, transmission, unit);
+	}
+	public synchronized void setUnit(Unit unit) {
+		setParameters(emissivity, reflectedTemperature, atmosphericTemperature, transmission, unit);
+	}
+
+	/**
+	 * Sets all the parameters at once and rebuilds the table if any changed.
+	 * @param reflectedTemperature in degrees Celsius
+	 * @param atmosphericTemperature in degrees Celsius
+	 */
+	public synchronized void setParameters(double emissivity, double reflectedTemperature,
+			double atmosphericTemperature, double transmission, Unit unit) {
+		if (emissivity <= 0 || emissivity > 1) throw new IllegalArgumentException("emissivity "+emissivity+" not in ]0,1]");
+		if (transmission <= 0 || transmission > 1) throw new IllegalArgumentException("transmission "+transmission+" not in ]0,1]");
+		if (unit == null) throw new IllegalArgumentException("unit is null");
+		if (emissivity == this.emissivity && reflectedTemperature == this.reflectedTemperature &&
+				atmosphericTemperature == this.atmosphericTemperature && transmission == this.transmission &&
+				unit == this.unit) return;
+
+		this.emissivity = emissivity;
+		this.reflectedTemperature = reflectedTemperature;
+		this.atmosphericTemperature = atmosphericTemperature;
+		this.transmission = transmission;
+		this.unit = unit;
+		conversion = buildConversion();
+	}
+
+	private Conversion buildConversion() {
+		if (emissivity == 1.0 && transmission == 1.0) {
+			// the centi-Kelvin in the unit, (raw - offset) * scale
+			double offset, scale;
+			switch (unit) {
+			case FAHRENHEIT:
+				scale = ThermalFrame.CENTI*1.8;
+				offset = ThermalFrame.KELVIN_OFFSET-32.0/scale;
+				break;
+			case KELVIN:
+				scale = ThermalFrame.CENTI;
+				offset = 0;
+				break;
+			default:
+				scale = ThermalFrame.CENTI;
+				offset = ThermalFrame.KELVIN_OFFSET;
+			}
+			return Conversion.linear(offset, scale);
+		}
+		float[] t = new float[TABLE_SIZE];
+		double refl = reflectedTemperature+273.15;
+		double atm = atmosphericTemperature+273.15;
+		double reflW = transmission*(1.0-emissivity)*refl*refl*refl*refl;
+		double atmW = (1.0-transmission)*atm*atm*atm*atm;
+		double objFactor = 1.0/(transmission*emissivity);
+
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			double kelvin = i*ThermalFrame.CENTI;
+			double w = (kelvin*kelvin*kelvin*kelvin - reflW - atmW)*objFactor;
+			kelvin = w > 0 ? Math.sqrt(Math.sqrt(w)) : 0.0;
+			t[i] = (float) unit.fromKelvin(kelvin);
+		}
+		return new Conversion(t, false, 0, 0);
+	}
+
+}
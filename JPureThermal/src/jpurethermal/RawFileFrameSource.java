@@ -0,0 +1,85 @@
+package jpurethermal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Frames of a file of raw GRAY16_LE frames put end to end, as written by a
+ * filesink after the camera caps. The frames get timestamps at the given
+ * rate, or the Lepton one when unthrottled.
+ */
+public class RawFileFrameSource extends ThreadedFrameSource {
+	private static final double LEPTON_RATE = 9.0;
+
+	private final File file;
+	private final int width, height;
+	private final boolean loop;
+	private final FileChannel channel;
+	private final ByteBuffer bb;
+	private final ShortBuffer sb;
+	private final long frameCount;
+	private final long periodNanos;
+
+	/**
+	 * @param rate frames per second, 0 for unthrottled
+	 * @param loop start again from the first frame at the end of the file
+	 */
+	public RawFileFrameSource(File file, int width, int height, double rate, boolean loop) throws IOException {
+		super(rate, 0);
+		this.file = file;
+		this.width = width;
+		this.height = height;
+		this.loop = loop;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		bb = ByteBuffer.allocateDirect(2*width*height).order(ByteOrder.LITTLE_ENDIAN);
+		sb = bb.asShortBuffer();
+		frameCount = channel.size()/bb.capacity();
+		if (frameCount == 0) {
+			channel.close();
+			throw new IOException(file+" holds no "+width+"x"+height+" frame");
+		}
+		periodNanos = (long) (1e9/(rate > 0 ? rate : LEPTON_RATE));
+	}
+
+	@Override
+	protected boolean deliver(long n, Consumer consumer) throws IOException {
+		long index = n;
+		if (index >= frameCount) {
+			if (!loop) return false;
+			index %= frameCount;
+		}
+		bb.clear();
+		long position = index*bb.capacity();
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, position+bb.position()) < 0) return false;
+		}
+		sb.rewind();
+		consumer.frame(sb, width, height, n*periodNanos, System.nanoTime());
+		return true;
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	@Override
+	public String toString() {
+		return file+" ("+frameCount+" frames "+width+"x"+height+")";
+	}
+
+}
@@ -0,0 +1,205 @@
+package jpurethermal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends raw frames to memory mapped segment files, in the format read by
+ * {@link RawRecording}. The pixels go from the buffer of the source straight
+ * into the mapping, so recording costs one copy per frame, done by the
+ * thread of the source, and no system call until a segment is full.
+ * <p>
+ * A new segment is started when the current one is full or when the frame
+ * size changes. The segments are named name.000000.ptraw, name.000001.ptraw...
+ */
+public class RawRecorder implements FrameSource.Consumer, AutoCloseable {
+	public static final int DEFAULT_SEGMENT_FRAMES = 4096;
+	public static final int DEFAULT_INDEX_INTERVAL = 64;
+
+	/**
+	 * When the written frames are forced to the disk.
+	 */
+	public enum SyncPolicy {
+		/** left to the operating system */
+		NONE,
+		/** when a segment is completed and at close */
+		SEGMENT,
+		/** every sync interval frames, and as SEGMENT */
+		INTERVAL
+	}
+
+	private final File directory;
+	private final String name;
+	private int segmentFrames = DEFAULT_SEGMENT_FRAMES;
+	private int indexInterval = DEFAULT_INDEX_INTERVAL;
+	private SyncPolicy syncPolicy = SyncPolicy.SEGMENT;
+	private int syncInterval = 64;
+
+	private MappedByteBuffer segment;
+	private ShortBuffer segmentPixels;
+	private int segmentNumber = 0;
+	private int width, height, recordSize, capacity;
+	private int count;
+	private long frameCount = 0;
+	private long bytesWritten = 0;
+
+	/**
+	 * @param directory where to write the segments, created if needed
+	 * @param name prefix of the segment files
+	 */
+	public RawRecorder(File directory, String name) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create "+directory);
+		this.directory = directory;
+		this.name = name;
+	}
+
+	/**
+	 * @param segmentFrames frames per segment, rounded up to a number of index intervals
+	 */
+	public void setSegmentFrames(int segmentFrames) {
+		this.segmentFrames = segmentFrames;
+	}
+	/**
+	 * @param indexInterval frames between two index blocks
+	 */
+	public void setIndexInterval(int indexInterval) {
+		if (indexInterval < 1) throw new IllegalArgumentException("index interval "+indexInterval+" < 1");
+		this.indexInterval = indexInterval;
+	}
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+	/**
+	 * @param syncInterval frames between two syncs for {@link SyncPolicy#INTERVAL}
+	 */
+	public void setSyncInterval(int syncInterval) {
+		this.syncInterval = Math.max(1, syncInterval);
+	}
+
+	/**
+	 * Appends a frame. The buffer position is left unchanged, so the frame can
+	 * be handed to the next consumer.
+	 * @throws IllegalStateException if the segment cannot be created
+	 */
+	@Override
+	public void frame(ShortBuffer sb, int w, int h, long timestamp, long captureNanos) {
+		try {
+			append(sb, w, h, timestamp);
+		} catch (IOException e) {
+			throw new IllegalStateException("recording to "+directory+" failed", e);
+		}
+	}
+
+	/**
+	 * Appends a frame, see {@link #frame(ShortBuffer, int, int, long, long)}.
+	 */
+	public void append(ShortBuffer sb, int w, int h, long timestamp) throws IOException {
+		if (segment == null || count == capacity || w != width || h != height) {
+			nextSegment(w, h);
+		}
+		int pixels = w*h;
+		if (sb.remaining() < pixels) throw new IllegalArgumentException(sb.remaining()+" values for a "+w+"x"+h+" frame");
+		int offset = RawRecording.recordOffset(count, indexInterval, recordSize);
+		segment.putLong(offset, timestamp);
+		segment.putLong(offset+8, frameCount);
+		// exactly the frame, whatever follows it in the buffer
+		int position = sb.position();
+		int limit = sb.limit();
+		sb.limit(position+pixels);
+		segmentPixels.position((offset+RawRecording.RECORD_HEADER_SIZE)/2);
+		segmentPixels.put(sb);
+		sb.limit(limit);
+		sb.position(position);
+
+		// index block of the group
+		int index = RawRecording.HEADER_SIZE+(count/indexInterval)*RawRecording.groupSize(indexInterval, recordSize);
+		segment.putLong(index+8+8*(count%indexInterval), timestamp);
+		segment.putInt(index+4, count%indexInterval+1);
+
+		count++;
+		frameCount++;
+		bytesWritten += recordSize;
+		// commits the frame for the readers
+		segment.putInt(RawRecording.HEADER_FRAME_COUNT, count);
+
+		if (syncPolicy == SyncPolicy.INTERVAL && count%syncInterval == 0) segment.force();
+	}
+
+	private void nextSegment(int w, int h) throws IOException {
+		closeSegment();
+		width = w;
+		height = h;
+		recordSize = RawRecording.recordSize(w, h);
+		int groupSize = RawRecording.groupSize(indexInterval, recordSize);
+		int groups = (Math.max(1, segmentFrames)+indexInterval-1)/indexInterval;
+		groups = Math.max(1, Math.min(groups, (Integer.MAX_VALUE-RawRecording.HEADER_SIZE)/groupSize));
+		capacity = groups*indexInterval;
+		long size = RawRecording.HEADER_SIZE+(long) groups*groupSize;
+
+		File file = new File(directory, String.format("%s.%06d%s", name, segmentNumber, RawRecording.EXTENSION));
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		segmentPixels = segment.asShortBuffer();
+
+		segment.putLong(RawRecording.HEADER_MAGIC, RawRecording.MAGIC);
+		segment.putInt(RawRecording.HEADER_VERSION, RawRecording.VERSION);
+		segment.putInt(RawRecording.HEADER_HEADER_SIZE, RawRecording.HEADER_SIZE);
+		segment.putInt(RawRecording.HEADER_WIDTH, w);
+		segment.putInt(RawRecording.HEADER_HEIGHT, h);
+		segment.putInt(RawRecording.HEADER_RECORD_SIZE, recordSize);
+		segment.putInt(RawRecording.HEADER_INDEX_INTERVAL, indexInterval);
+		segment.putInt(RawRecording.HEADER_CAPACITY, capacity);
+		segment.putInt(RawRecording.HEADER_SEGMENT, segmentNumber);
+		segment.putLong(RawRecording.HEADER_FIRST_FRAME, frameCount);
+		segment.putInt(RawRecording.HEADER_FRAME_COUNT, 0);
+		segment.putLong(RawRecording.HEADER_CREATION_TIME, System.currentTimeMillis());
+		for (int g = 0; g < groups; g++) {
+			segment.putInt(RawRecording.HEADER_SIZE+g*groupSize, RawRecording.INDEX_MAGIC);
+		}
+		segmentNumber++;
+		count = 0;
+	}
+
+	private void closeSegment() {
+		if (segment == null) return;
+		if (syncPolicy != SyncPolicy.NONE) segment.force();
+		// left to the garbage collector, a frame may still be written from another thread
+		segment = null;
+		segmentPixels = null;
+	}
+
+	/**
+	 * Completes the current segment. The unused end of the segment stays in the
+	 * file, as a hole on most file systems.
+	 */
+	@Override
+	public void close() {
+		closeSegment();
+	}
+
+	/**
+	 * Forces the frames written so far to the disk.
+	 */
+	public void sync() {
+		if (segment != null) segment.force();
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	public int getSegmentCount() {
+		return segmentNumber;
+	}
+
+}
@@ -0,0 +1,247 @@
+package jpurethermal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read access to the segments written by a {@link RawRecorder}, memory
+ * mapped so any frame is reached in constant time and read without copy.
+ * <p>
+ * A segment file is a fixed header followed by groups of frames, each group
+ * starting with an index block holding the timestamps of its frames:
+ * <pre>
+ * header       64 bytes, see the HEADER_ constants
+ * group        index block: magic, count, timestamps of the frames of the group
+ *              frame records: timestamp, sequence, GRAY16_LE pixels, padded to 8 bytes
+ * group ...
+ * </pre>
+ * All the records have the same size, so the offset of a frame follows from
+ * its number. Numbers are little endian. The frame count of the header is
+ * written after each frame, a reader never sees a partly written frame.
+ * <p>
+ * The mappings are not released explicitly: a frame handed out may still be
+ * read by another thread, so they are left to the garbage collector.
+ */
+public class RawRecording implements AutoCloseable {
+	public static final String EXTENSION = ".ptraw";
+	public static final long MAGIC = 0x4745535741525450L; // "PTRAWSEG"
+	public static final int INDEX_MAGIC = 0x31584449; // "IDX1"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int RECORD_HEADER_SIZE = 16;
+
+	// header fields
+	static final int HEADER_MAGIC = 0;
+	static final int HEADER_VERSION = 8;
+	static final int HEADER_HEADER_SIZE = 12;
+	static final int HEADER_WIDTH = 16;
+	static final int HEADER_HEIGHT = 20;
+	static final int HEADER_RECORD_SIZE = 24;
+	static final int HEADER_INDEX_INTERVAL = 28;
+	static final int HEADER_CAPACITY = 32;
+	static final int HEADER_SEGMENT = 36;
+	static final int HEADER_FIRST_FRAME = 40;
+	static final int HEADER_FRAME_COUNT = 48;
+	static final int HEADER_CREATION_TIME = 56;
+
+	/**
+	 * One mapped segment file.
+	 */
+	public static class Segment {
+		private final File file;
+		private final MappedByteBuffer buffer;
+		private final ShortBuffer pixels;
+		private final int width, height, recordSize, indexInterval, capacity;
+		private final long firstFrame;
+
+		Segment(File file) throws IOException {
+			this.file = file;
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.capacity() < HEADER_SIZE || buffer.getLong(HEADER_MAGIC) != MAGIC) {
+				throw new IOException(file+" is not a raw recording segment");
+			}
+			if (buffer.getInt(HEADER_VERSION) != VERSION) {
+				throw new IOException(file+": unsupported version "+buffer.getInt(HEADER_VERSION));
+			}
+			width = buffer.getInt(HEADER_WIDTH);
+			height = buffer.getInt(HEADER_HEIGHT);
+			recordSize = buffer.getInt(HEADER_RECORD_SIZE);
+			indexInterval = buffer.getInt(HEADER_INDEX_INTERVAL);
+			capacity = buffer.getInt(HEADER_CAPACITY);
+			firstFrame = buffer.getLong(HEADER_FIRST_FRAME);
+			pixels = buffer.asShortBuffer();
+		}
+
+		public File getFile() {
+			return file;
+		}
+		public int getWidth() {
+			return width;
+		}
+		public int getHeight() {
+			return height;
+		}
+		public long getFirstFrame() {
+			return firstFrame;
+		}
+		/**
+		 * Frames written so far, the segment may still be recorded.
+		 */
+		public int getFrameCount() {
+			return buffer.getInt(HEADER_FRAME_COUNT);
+		}
+		public int getCapacity() {
+			return capacity;
+		}
+
+		int recordOffset(int i) {
+			return RawRecording.recordOffset(i, indexInterval, recordSize);
+		}
+		public long getTimestamp(int i) {
+			return buffer.getLong(recordOffset(i));
+		}
+		public long getSequence(int i) {
+			return buffer.getLong(recordOffset(i)+8);
+		}
+
+		/**
+		 * The pixels of frame i of the segment, read from the mapping. The
+		 * returned buffer is shared, only valid until the next call.
+		 */
+		public ShortBuffer getPixels(int i) {
+			int start = (recordOffset(i)+RECORD_HEADER_SIZE)/2;
+			pixels.limit(start+width*height).position(start);
+			return pixels;
+		}
+
+		/**
+		 * Number of the first frame of the segment with a timestamp at least t,
+		 * found from the index blocks, or the frame count if there is none.
+		 */
+		public int find(long t) {
+			int count = getFrameCount();
+			int groups = (count+indexInterval-1)/indexInterval;
+			// last group starting before t
+			int lo = 0, hi = groups-1, group = 0;
+			while (lo <= hi) {
+				int mid = (lo+hi) >>> 1;
+				if (buffer.getLong(indexOffset(mid)+8) < t) {
+					group = mid;
+					lo = mid+1;
+				} else {
+					hi = mid-1;
+				}
+			}
+			int i = group*indexInterval;
+			int index = indexOffset(group)+8;
+			while (i < count && buffer.getLong(index+8*(i%indexInterval)) < t) {
+				i++;
+				if (i%indexInterval == 0) index = indexOffset(i/indexInterval)+8;
+			}
+			return i;
+		}
+
+		private int indexOffset(int group) {
+			return HEADER_SIZE+group*groupSize(indexInterval, recordSize);
+		}
+	}
+
+	private final List<Segment> segments = new ArrayList<>();
+	private long[] firstFrames;
+
+	/**
+	 * Opens the segments of a recording.
+	 * @param directory where the recorder wrote
+	 * @param name the name given to the recorder
+	 */
+	public RawRecording(File directory, String name) throws IOException {
+		File[] files = directory.listFiles((dir, f) -> f.startsWith(name+".") && f.endsWith(EXTENSION));
+		if (files == null || files.length == 0) throw new IOException("no recording "+name+" in "+directory);
+		Arrays.sort(files);
+		for (File file : files) {
+			segments.add(new Segment(file));
+		}
+		firstFrames = new long[segments.size()];
+		for (int i = 0; i < firstFrames.length; i++) {
+			firstFrames[i] = segments.get(i).getFirstFrame();
+		}
+	}
+
+	public List<Segment> getSegments() {
+		return segments;
+	}
+
+	public long getFrameCount() {
+		Segment last = segments.get(segments.size()-1);
+		return last.getFirstFrame()+last.getFrameCount();
+	}
+
+	/**
+	 * The segment holding frame n of the recording.
+	 */
+	public Segment segmentOf(long n) {
+		int i = Arrays.binarySearch(firstFrames, n);
+		if (i < 0) i = -i-2;
+		if (i < 0 || n >= getFrameCount()) throw new IndexOutOfBoundsException("frame "+n+" of "+getFrameCount());
+		return segments.get(i);
+	}
+
+	public long getTimestamp(long n) {
+		Segment s = segmentOf(n);
+		return s.getTimestamp((int) (n-s.getFirstFrame()));
+	}
+
+	/**
+	 * The pixels of frame n, see {@link Segment#getPixels(int)}.
+	 */
+	public ShortBuffer getPixels(long n) {
+		Segment s = segmentOf(n);
+		return s.getPixels((int) (n-s.getFirstFrame()));
+	}
+
+	/**
+	 * Number of the first frame with a timestamp at least t, or the frame count.
+	 */
+	public long find(long t) {
+		for (Segment s : segments) {
+			int i = s.find(t);
+			if (i < s.getFrameCount()) return s.getFirstFrame()+i;
+		}
+		return getFrameCount();
+	}
+
+	/**
+	 * Forgets the segments, their mappings are released by the garbage
+	 * collector once no frame read from them is referenced.
+	 */
+	@Override
+	public void close() {
+		segments.clear();
+	}
+
+	static int recordSize(int width, int height) {
+		return (RECORD_HEADER_SIZE+2*width*height+7) & ~7;
+	}
+	static int indexBlockSize(int indexInterval) {
+		return 8+8*indexInterval;
+	}
+	static int groupSize(int indexInterval, int recordSize) {
+		return indexBlockSize(indexInterval)+indexInterval*recordSize;
+	}
+	static int recordOffset(int i, int indexInterval, int recordSize) {
+		int group = i/indexInterval;
+		return HEADER_SIZE+group*groupSize(indexInterval, recordSize)+indexBlockSize(indexInterval)+(i%indexInterval)*recordSize;
+	}
+
+}
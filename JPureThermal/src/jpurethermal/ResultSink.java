@@ -0,0 +1,10 @@
+package jpurethermal;
+
+/**
+ * Receives the results of the analysis of each frame, on the analysis
+ * thread. The frame and the arrays of the analyzer can only be read during
+ * the call, they are reused for the next frame.
+ */
+public interface ResultSink {
+	void result(ThermalFrame frame, ThermalAnalyzer analyzer);
+}
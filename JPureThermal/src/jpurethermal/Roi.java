@@ -0,0 +1,164 @@
+package jpurethermal;
+
+/**
+ * A rectangular region of interest of the frames, like a bearing or a
+ * cabinet, with the statistics of its temperatures for the last frame and a
+ * time series of the last ones. Filled by the {@link RoiEngine} on the
+ * analysis thread, read from any thread.
+ */
+public class Roi {
+	public static final int DEFAULT_SERIES_CAPACITY = 1024;
+
+	/**
+	 * Statistics of the region over consecutive frames, oldest first.
+	 */
+	public static class Series {
+		public final long[] sequences;
+		public final long[] timestamps;
+		public final float[] means;
+		public final float[] stdDevs;
+		public final float[] mins;
+		public final float[] maxs;
+
+		Series(int size) {
+			sequences = new long[size];
+			timestamps = new long[size];
+			means = new float[size];
+			stdDevs = new float[size];
+			mins = new float[size];
+			maxs = new float[size];
+		}
+
+		public int size() {
+			return means.length;
+		}
+	}
+
+	private final String name;
+	private final int x, y, width, height;
+
+	// last frame
+	private long sequence = -1, timestamp;
+	private int pixelCount;
+	private double mean = Double.NaN, variance = Double.NaN;
+	private float min = Float.NaN, max = Float.NaN;
+
+	// time series ring
+	private final Series series;
+	private int head = 0, count = 0;
+
+	/**
+	 * A region of width x height pixels from column x, row y. The part out of
+	 * the frame is ignored.
+	 */
+	public Roi(String name, int x, int y, int width, int height) {
+		this(name, x, y, width, height, DEFAULT_SERIES_CAPACITY);
+	}
+
+	/**
+	 * @param seriesCapacity number of frames kept in the time series
+	 */
+	public Roi(String name, int x, int y, int width, int height, int seriesCapacity) {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("empty region "+width+"x"+height);
+		this.name = name;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		series = new Series(Math.max(1, seriesCapacity));
+	}
+
+	synchronized void update(long sequence, long timestamp, int pixelCount, double mean, double variance, float min, float max) {
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.pixelCount = pixelCount;
+		this.mean = mean;
+		this.variance = variance;
+		this.min = min;
+		this.max = max;
+
+		series.sequences[head] = sequence;
+		series.timestamps[head] = timestamp;
+		series.means[head] = (float) mean;
+		series.stdDevs[head] = (float) Math.sqrt(variance);
+		series.mins[head] = min;
+		series.maxs[head] = max;
+		head = head+1 == series.size() ? 0 : head+1;
+		if (count < series.size()) count++;
+	}
+
+	/**
+	 * Copy of the time series, oldest first.
+	 */
+	public synchronized Series getSeries() {
+		Series copy = new Series(count);
+		int capacity = series.size();
+		int first = (head-count+capacity)%capacity;
+		int n = Math.min(count, capacity-first);
+		copy(first, 0, n, copy);
+		copy(0, n, count-n, copy);
+		return copy;
+	}
+
+	private void copy(int from, int to, int length, Series copy) {
+		System.arraycopy(series.sequences, from, copy.sequences, to, length);
+		System.arraycopy(series.timestamps, from, copy.timestamps, to, length);
+		System.arraycopy(series.means, from, copy.means, to, length);
+		System.arraycopy(series.stdDevs, from, copy.stdDevs, to, length);
+		System.arraycopy(series.mins, from, copy.mins, to, length);
+		System.arraycopy(series.maxs, from, copy.maxs, to, length);
+	}
+
+	public String getName() {
+		return name;
+	}
+	public int getX() {
+		return x;
+	}
+	public int getY() {
+		return y;
+	}
+	public int getWidth() {
+		return width;
+	}
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Sequence of the last frame, -1 before the first one.
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+	public synchronized long getTimestamp() {
+		return timestamp;
+	}
+	/**
+	 * Pixels of the region inside the last frame, 0 if it is out of the frame.
+	 */
+	public synchronized int getPixelCount() {
+		return pixelCount;
+	}
+	public synchronized double getMean() {
+		return mean;
+	}
+	public synchronized double getVariance() {
+		return variance;
+	}
+	public synchronized double getStdDev() {
+		return Math.sqrt(variance);
+	}
+	public synchronized float getMin() {
+		return min;
+	}
+	public synchronized float getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return name+" "+width+"x"+height+"+"+x+"+"+y;
+	}
+
+}
@@ -0,0 +1,448 @@
+package jpurethermal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistics of many regions of interest per frame, without scanning the
+ * pixels of each region.
+ * <p>
+ * Once per frame the engine builds the integral images of the temperatures
+ * and of their squares, and the min/max of tiles of {@link #TILE}x{@link #TILE}
+ * pixels. The mean and variance of any rectangle then take four reads of
+ * each integral image, and its min/max the tiles inside the rectangle plus
+ * the pixels of its border not covered by whole tiles.
+ * <p>
+ * As a {@link ResultSink} it updates the registered {@link Roi}s with the
+ * temperatures of each analysed frame, after the temporal filter.
+ * <p>
+ * When the analyzer works on the raw values the tables are built from them
+ * instead, with exact integer sums, and the results converted to
+ * temperatures by the linear conversion of the frame.
+ */
+public class RoiEngine implements ResultSink {
+	public static final int TILE = 8;
+
+	// copied on change, iterated without allocation
+	private volatile Roi[] rois = new Roi[0];
+	private int seriesCapacity = Roi.DEFAULT_SERIES_CAPACITY;
+
+	// tables of the last frame, analysis thread side
+	private int width, height, stride;
+	private float[] values = new float[0];
+	private double offset;
+	// (width+1)*(height+1), first row and column 0
+	private double[] sums = new double[0];
+	private double[] squares = new double[0];
+	private int tilesX, tilesY;
+	private float[] tileMins = new float[0];
+	private float[] tileMaxs = new float[0];
+	private float scanMin, scanMax;
+	// raw domain, sums of the differences to the first raw value
+	private boolean raw;
+	private Radiometry.Conversion conversion;
+	private short[] rawValues = new short[0];
+	private int rawOffset;
+	private long[] rawSums = new long[0];
+	private long[] rawSquares = new long[0];
+	private int[] tileRawMins = new int[0];
+	private int[] tileRawMaxs = new int[0];
+	private int scanRawMin, scanRawMax;
+	private long buildNanos, evaluateNanos;
+
+	/**
+	 * @param seriesCapacity frames kept in the time series of the regions created by {@link #addRoi(String, int, int, int, int)}
+	 */
+	public void setSeriesCapacity(int seriesCapacity) {
+		this.seriesCapacity = seriesCapacity;
+	}
+
+	/**
+	 * Registers a new region, evaluated from the next frame.
+	 */
+	public Roi addRoi(String name, int x, int y, int width, int height) {
+		Roi roi = new Roi(name, x, y, width, height, seriesCapacity);
+		add(roi);
+		return roi;
+	}
+
+	public synchronized void add(Roi roi) {
+		Roi[] r = Arrays.copyOf(rois, rois.length+1);
+		r[r.length-1] = roi;
+		rois = r;
+	}
+	public synchronized void remove(Roi roi) {
+		List<Roi> r = new ArrayList<>(Arrays.asList(rois));
+		r.remove(roi);
+		rois = r.toArray(new Roi[0]);
+	}
+	public synchronized void clear() {
+		rois = new Roi[0];
+	}
+	public Roi[] getRois() {
+		return rois.clone();
+	}
+
+	@Override
+	public void result(ThermalFrame frame, ThermalAnalyzer analyzer) {
+		compute(frame, analyzer.isRawDomainUsed());
+	}
+
+	/**
+	 * Builds the tables of the temperatures of the frame and updates the regions.
+	 */
+	public void compute(ThermalFrame frame) {
+		compute(frame, false);
+	}
+
+	/**
+	 * Builds the tables of the frame and updates the regions.
+	 * @param raw from the raw values, for a frame with a linear conversion and temperatures not filtered
+	 */
+	public void compute(ThermalFrame frame, boolean raw) {
+		long start = System.nanoTime();
+		if (raw) buildRaw(frame);
+		else build(frame);
+		long built = System.nanoTime();
+		long sequence = frame.getSequence();
+		long timestamp = frame.getTimestamp();
+		for (Roi roi : rois) {
+			int x0 = Math.max(0, roi.getX());
+			int y0 = Math.max(0, roi.getY());
+			int x1 = Math.min(width, roi.getX()+roi.getWidth());
+			int y1 = Math.min(height, roi.getY()+roi.getHeight());
+			if (x0 >= x1 || y0 >= y1) {
+				roi.update(sequence, timestamp, 0, Double.NaN, Double.NaN, Float.NaN, Float.NaN);
+				continue;
+			}
+			minMax(x0, y0, x1, y1);
+			roi.update(sequence, timestamp, (x1-x0)*(y1-y0), rectMean(x0, y0, x1, y1), rectVariance(x0, y0, x1, y1), scanMin, scanMax);
+		}
+		buildNanos = built-start;
+		evaluateNanos = System.nanoTime()-built;
+	}
+
+	/**
+	 * Builds the integral images and the tiles of the frame, for the queries.
+	 */
+	public void build(ThermalFrame frame) {
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+		resize(w, h);
+		if (sums.length != (w+1)*(h+1)) {
+			sums = new double[(w+1)*(h+1)];
+			squares = new double[(w+1)*(h+1)];
+			tileMins = new float[tilesX*tilesY];
+			tileMaxs = new float[tilesX*tilesY];
+		}
+		raw = false;
+		conversion = frame.getConversion();
+		float[] t = frame.getTemperatures();
+		values = t;
+		stride = frame.getStride();
+		// sums of the differences to a value of the frame, so the variance
+		// does not come from the difference of two large sums of squares
+		offset = t[0];
+
+		double[] sums = this.sums;
+		double[] squares = this.squares;
+		int w1 = w+1;
+		for (int y = 0; y < h; y++) {
+			int row = y*stride;
+			int above = y*w1+1;
+			int here = above+w1;
+			double rowSum = 0, rowSquares = 0;
+			for (int x = 0; x < w; x++) {
+				double v = t[row+x]-offset;
+				rowSum += v;
+				rowSquares += v*v;
+				sums[here+x] = sums[above+x]+rowSum;
+				squares[here+x] = squares[above+x]+rowSquares;
+			}
+		}
+
+		float[] mins = tileMins;
+		float[] maxs = tileMaxs;
+		Arrays.fill(mins, Float.POSITIVE_INFINITY);
+		Arrays.fill(maxs, Float.NEGATIVE_INFINITY);
+		for (int y = 0; y < h; y++) {
+			int row = y*stride;
+			int tileRow = (y/TILE)*tilesX;
+			for (int tx = 0; tx < tilesX; tx++) {
+				int x0 = tx*TILE;
+				int x1 = Math.min(w, x0+TILE);
+				float min = mins[tileRow+tx];
+				float max = maxs[tileRow+tx];
+				for (int i = row+x0; i < row+x1; i++) {
+					float v = t[i];
+					if (v < min) min = v;
+					if (v > max) max = v;
+				}
+				mins[tileRow+tx] = min;
+				maxs[tileRow+tx] = max;
+			}
+		}
+	}
+
+	/**
+	 * Builds the tables from the raw values of a frame with a linear
+	 * conversion, the sums exact in longs.
+	 */
+	public void buildRaw(ThermalFrame frame) {
+		if (!frame.isLinear()) throw new IllegalArgumentException("raw tables need a linear conversion");
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+		resize(w, h);
+		if (rawSums.length != (w+1)*(h+1)) {
+			rawSums = new long[(w+1)*(h+1)];
+			rawSquares = new long[(w+1)*(h+1)];
+			tileRawMins = new int[tilesX*tilesY];
+			tileRawMaxs = new int[tilesX*tilesY];
+		}
+		raw = true;
+		conversion = frame.getConversion();
+		short[] r = frame.getRaw();
+		rawValues = r;
+		stride = frame.getStride();
+		rawOffset = r[0] & 0xFFFF;
+
+		long[] sums = this.rawSums;
+		long[] squares = this.rawSquares;
+		int off = rawOffset;
+		int w1 = w+1;
+		for (int y = 0; y < h; y++) {
+			int row = y*stride;
+			int above = y*w1+1;
+			int here = above+w1;
+			long rowSum = 0, rowSquares = 0;
+			for (int x = 0; x < w; x++) {
+				int d = (r[row+x] & 0xFFFF)-off;
+				rowSum += d;
+				rowSquares += (long) d*d;
+				sums[here+x] = sums[above+x]+rowSum;
+				squares[here+x] = squares[above+x]+rowSquares;
+			}
+		}
+
+		int[] mins = tileRawMins;
+		int[] maxs = tileRawMaxs;
+		Arrays.fill(mins, 0xFFFF);
+		Arrays.fill(maxs, 0);
+		for (int y = 0; y < h; y++) {
+			int row = y*stride;
+			int tileRow = (y/TILE)*tilesX;
+			for (int tx = 0; tx < tilesX; tx++) {
+				int x0 = tx*TILE;
+				int x1 = Math.min(w, x0+TILE);
+				int min = mins[tileRow+tx];
+				int max = maxs[tileRow+tx];
+				for (int i = row+x0; i < row+x1; i++) {
+					int v = r[i] & 0xFFFF;
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+				mins[tileRow+tx] = min;
+				maxs[tileRow+tx] = max;
+			}
+		}
+	}
+
+	private void resize(int w, int h) {
+		if (w == width && h == height) return;
+		width = w;
+		height = h;
+		tilesX = (w+TILE-1)/TILE;
+		tilesY = (h+TILE-1)/TILE;
+		// the tables of both domains are sized on their next build
+		sums = squares = new double[0];
+		rawSums = rawSquares = new long[0];
+	}
+
+	private long rect(long[] table, int x0, int y0, int x1, int y1) {
+		int w1 = width+1;
+		return table[y1*w1+x1]-table[y0*w1+x1]-table[y1*w1+x0]+table[y0*w1+x0];
+	}
+
+	/**
+	 * Mean of [x0, x1[ x [y0, y1[, inside the frame.
+	 */
+	private double rectMean(int x0, int y0, int x1, int y1) {
+		int n = (x1-x0)*(y1-y0);
+		if (raw) {
+			return ((double) rect(rawSums, x0, y0, x1, y1)/n+rawOffset-conversion.getOffset())*conversion.getScale();
+		}
+		return rect(sums, x0, y0, x1, y1)/n+offset;
+	}
+
+	/**
+	 * Variance of [x0, x1[ x [y0, y1[, inside the frame.
+	 */
+	private double rectVariance(int x0, int y0, int x1, int y1) {
+		int n = (x1-x0)*(y1-y0);
+		if (raw) {
+			double m = (double) rect(rawSums, x0, y0, x1, y1)/n;
+			double scale = conversion.getScale();
+			return Math.max(0, (double) rect(rawSquares, x0, y0, x1, y1)/n-m*m)*scale*scale;
+		}
+		double m = rect(sums, x0, y0, x1, y1)/n;
+		return Math.max(0, rect(squares, x0, y0, x1, y1)/n-m*m);
+	}
+
+	private double rect(double[] table, int x0, int y0, int x1, int y1) {
+		int w1 = width+1;
+		return table[y1*w1+x1]-table[y0*w1+x1]-table[y1*w1+x0]+table[y0*w1+x0];
+	}
+
+	/**
+	 * Mean of the rectangle of the last built frame, NaN if empty.
+	 */
+	public double mean(int x, int y, int w, int h) {
+		int x0 = Math.max(0, x), y0 = Math.max(0, y), x1 = Math.min(width, x+w), y1 = Math.min(height, y+h);
+		if (x0 >= x1 || y0 >= y1) return Double.NaN;
+		return rectMean(x0, y0, x1, y1);
+	}
+
+	/**
+	 * Variance of the rectangle of the last built frame, NaN if empty.
+	 */
+	public double variance(int x, int y, int w, int h) {
+		int x0 = Math.max(0, x), y0 = Math.max(0, y), x1 = Math.min(width, x+w), y1 = Math.min(height, y+h);
+		if (x0 >= x1 || y0 >= y1) return Double.NaN;
+		return rectVariance(x0, y0, x1, y1);
+	}
+
+	/**
+	 * Min of the rectangle of the last built frame, NaN if empty.
+	 */
+	public float min(int x, int y, int w, int h) {
+		int x0 = Math.max(0, x), y0 = Math.max(0, y), x1 = Math.min(width, x+w), y1 = Math.min(height, y+h);
+		if (x0 >= x1 || y0 >= y1) return Float.NaN;
+		minMax(x0, y0, x1, y1);
+		return scanMin;
+	}
+
+	/**
+	 * Max of the rectangle of the last built frame, NaN if empty.
+	 */
+	public float max(int x, int y, int w, int h) {
+		int x0 = Math.max(0, x), y0 = Math.max(0, y), x1 = Math.min(width, x+w), y1 = Math.min(height, y+h);
+		if (x0 >= x1 || y0 >= y1) return Float.NaN;
+		minMax(x0, y0, x1, y1);
+		return scanMax;
+	}
+
+	/**
+	 * Min and max of [x0, x1[ x [y0, y1[, inside the frame, in scanMin and scanMax.
+	 */
+	private void minMax(int x0, int y0, int x1, int y1) {
+		if (raw) {
+			rawMinMax(x0, y0, x1, y1);
+			return;
+		}
+		scanMin = Float.POSITIVE_INFINITY;
+		scanMax = Float.NEGATIVE_INFINITY;
+		// whole tiles inside the rectangle, the last ones may be cut by the frame
+		int tx0 = (x0+TILE-1)/TILE;
+		int tx1 = x1 == width ? tilesX : x1/TILE;
+		int ty0 = (y0+TILE-1)/TILE;
+		int ty1 = y1 == height ? tilesY : y1/TILE;
+		if (tx0 >= tx1 || ty0 >= ty1) {
+			scan(x0, y0, x1, y1);
+			return;
+		}
+		float min = scanMin, max = scanMax;
+		for (int ty = ty0; ty < ty1; ty++) {
+			for (int i = ty*tilesX+tx0; i < ty*tilesX+tx1; i++) {
+				if (tileMins[i] < min) min = tileMins[i];
+				if (tileMaxs[i] > max) max = tileMaxs[i];
+			}
+		}
+		scanMin = min;
+		scanMax = max;
+		// border not covered by the tiles
+		int ix0 = tx0*TILE, ix1 = Math.min(width, tx1*TILE);
+		int iy0 = ty0*TILE, iy1 = Math.min(height, ty1*TILE);
+		scan(x0, y0, x1, iy0);
+		scan(x0, iy1, x1, y1);
+		scan(x0, iy0, ix0, iy1);
+		scan(ix1, iy0, x1, iy1);
+	}
+
+	private void scan(int x0, int y0, int x1, int y1) {
+		float min = scanMin, max = scanMax;
+		float[] t = values;
+		for (int y = y0; y < y1; y++) {
+			int row = y*stride;
+			for (int i = row+x0; i < row+x1; i++) {
+				float v = t[i];
+				if (v < min) min = v;
+				if (v > max) max = v;
+			}
+		}
+		scanMin = min;
+		scanMax = max;
+	}
+
+	/**
+	 * Same as {@link #minMax(int, int, int, int)} on the raw values, converted at the end.
+	 */
+	private void rawMinMax(int x0, int y0, int x1, int y1) {
+		scanRawMin = 0xFFFF;
+		scanRawMax = 0;
+		int tx0 = (x0+TILE-1)/TILE;
+		int tx1 = x1 == width ? tilesX : x1/TILE;
+		int ty0 = (y0+TILE-1)/TILE;
+		int ty1 = y1 == height ? tilesY : y1/TILE;
+		if (tx0 >= tx1 || ty0 >= ty1) {
+			scanRaw(x0, y0, x1, y1);
+		} else {
+			int min = scanRawMin, max = scanRawMax;
+			for (int ty = ty0; ty < ty1; ty++) {
+				for (int i = ty*tilesX+tx0; i < ty*tilesX+tx1; i++) {
+					min = Math.min(min, tileRawMins[i]);
+					max = Math.max(max, tileRawMaxs[i]);
+				}
+			}
+			scanRawMin = min;
+			scanRawMax = max;
+			int ix0 = tx0*TILE, ix1 = Math.min(width, tx1*TILE);
+			int iy0 = ty0*TILE, iy1 = Math.min(height, ty1*TILE);
+			scanRaw(x0, y0, x1, iy0);
+			scanRaw(x0, iy1, x1, y1);
+			scanRaw(x0, iy0, ix0, iy1);
+			scanRaw(ix1, iy0, x1, iy1);
+		}
+		scanMin = conversion.toTemperature(scanRawMin);
+		scanMax = conversion.toTemperature(scanRawMax);
+	}
+
+	private void scanRaw(int x0, int y0, int x1, int y1) {
+		int min = scanRawMin, max = scanRawMax;
+		short[] r = rawValues;
+		for (int y = y0; y < y1; y++) {
+			int row = y*stride;
+			for (int i = row+x0; i < row+x1; i++) {
+				int v = r[i] & 0xFFFF;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+		}
+		scanRawMin = min;
+		scanRawMax = max;
+	}
+
+	/**
+	 * Time to build the tables of the last frame.
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+	/**
+	 * Time to update all the regions from the tables of the last frame.
+	 */
+	public long getEvaluateNanos() {
+		return evaluateNanos;
+	}
+
+}
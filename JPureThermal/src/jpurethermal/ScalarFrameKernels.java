@@ -0,0 +1,43 @@
+package jpurethermal;
+
+/**
+ * The plain Java loops, also the reference of the vector kernels.
+ */
+class ScalarFrameKernels extends FrameKernels {
+
+	@Override
+	public void lookup(short[] raw, int from, int to, float[] table, float[] out) {
+		for (int i = from; i < to; i++) {
+			out[i] = table[raw[i] & 0xFFFF];
+		}
+	}
+
+	@Override
+	public long minMaxSum(short[] raw, int from, int to, int[] minMax) {
+		int min = minMax[0], max = minMax[1];
+		int sum = 0;
+		for (int i = from; i < to; i++) {
+			int v = raw[i] & 0xFFFF;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+			sum += v;
+		}
+		minMax[0] = min;
+		minMax[1] = max;
+		return sum & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public int firstAtLeast(float[] t, int from, int to, float threshold) {
+		for (int i = from; i < to; i++) {
+			if (t[i] >= threshold) return i;
+		}
+		return to;
+	}
+
+	@Override
+	public String toString() {
+		return "scalar";
+	}
+
+}
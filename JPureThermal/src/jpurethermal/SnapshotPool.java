@@ -0,0 +1,143 @@
+package jpurethermal;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed pool of {@link AnalysisSnapshot}s filled by one analysis thread and
+ * read by any number of threads, without locks and without allocation once
+ * the snapshots have their size.
+ * <p>
+ * The analysis thread fills a snapshot that is neither the latest one nor
+ * held by a reader, then publishes it as the latest. A reader acquires the
+ * latest snapshot by counting itself in, and checks that it is still the
+ * latest: a snapshot being filled is never the latest, so a reader only ever
+ * sees published snapshots, and none is filled again until all its readers
+ * have released it. When readers hold all the other snapshots the frame is
+ * not published, the analysis thread never waits.
+ */
+public class SnapshotPool {
+	public static final int DEFAULT_SIZE = 8;
+
+	private final AnalysisSnapshot[] snapshots;
+	// readers of each snapshot
+	private final AtomicIntegerArray readers;
+	private final AtomicReference<AnalysisSnapshot> latest = new AtomicReference<>();
+
+	// analysis thread side
+	private AnalysisSnapshot back;
+	private int next = 0;
+	private long version = 0;
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	public SnapshotPool() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size snapshots of the pool, at least 2, more than the snapshots held at once by the readers
+	 */
+	public SnapshotPool(int size) {
+		if (size < 2) throw new IllegalArgumentException("size "+size+" < 2");
+		snapshots = new AnalysisSnapshot[size];
+		for (int i = 0; i < size; i++) snapshots[i] = new AnalysisSnapshot();
+		readers = new AtomicIntegerArray(size);
+	}
+
+	/**
+	 * The snapshot to fill before calling {@link #publish()}, the same one
+	 * until then. Called by the analysis thread only.
+	 * @return null if the readers hold all the other snapshots
+	 */
+	public AnalysisSnapshot getBackBuffer() {
+		if (back != null) return back;
+		AnalysisSnapshot current = latest.get();
+		for (int n = 0; n < snapshots.length; n++) {
+			int i = next;
+			next = next+1 == snapshots.length ? 0 : next+1;
+			// a reader counted in after this check finds the snapshot is not the latest
+			if (snapshots[i] != current && readers.get(i) == 0) {
+				back = snapshots[i];
+				return back;
+			}
+		}
+		skipped.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Makes the back snapshot the latest one. Called by the analysis thread only.
+	 */
+	public void publish() {
+		if (back == null) return;
+		back.setVersion(version++);
+		latest.set(back);
+		back = null;
+		published.incrementAndGet();
+	}
+
+	/**
+	 * The latest published snapshot, which is not changed until
+	 * {@link #release(AnalysisSnapshot)}. Called from any thread.
+	 * @return null before the first one
+	 */
+	public AnalysisSnapshot acquire() {
+		while (true) {
+			AnalysisSnapshot s = latest.get();
+			if (s == null) return null;
+			int i = indexOf(s);
+			readers.incrementAndGet(i);
+			if (latest.get() == s) return s;
+			// replaced meanwhile, maybe being filled again
+			readers.decrementAndGet(i);
+		}
+	}
+
+	/**
+	 * Gives back a snapshot returned by {@link #acquire()}.
+	 */
+	public void release(AnalysisSnapshot snapshot) {
+		readers.decrementAndGet(indexOf(snapshot));
+	}
+
+	private int indexOf(AnalysisSnapshot snapshot) {
+		for (int i = 0; i < snapshots.length; i++) {
+			if (snapshots[i] == snapshot) return i;
+		}
+		throw new IllegalArgumentException("not a snapshot of the pool");
+	}
+
+	/**
+	 * Version of the latest snapshot, -1 before the first one.
+	 */
+	public long getLatestVersion() {
+		AnalysisSnapshot s = latest.get();
+		return s == null ? -1 : s.getVersion();
+	}
+	public int getSize() {
+		return snapshots.length;
+	}
+	/**
+	 * Snapshots held by the readers.
+	 */
+	public int getHeldCount() {
+		int held = 0;
+		for (int i = 0; i < snapshots.length; i++) {
+			if (readers.get(i) > 0) held++;
+		}
+		return held;
+	}
+	public long getPublishedCount() {
+		return published.get();
+	}
+	/**
+	 * Frames not published because the readers held all the other snapshots.
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+}
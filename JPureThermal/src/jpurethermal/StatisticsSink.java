@@ -0,0 +1,47 @@
+package jpurethermal;
+
+import java.io.PrintStream;
+
+/**
+ * Prints, about once per second, the number of frames analysed per second
+ * and the temperatures of the last frame.
+ */
+public class StatisticsSink implements ResultSink {
+	private final PrintStream out;
+	private long count = 0;
+	private long lastCount = 0;
+	private long lastTimeNanos = System.nanoTime();
+	private volatile double rate = 0;
+
+	public StatisticsSink() {
+		this(System.out);
+	}
+
+	public StatisticsSink(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void result(ThermalFrame frame, ThermalAnalyzer analyzer) {
+		count++;
+		long now = System.nanoTime();
+		if (now >= lastTimeNanos+1_000_000_000L) {
+			rate = (count-lastCount)*1e9/(now-lastTimeNanos);
+			lastCount = count;
+			lastTimeNanos = now;
+			out.println(String.format("%8.1f frames/s  frame %d  min %.2f  max %.2f  range [%.2f, %.2f]",
+					rate, frame.getSequence(), analyzer.getMin(), analyzer.getMax(), analyzer.getPixMin(), analyzer.getPixMax()));
+		}
+	}
+
+	/**
+	 * Frames analysed per second over the last second.
+	 */
+	public double getRate() {
+		return rate;
+	}
+	public long getCount() {
+		return count;
+	}
+
+}
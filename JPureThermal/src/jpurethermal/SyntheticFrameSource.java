@@ -0,0 +1,61 @@
+package jpurethermal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Frames of a {@link SyntheticScene}, of any size and at any rate. A loop of
+ * frames is rendered up front so the source costs nearly nothing and the
+ * measured rate is the one of the processing.
+ */
+public class SyntheticFrameSource extends ThreadedFrameSource {
+	private static final int MAX_LOOP_FRAMES = 64;
+	private static final long MAX_LOOP_BYTES = 64L << 20;
+
+	private final int width, height;
+	private final ShortBuffer[] frames;
+	private long startNanos;
+
+	/**
+	 * @param rate frames per second, 0 for unthrottled
+	 * @param maxFrames number of frames to deliver, 0 for no limit
+	 */
+	public SyntheticFrameSource(int width, int height, double rate, long maxFrames) {
+		super(rate, maxFrames);
+		this.width = width;
+		this.height = height;
+		long frameBytes = 2L*width*height;
+		int count = (int) Math.max(1, Math.min(MAX_LOOP_FRAMES, MAX_LOOP_BYTES/frameBytes));
+		SyntheticScene scene = new SyntheticScene(width, height);
+		short[] scratch = new short[width*height];
+		frames = new ShortBuffer[count];
+		for (int i = 0; i < count; i++) {
+			ByteBuffer bb = ByteBuffer.allocateDirect((int) frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+			// one full turn of the hot spot over the loop
+			scene.renderGray16LE(Math.round(i*2*Math.PI/0.05/count), scratch, bb);
+			frames[i] = bb.asShortBuffer();
+		}
+	}
+
+	@Override
+	public void start(Consumer consumer) {
+		startNanos = System.nanoTime();
+		super.start(consumer);
+	}
+
+	@Override
+	protected boolean deliver(long n, Consumer consumer) {
+		ShortBuffer sb = frames[(int) (n%frames.length)];
+		sb.rewind();
+		long now = System.nanoTime();
+		consumer.frame(sb, width, height, now-startNanos, now);
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "synthetic "+width+"x"+height;
+	}
+
+}
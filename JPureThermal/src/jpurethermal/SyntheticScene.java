@@ -0,0 +1,86 @@
+package jpurethermal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Generates plausible radiometric frames of any size without a camera: a room
+ * temperature gradient, a hot spot moving in circle and some sensor noise.
+ * Values are centi-Kelvin like the Lepton output.
+ */
+public class SyntheticScene {
+	private final int width, height;
+	private long seed = 0x2545F4914F6CDD1DL;
+	private double background = 22.0;
+	private double gradient = 6.0;
+	private double hotSpot = 65.0;
+	private double noise = 0.15;
+
+	public SyntheticScene(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Renders frame number n in dest, row by row.
+	 */
+	public void render(long n, short[] dest, int offset, int stride) {
+		double angle = n*0.05;
+		double spotX = width*(0.5 + 0.3*Math.cos(angle));
+		double spotY = height*(0.5 + 0.3*Math.sin(angle));
+		double spotRadius2 = Math.pow(Math.max(2.0, height/10.0), 2);
+		for (int y = 0; y < height; y++) {
+			int row = offset + y*stride;
+			double dy2 = (y-spotY)*(y-spotY);
+			for (int x = 0; x < width; x++) {
+				double t = background + gradient*x/width;
+				double d2 = (x-spotX)*(x-spotX) + dy2;
+				if (d2 < 9*spotRadius2) t += (hotSpot-background)*Math.exp(-d2/spotRadius2);
+				t += noise*nextNoise();
+				dest[row+x] = (short) Math.round((t+273.15)*100.0);
+			}
+		}
+	}
+
+	/**
+	 * Renders frame number n as GRAY16_LE bytes, from the buffer position.
+	 */
+	public void renderGray16LE(long n, short[] scratch, ByteBuffer bb) {
+		render(n, scratch, 0, width);
+		int start = bb.position();
+		ByteBuffer le = bb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		le.asShortBuffer().put(scratch, 0, width*height);
+		bb.position(start);
+	}
+
+	/**
+	 * Uniform noise in [-1, 1], xorshift so it does not allocate or lock.
+	 */
+	private double nextNoise() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+		return (seed >> 11) * 0x1.0p-52;
+	}
+
+	public void setBackground(double background) {
+		this.background = background;
+	}
+	public void setGradient(double gradient) {
+		this.gradient = gradient;
+	}
+	public void setHotSpot(double hotSpot) {
+		this.hotSpot = hotSpot;
+	}
+	public void setNoise(double noise) {
+		this.noise = noise;
+	}
+
+}
@@ -0,0 +1,255 @@
+package jpurethermal;
+
+import java.util.Arrays;
+
+/**
+ * Temporal noise reduction of the temperatures, applied in place between the
+ * conversion and the statistics, so the auto range and the histogram follow
+ * the scene instead of the noise of the sensor.
+ * <p>
+ * The mode and its parameters can be changed from any thread at any time,
+ * the filter starts again from the next frame. Memory is only allocated
+ * when the mode, the window or the frame size change.
+ */
+public class TemporalFilter {
+	public static final int MAX_WINDOW = 15;
+	private static final int BLOCK = 256;
+
+	public enum Mode {
+		/** temperatures left as converted */
+		NONE,
+		/** exponential moving average, average += alpha*(t-average) */
+		EMA,
+		/** mean of the last window frames */
+		MEAN,
+		/** per pixel median of the last window frames */
+		MEDIAN
+	}
+
+	private volatile Mode mode = Mode.NONE;
+	private volatile float alpha = 0.25f;
+	private volatile int window = 5;
+	private volatile boolean changed = true;
+
+	// analysis thread side
+	private Mode current = Mode.NONE;
+	private int currentWindow;
+	private float currentAlpha;
+	private int length = -1;
+	// EMA state
+	private float[] average = new float[0];
+	// MEAN state, the last frames one after the other
+	private float[] history = new float[0];
+	// MEAN running sums, recomputed from the history once per window so the
+	// rounding errors do not build up
+	private float[] sum = new float[0];
+	// MEDIAN state, the last frames as int keys one after the other, and
+	// the windows of a block of pixels being sorted
+	private int[] keys = new int[0];
+	private final int[] block = new int[MAX_WINDOW*BLOCK];
+	// frames in the history, and slot of the next one
+	private int count, next;
+
+	public TemporalFilter() {
+	}
+
+	public TemporalFilter(Mode mode) {
+		setMode(mode);
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+		changed = true;
+	}
+	public Mode getMode() {
+		return mode;
+	}
+	/**
+	 * @param alpha weight of the new frame for {@link Mode#EMA}, in ]0, 1]
+	 */
+	public void setAlpha(float alpha) {
+		if (!(alpha > 0 && alpha <= 1)) throw new IllegalArgumentException("alpha "+alpha+" not in ]0, 1]");
+		this.alpha = alpha;
+		changed = true;
+	}
+	public float getAlpha() {
+		return alpha;
+	}
+	/**
+	 * @param window frames of {@link Mode#MEAN} and {@link Mode#MEDIAN}, from 1 to {@link #MAX_WINDOW}
+	 */
+	public void setWindow(int window) {
+		if (window < 1 || window > MAX_WINDOW) throw new IllegalArgumentException("window "+window+" not in [1, "+MAX_WINDOW+"]");
+		this.window = window;
+		changed = true;
+	}
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Forgets the previous frames.
+	 */
+	public void reset() {
+		changed = true;
+	}
+
+	/**
+	 * Filters the temperatures of the frame in place. The temperatures are
+	 * not derived from the raw values when there is no filter.
+	 * @return true if the temperatures were filtered
+	 */
+	public boolean apply(ThermalFrame frame) {
+		if (mode == Mode.NONE) return false;
+		apply(frame.getTemperatures());
+		return current != Mode.NONE;
+	}
+
+	/**
+	 * Filters the values in place, with the previous arrays of the same length
+	 * as history.
+	 */
+	public void apply(float[] t) {
+		if (changed || t.length != length) restart(t.length);
+		switch (current) {
+		case NONE:
+			break;
+		case EMA:
+			ema(t);
+			break;
+		case MEAN:
+			mean(t);
+			break;
+		case MEDIAN:
+			median(t);
+			break;
+		}
+	}
+
+	private void restart(int n) {
+		changed = false;
+		current = mode;
+		currentWindow = window;
+		currentAlpha = alpha;
+		length = n;
+		count = 0;
+		next = 0;
+		if (current == Mode.EMA && average.length != n) average = new float[n];
+		if (current == Mode.MEAN && history.length != n*currentWindow) history = new float[n*currentWindow];
+		if (current == Mode.MEDIAN && keys.length != n*currentWindow) keys = new int[n*currentWindow];
+		if (current == Mode.MEAN && sum.length != n) sum = new float[n];
+	}
+
+	private void ema(float[] t) {
+		float[] average = this.average;
+		if (count == 0) {
+			System.arraycopy(t, 0, average, 0, t.length);
+			count = 1;
+			return;
+		}
+		float a = currentAlpha;
+		for (int i = 0; i < t.length; i++) {
+			float m = average[i] + a*(t[i]-average[i]);
+			average[i] = m;
+			t[i] = m;
+		}
+	}
+
+	private void mean(float[] t) {
+		float[] history = this.history;
+		float[] sum = this.sum;
+		int n = t.length;
+		int w = currentWindow;
+		int slot = next;
+		int h = slot*n;
+		if (count < w) {
+			if (count == 0) Arrays.fill(sum, 0);
+			count++;
+			float scale = 1f/count;
+			for (int i = 0; i < n; i++) {
+				float v = t[i];
+				history[h+i] = v;
+				float s = sum[i]+v;
+				sum[i] = s;
+				t[i] = s*scale;
+			}
+		} else if (slot == 0) {
+			System.arraycopy(t, 0, history, 0, n);
+			System.arraycopy(t, 0, sum, 0, n);
+			for (int k = 1; k < w; k++) {
+				for (int i = 0, j = k*n; i < n; i++, j++) sum[i] += history[j];
+			}
+			float scale = 1f/w;
+			for (int i = 0; i < n; i++) t[i] = sum[i]*scale;
+		} else {
+			float scale = 1f/w;
+			for (int i = 0; i < n; i++) {
+				float v = t[i];
+				float s = sum[i]+v-history[h+i];
+				history[h+i] = v;
+				sum[i] = s;
+				t[i] = s*scale;
+			}
+		}
+		next = slot+1 == w ? 0 : slot+1;
+	}
+
+	private void median(float[] t) {
+		int[] keys = this.keys;
+		int[] block = this.block;
+		int n = t.length;
+		int w = currentWindow;
+		int slot = next;
+		if (count < w) count++;
+		int c = count;
+		int plane = slot*n;
+		for (int i = 0; i < n; i++) keys[plane+i] = key(t[i]);
+
+		// odd-even transposition sort of the windows of a block of pixels,
+		// pixel by pixel in the inner loops so the int min/max are vectorized
+		for (int start = 0; start < n; start += BLOCK) {
+			int length = Math.min(BLOCK, n-start);
+			for (int k = 0; k < c; k++) {
+				System.arraycopy(keys, k*n+start, block, k*BLOCK, length);
+			}
+			for (int pass = 0; pass < c; pass++) {
+				for (int j = pass & 1; j+1 < c; j += 2) {
+					int lo = j*BLOCK, hi = lo+BLOCK;
+					for (int i = 0; i < length; i++) {
+						int x = block[lo+i], y = block[hi+i];
+						block[lo+i] = Math.min(x, y);
+						block[hi+i] = Math.max(x, y);
+					}
+				}
+			}
+			int middle = (c/2)*BLOCK;
+			for (int i = 0; i < length; i++) t[start+i] = value(block[middle+i]);
+		}
+		next = slot+1 == w ? 0 : slot+1;
+	}
+
+	/**
+	 * An int ordered as the float.
+	 */
+	private static int key(float f) {
+		int bits = Float.floatToRawIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+	private static float value(int key) {
+		return Float.intBitsToFloat(key ^ ((key >> 31) & 0x7fffffff));
+	}
+
+	@Override
+	public String toString() {
+		switch (mode) {
+		case EMA:
+			return "EMA alpha "+alpha;
+		case MEAN:
+		case MEDIAN:
+			return mode.name().toLowerCase()+" of "+window+" frames";
+		default:
+			return "none";
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package jpurethermal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Analysis of the frames: temporal filter, min/max and adaptive range from
+ * the min/max or the percentiles of the frames, histogram and projections.
+ * The results of each frame are handed to the {@link ResultSink}s, like the
+ * {@link ChartPublisher} of the charts.
+ * <p>
+ * Without temporal filter and with a linear conversion the statistics are
+ * computed from the raw values with integer counts and sums, and only the
+ * results converted to temperatures. The results are the same as from the
+ * temperatures, which are then only derived for the sinks needing them.
+ * <p>
+ * The statistics take two sweeps of the {@link FusedFrameKernel}, split in
+ * bands of rows run in parallel for large frames. Without temporal filter
+ * the temperatures are derived in the first one.
+ */
+public class ThermalAnalyzer {
+	public enum RangeMode {
+		/** follows the min and max of the frames by a quarter of the way per frame */
+		MIN_MAX,
+		/** follows percentiles of the frames, see {@link PercentileGain} */
+		PERCENTILE
+	}
+
+	private final int histogramResolution;
+	private int bufferWidth, bufferHeight;
+	// copied on change, iterated without allocation
+	private volatile ResultSink[] sinks = new ResultSink[0];
+	private volatile PipelineMetrics metrics;
+	private final TemporalFilter temporalFilter = new TemporalFilter();
+	private final PercentileGain percentileGain = new PercentileGain();
+	private volatile RangeMode rangeMode = RangeMode.MIN_MAX;
+	private double pixMin = 0;
+	private double pixMax = 10;
+	private HistogramBinner histogramBinner;
+	private final FusedFrameKernel kernel;
+	private double[] histogramX;
+	private double[] histogramY;
+	private double[][] horProjection = new double[8][8];
+	private double[][] vertProjection = new double[8][8];
+	private double min = Double.MAX_VALUE;
+	private double max = -Double.MAX_VALUE;
+	private double mean;
+	// statistics from the raw values
+	private volatile boolean rawDomain = true;
+	private boolean rawUsed = false;
+
+	public ThermalAnalyzer(int histogramResolution) {
+		this.histogramResolution = histogramResolution;
+		histogramBinner = new HistogramBinner(histogramResolution);
+		kernel = new FusedFrameKernel(histogramBinner);
+		histogramX = new double[histogramResolution];
+		histogramY = new double[histogramResolution];
+	}
+
+	public void process(ThermalFrame frame) {
+		Object event = FrameTracer.INSTANCE.beginAnalysis();
+		long start = System.nanoTime();
+		// only derived here for the filter, else in the first sweep of the statistics if they need them
+		boolean converting = temporalFilter.getMode() != TemporalFilter.Mode.NONE;
+		if (converting) frame.getTemperatures();
+		long converted = System.nanoTime();
+		filter(frame);
+		long filtered = System.nanoTime();
+		findMinMax(frame);
+		adaptRange(frame);
+		bin(frame);
+		long binned = System.nanoTime();
+		publish(frame);
+		long published = System.nanoTime();
+
+		long capture = frame.getCaptureNanos();
+		PipelineMetrics m = metrics;
+		if (m != null) {
+			if (converting) m.record(PipelineMetrics.Stage.CONVERT, converted-start);
+			m.record(PipelineMetrics.Stage.FILTER, filtered-converted);
+			m.record(PipelineMetrics.Stage.STATS, binned-filtered);
+			m.record(PipelineMetrics.Stage.PUBLISH, published-binned);
+			if (capture != 0) m.record(PipelineMetrics.Stage.CAPTURE_TO_RESULT, published-capture);
+		}
+		FrameTracer.INSTANCE.endAnalysis(event, frame, converted-start, filtered-converted, binned-filtered, published-binned,
+				capture != 0 ? published-capture : 0);
+	}
+
+	/**
+	 * @param metrics where to record the time of the stages, or null
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Applies the temporal filter to the temperatures of the frame, and
+	 * selects the domain of the statistics of the frame.
+	 */
+	public void filter(ThermalFrame frame) {
+		boolean filtered = temporalFilter.apply(frame);
+		rawUsed = rawDomain && !filtered && frame.isLinear();
+	}
+
+	/**
+	 * @param rawDomain compute the statistics from the raw values when the
+	 * conversion is linear and no temporal filter is on, with the same results
+	 */
+	public void setRawDomain(boolean rawDomain) {
+		this.rawDomain = rawDomain;
+	}
+	public boolean isRawDomain() {
+		return rawDomain;
+	}
+	/**
+	 * True if the statistics of the last frame were computed from the raw
+	 * values, which sinks may then use too.
+	 */
+	public boolean isRawDomainUsed() {
+		return rawUsed;
+	}
+
+	/**
+	 * The filter applied between the conversion and the statistics, its mode
+	 * can be changed while frames are processed.
+	 */
+	public TemporalFilter getTemporalFilter() {
+		return temporalFilter;
+	}
+
+	/**
+	 * Min, max and mean of the temperatures of the frame.
+	 */
+	public void findMinMax(ThermalFrame frame) {
+		kernel.range(frame, rawUsed);
+		min = kernel.getMin();
+		max = kernel.getMax();
+		mean = kernel.getMean();
+	}
+
+	/**
+	 * The kernel of the statistics, its parallelism can be changed while frames are processed.
+	 */
+	public FusedFrameKernel getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * How the displayed range follows the frames, can be changed while frames
+	 * are processed.
+	 */
+	public void setRangeMode(RangeMode rangeMode) {
+		if (rangeMode == RangeMode.PERCENTILE && this.rangeMode != RangeMode.PERCENTILE) percentileGain.reset();
+		this.rangeMode = rangeMode;
+	}
+	public RangeMode getRangeMode() {
+		return rangeMode;
+	}
+	/**
+	 * The percentiles and smoothing of the {@link RangeMode#PERCENTILE} mode.
+	 */
+	public PercentileGain getPercentileGain() {
+		return percentileGain;
+	}
+
+	/**
+	 * Moves the displayed range according to the range mode, and updates the histogram X axis.
+	 */
+	public void adaptRange(ThermalFrame frame) {
+		if (rangeMode == RangeMode.PERCENTILE) {
+			percentileGain.update(frame);
+			pixMin = percentileGain.getLow();
+			pixMax = percentileGain.getHigh();
+			updateHistogramX();
+		} else {
+			adaptRange();
+		}
+	}
+
+	/**
+	 * Moves the displayed range towards the last min/max, and updates the histogram X axis.
+	 */
+	public void adaptRange() {
+		if(max > pixMax) pixMax+= (max-pixMax)/4;
+		else pixMax -= (pixMax-max)/4;
+		if (min < pixMin) pixMin -= (pixMin-min)/4;
+		else pixMin += (min-pixMin)/4;
+		updateHistogramX();
+	}
+
+	private void updateHistogramX() {
+		// make X axis histogram values
+		double stepSize = (pixMax-pixMin)/histogramX.length;
+		for (int i = 0; i < histogramX.length; i++) {
+			histogramX[i] = pixMin+(stepSize*i);
+		}
+	}
+
+	/**
+	 * Histogram and projections over the current range.
+	 */
+	public void bin(ThermalFrame frame) {
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+
+		// init arrays
+		if( h!=bufferHeight || w!=bufferWidth) {
+			bufferHeight = h;
+			bufferWidth = w;
+			vertProjection = new double[histogramResolution][bufferWidth];
+			horProjection = new double[bufferHeight][histogramResolution];
+		}
+
+		// compute histogram and projections datasets
+		kernel.bin(frame, rawUsed, pixMin, pixMax, histogramY, horProjection, vertProjection);
+	}
+
+	/**
+	 * Hands the frame and the results to the sinks.
+	 */
+	public void publish(ThermalFrame frame) {
+		for (ResultSink sink : sinks) {
+			sink.result(frame, this);
+		}
+	}
+
+	public synchronized void addSink(ResultSink sink) {
+		ResultSink[] s = Arrays.copyOf(sinks, sinks.length+1);
+		s[s.length-1] = sink;
+		sinks = s;
+	}
+	public synchronized void removeSink(ResultSink sink) {
+		List<ResultSink> s = new ArrayList<>(Arrays.asList(sinks));
+		s.remove(sink);
+		sinks = s.toArray(new ResultSink[0]);
+	}
+
+	public double getPixMin() {
+		return pixMin;
+	}
+	public double getPixMax() {
+		return pixMax;
+	}
+	public double getMin() {
+		return min;
+	}
+	public double getMax() {
+		return max;
+	}
+	public double getMean() {
+		return mean;
+	}
+
+	public double[] getHistogramX() {
+		return histogramX;
+	}
+	public double[] getHistogramY() {
+		return histogramY;
+	}
+	public double[][] getHorProjection() {
+		return horProjection;
+	}
+	public double[][] getVertProjection() {
+		return vertProjection;
+	}
+
+}
@@ -0,0 +1,249 @@
+package jpurethermal;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A frame of raw radiometric values stored row by row in a single flat array.
+ * Raw values are unsigned 16 bits centi-Kelvin as sent by the Lepton. A float
+ * view of temperatures is derived on demand, by default in degrees Celsius or
+ * through a {@link Radiometry}, and kept until the raw values or the
+ * conversion table change.
+ * <p>
+ * The conversion is taken when the raw values or the conversion are set, and
+ * everything read from the frame comes from it: a change of the radiometry
+ * parameters applies from the next frame.
+ */
+public class ThermalFrame {
+	public static final double KELVIN_OFFSET = 27315.0;
+	public static final double CENTI = 0.01;
+	private static final Radiometry.Conversion CELSIUS = Radiometry.Conversion.linear(KELVIN_OFFSET, CENTI);
+	private static final FrameKernels KERNELS = FrameKernels.get();
+
+	private final int width, height, stride;
+	private final short[] raw;
+	private float[] temperatures;
+	private float[] temperaturesTable;
+	private float[] conversionTable;
+	private boolean temperaturesValid = false;
+	private Radiometry.Conversion linear = CELSIUS;
+	private Radiometry radiometry;
+	// conversion of the current raw values
+	private Radiometry.Conversion conversion = CELSIUS;
+	private long sequence = 0;
+	private long timestamp = 0;
+	private long captureNanos = 0;
+
+	public ThermalFrame(int width, int height) {
+		this(width, height, width);
+	}
+
+	/**
+	 * @param stride number of array elements between the start of two rows, at least width
+	 */
+	public ThermalFrame(int width, int height, int stride) {
+		if (stride < width) throw new IllegalArgumentException("stride "+stride+" < width "+width);
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.raw = new short[stride*height];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+	public int getHeight() {
+		return height;
+	}
+	public int getStride() {
+		return stride;
+	}
+	public int getPixelCount() {
+		return width*height;
+	}
+	public boolean hasSize(int width, int height) {
+		return this.width == width && this.height == height;
+	}
+
+	/**
+	 * Index in the raw and temperatures arrays of the pixel at column x, row y.
+	 */
+	public int index(int x, int y) {
+		return y*stride + x;
+	}
+
+	/**
+	 * The backing raw array. Call {@link #rawChanged()} after writing to it.
+	 */
+	public short[] getRaw() {
+		return raw;
+	}
+	public int getRaw(int x, int y) {
+		return Short.toUnsignedInt(raw[y*stride + x]);
+	}
+	public void setRaw(int x, int y, int value) {
+		raw[y*stride + x] = (short) value;
+		rawChanged();
+	}
+
+	/**
+	 * Copies a full frame from the buffer, from its current position.
+	 */
+	public void read(ShortBuffer sb) {
+		if (stride == width) {
+			sb.get(raw, 0, width*height);
+		} else {
+			for (int y = 0; y < height; y++) {
+				sb.get(raw, y*stride, width);
+			}
+		}
+		rawChanged();
+	}
+
+	/**
+	 * Invalidates the view, and takes the current conversion of the radiometry.
+	 */
+	public void rawChanged() {
+		temperaturesValid = false;
+		takeConversion();
+	}
+
+	private void takeConversion() {
+		Radiometry r = radiometry;
+		conversion = r != null ? r.getConversion() : linear;
+	}
+
+	/**
+	 * Sets a linear conversion for the derived view: (raw - offset) * scale.
+	 * Defaults to centi-Kelvin to degrees Celsius.
+	 */
+	public void setConversion(double offset, double scale) {
+		this.linear = Radiometry.Conversion.linear(offset, scale);
+		this.radiometry = null;
+		takeConversion();
+	}
+
+	/**
+	 * True if the derived view is (raw - offset) * scale with a positive
+	 * scale, set by {@link #setConversion(double, double)} or by a
+	 * {@link Radiometry.Conversion#isLinear() linear radiometry}. The order of
+	 * the raw values is then the order of the temperatures, and their sums
+	 * convert exactly.
+	 */
+	public boolean isLinear() {
+		return conversion.isLinear() && conversion.getScale() > 0;
+	}
+	/**
+	 * Offset of the linear conversion, see {@link #isLinear()}.
+	 */
+	public double getOffset() {
+		return conversion.getOffset();
+	}
+	/**
+	 * Scale of the linear conversion, see {@link #isLinear()}.
+	 */
+	public double getScale() {
+		return conversion.getScale();
+	}
+	/**
+	 * The conversion of the current raw values.
+	 */
+	public Radiometry.Conversion getConversion() {
+		return conversion;
+	}
+
+	/**
+	 * Uses the tables of the radiometry for the derived view, the current one
+	 * now, then the one current when the raw values change.
+	 */
+	public void setRadiometry(Radiometry radiometry) {
+		this.radiometry = radiometry;
+		takeConversion();
+	}
+	public Radiometry getRadiometry() {
+		return radiometry;
+	}
+
+	/**
+	 * The derived view, same layout as the raw array, computed if the raw values
+	 * or the conversion changed. One table load per pixel.
+	 */
+	public float[] getTemperatures() {
+		if (beginConversion()) {
+			convertRows(0, height);
+			endConversion();
+		}
+		return temperatures;
+	}
+
+	/**
+	 * Starts a derivation of the view split in bands of rows, converted by
+	 * {@link #convertRows(int, int)} possibly from other threads, then
+	 * {@link #endConversion()}.
+	 * @return false if the view is already derived
+	 */
+	public boolean beginConversion() {
+		float[] t = conversion.getTable();
+		if (temperatures == null) temperatures = new float[raw.length];
+		conversionTable = t;
+		return !temperaturesValid || t != temperaturesTable;
+	}
+	/**
+	 * Converts the rows [y0, y1[ with the table taken by {@link #beginConversion()}.
+	 */
+	public void convertRows(int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
+			KERNELS.lookup(raw, y*stride, y*stride+width, conversionTable, temperatures);
+		}
+	}
+	public void endConversion() {
+		temperaturesTable = conversionTable;
+		temperaturesValid = true;
+	}
+	/**
+	 * The array of the view, derived or not, for the rows converted by {@link #convertRows(int, int)}.
+	 */
+	float[] getTemperaturesArray() {
+		return temperatures;
+	}
+	public float getTemperature(int x, int y) {
+		return getTemperatures()[y*stride + x];
+	}
+	/**
+	 * Converts a raw value with the conversion of the frame.
+	 */
+	public float toTemperature(int raw) {
+		return conversion.toTemperature(raw);
+	}
+	/**
+	 * The table of the conversion, temperature by unsigned raw value.
+	 */
+	float[] getTable() {
+		return conversion.getTable();
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	/**
+	 * @return timestamp in nanoseconds, buffer PTS when captured from GStreamer
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+	/**
+	 * @return {@link System#nanoTime()} at the capture of the frame
+	 */
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+	public void setCaptureNanos(long captureNanos) {
+		this.captureNanos = captureNanos;
+	}
+
+}
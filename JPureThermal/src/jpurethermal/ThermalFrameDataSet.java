@@ -0,0 +1,61 @@
+package jpurethermal;
+
+import cern.jdve.data.DefaultDataSet3D;
+
+/**
+ * Image data set fed from a {@link ThermalFrame}. The frame is converted to
+ * doubles only here, for the jdve renderers.
+ */
+public class ThermalFrameDataSet extends DefaultDataSet3D {
+	private double[] horPixelScale = new double[0];
+	private double[] vertPixelScale = new double[0];
+	// the data set keeps a reference to the z array, so alternate between two
+	private double[][] zValues = new double[2][0];
+	private int current = 0;
+
+	public ThermalFrameDataSet(String name) {
+		super(name);
+	}
+
+	public void set(ThermalFrame frame) {
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		if (horPixelScale.length != width || vertPixelScale.length != height) {
+			horPixelScale = new double[width];
+			for(int i=0; i<horPixelScale.length; i++) horPixelScale[i] = i;
+			vertPixelScale = new double[height];
+			for(int i=0; i<vertPixelScale.length; i++) vertPixelScale[i] = i;
+			zValues = new double[2][width*height];
+		}
+
+		current ^= 1;
+		double[] z = zValues[current];
+		copy(frame, z);
+		set(horPixelScale, vertPixelScale, z, false, false);
+	}
+
+	/**
+	 * Copies the temperatures of the frame, row by row without stride, into z.
+	 */
+	public static void copy(ThermalFrame frame, double[] z) {
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		int stride = frame.getStride();
+		float[] temperatures = frame.getTemperatures();
+		for (int y = 0; y < height; y++) {
+			int src = y*stride;
+			int dst = y*width;
+			for (int x = 0; x < width; x++) {
+				z[dst+x] = temperatures[src+x];
+			}
+		}
+	}
+
+	public double[] getHorPixelScale() {
+		return horPixelScale;
+	}
+	public double[] getVertPixelScale() {
+		return vertPixelScale;
+	}
+
+}
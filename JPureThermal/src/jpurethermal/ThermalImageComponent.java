@@ -0,0 +1,128 @@
+package jpurethermal;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+
+/**
+ * Displays a thermal image by writing palette colours straight into the
+ * pixels of a reused {@link BufferedImage}, scaled to the component size
+ * keeping the aspect ratio. The palette is interpolated once into an int
+ * lookup table. Row 0 of the frame is at the bottom, like in the jdve
+ * contour chart and the projection charts.
+ */
+public class ThermalImageComponent extends JComponent implements ChartPublisher.SnapshotView {
+	/** Same stops as the image chart CustomPalette, from cold to hot */
+	public static final Color[] DEFAULT_PALETTE = new Color[] {Color.white, Color.black, Color.magenta.darker(), Color.red, Color.yellow, Color.white};
+	public static final int DEFAULT_LUT_SIZE = 1024;
+
+	private int[] lut = buildPaletteLut(DEFAULT_PALETTE, DEFAULT_LUT_SIZE);
+	private BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+	private int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	private boolean bilinear = false;
+
+	public ThermalImageComponent() {
+		setPreferredSize(new Dimension(320, 240));
+		setOpaque(true);
+		setBackground(Color.black);
+	}
+
+	/**
+	 * Interpolates linearly between equally spaced colour stops, like the
+	 * jdve CustomPalette.
+	 */
+	public static int[] buildPaletteLut(Color[] stops, int size) {
+		if (stops.length < 2) throw new IllegalArgumentException("need at least two colours");
+		int[] table = new int[size];
+		int nrange = stops.length-1;
+		for (int i = 0; i < size; i++) {
+			double ratio = (double) i / (size-1) * nrange;
+			int k = Math.min((int) ratio, nrange-1);
+			double f = ratio-k;
+			Color c0 = stops[k];
+			Color c1 = stops[k+1];
+			int r = (int) (c0.getRed() + (c1.getRed()-c0.getRed())*f);
+			int g = (int) (c0.getGreen() + (c1.getGreen()-c0.getGreen())*f);
+			int b = (int) (c0.getBlue() + (c1.getBlue()-c0.getBlue())*f);
+			table[i] = (r << 16) | (g << 8) | b;
+		}
+		return table;
+	}
+
+	public void setPalette(Color[] stops) {
+		lut = buildPaletteLut(stops, DEFAULT_LUT_SIZE);
+	}
+
+	/**
+	 * @param bilinear true for bilinear scaling, false for nearest neighbour
+	 */
+	public void setBilinear(boolean bilinear) {
+		this.bilinear = bilinear;
+		repaint();
+	}
+	public boolean isBilinear() {
+		return bilinear;
+	}
+
+	/**
+	 * Maps the values, row by row, to palette colours over [min, max], row y
+	 * of the values to row height-1-y of the image. Values out of the range
+	 * get the first or last colour.
+	 */
+	public void render(double[] values, int width, int height, double min, double max) {
+		if (image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
+		int[] table = lut;
+		int last = table.length-1;
+		double scale = max > min ? last/(max-min) : 0;
+		for (int y = 0; y < height; y++) {
+			int i = y*width;
+			int p = (height-1-y)*width;
+			for (int x = 0; x < width; x++) {
+				int k = (int) ((values[i+x]-min)*scale);
+				if (k < 0) k = 0;
+				else if (k > last) k = last;
+				pixels[p+x] = table[k];
+			}
+		}
+	}
+
+	@Override
+	public Component getComponent() {
+		return this;
+	}
+
+	@Override
+	public void display(AnalysisSnapshot snapshot) {
+		render(snapshot.getImage(), snapshot.getImageWidth(), snapshot.getImageHeight(), snapshot.getImageMin(), snapshot.getImageMax());
+		repaint();
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setColor(getBackground());
+		g2.fillRect(0, 0, getWidth(), getHeight());
+
+		double zoom = Math.min((double) getWidth()/image.getWidth(), (double) getHeight()/image.getHeight());
+		int w = (int) (image.getWidth()*zoom);
+		int h = (int) (image.getHeight()*zoom);
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, bilinear ?
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g2.drawImage(image, (getWidth()-w)/2, (getHeight()-h)/2, w, h, null);
+	}
+
+}
@@ -0,0 +1,80 @@
+package jpurethermal;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base of the sources producing their frames on their own thread, either at
+ * a fixed rate or as fast as the consumer takes them.
+ */
+public abstract class ThreadedFrameSource implements FrameSource {
+	private final double rate;
+	private final long maxFrames;
+	private volatile boolean running = false;
+	private Thread thread;
+
+	/**
+	 * @param rate frames per second, 0 for unthrottled
+	 * @param maxFrames number of frames to deliver, 0 for no limit
+	 */
+	protected ThreadedFrameSource(double rate, long maxFrames) {
+		this.rate = rate;
+		this.maxFrames = maxFrames;
+	}
+
+	@Override
+	public void start(Consumer consumer) {
+		running = true;
+		thread = new Thread(() -> run(consumer), getClass().getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run(Consumer consumer) {
+		long period = rate > 0 ? (long) (1e9/rate) : 0;
+		long next = System.nanoTime();
+		long n = 0;
+		try {
+			while (running && (maxFrames <= 0 || n < maxFrames)) {
+				if (!deliver(n, consumer)) break;
+				n++;
+				if (period > 0) {
+					next += period;
+					long wait = next-System.nanoTime();
+					if (wait > 0) LockSupport.parkNanos(this, wait);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			running = false;
+		}
+	}
+
+	/**
+	 * Gives frame n to the consumer. Called on the thread of the source.
+	 * @return false when there are no more frames
+	 */
+	protected abstract boolean deliver(long n, Consumer consumer) throws Exception;
+
+	@Override
+	public void stop() {
+		running = false;
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+}
@@ -0,0 +1,262 @@
+package jpurethermal;
+
+/**
+ * History of one line per frame for a waterfall display: a row or a column
+ * of the frames, or the hottest pixel of each row or of each column. The
+ * lines keep the raw values, before the temporal filter, in a fixed ring of
+ * unsigned shorts allocated once, and are converted to temperatures by the
+ * conversion of the last frame when displayed.
+ * <p>
+ * The default capacity of {@link #DEFAULT_CAPACITY} lines keeps two hours at
+ * the 8.7 frames/s of the Lepton, in about 21 MB for lines of 160 values.
+ * Filled on the analysis thread, read from any thread. Changing the mode,
+ * the position or the size of the frames clears the history.
+ */
+public class TimeScan implements ResultSink {
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	public enum Mode {
+		/** a row of the frames, width values */
+		ROW,
+		/** a column of the frames, height values */
+		COLUMN,
+		/** the hottest pixel of each row, height values */
+		ROW_MAX,
+		/** the hottest pixel of each column, width values */
+		COLUMN_MAX
+	}
+
+	private final int capacity;
+	private final FrameKernels kernels = FrameKernels.get();
+	private volatile Mode mode = Mode.ROW_MAX;
+	private volatile int position = -1;
+
+	// analysis thread side
+	private short[] line = new short[0];
+	private final int[] minMax = new int[2];
+	private int[] columnMax = new int[0];
+	private float[] columnHottest = new float[0];
+
+	// history ring, guarded by this
+	private Mode recordedMode;
+	private int recordedPosition;
+	private int length;
+	private short[] values = new short[0];
+	private long[] timestamps;
+	private long count;
+	private long generation;
+	private float[] table;
+
+	public TimeScan() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity lines kept, at least 1
+	 */
+	public TimeScan(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity "+capacity+" < 1");
+		this.capacity = capacity;
+		timestamps = new long[capacity];
+	}
+
+	/**
+	 * What is recorded from the next frame, can be changed while frames are processed.
+	 */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+	public Mode getMode() {
+		return mode;
+	}
+	/**
+	 * @param position row of {@link Mode#ROW} or column of {@link Mode#COLUMN},
+	 * -1 for the middle of the frame, clamped to the frame
+	 */
+	public void setPosition(int position) {
+		this.position = position;
+	}
+	public int getPosition() {
+		return position;
+	}
+
+	@Override
+	public void result(ThermalFrame frame, ThermalAnalyzer analyzer) {
+		Mode m = mode;
+		int w = frame.getWidth();
+		int h = frame.getHeight();
+		int p = -1;
+		int n = m == Mode.ROW || m == Mode.COLUMN_MAX ? w : h;
+		if (line.length != n) line = new short[n];
+		switch (m) {
+		case ROW:
+			p = clamp(position, h);
+			System.arraycopy(frame.getRaw(), frame.index(0, p), line, 0, w);
+			break;
+		case COLUMN:
+			p = clamp(position, w);
+			short[] raw = frame.getRaw();
+			for (int y = 0; y < h; y++) line[y] = raw[frame.index(p, y)];
+			break;
+		case ROW_MAX:
+			rowMax(frame);
+			break;
+		case COLUMN_MAX:
+			columnMax(frame);
+			break;
+		}
+		append(m, p, frame.getTimestamp(), frame.getTable());
+	}
+
+	private static int clamp(int position, int size) {
+		return position < 0 ? size/2 : Math.min(position, size-1);
+	}
+
+	/**
+	 * The raw value of the hottest pixel of each row, compared by the raw
+	 * values when the conversion keeps their order.
+	 */
+	private void rowMax(ThermalFrame frame) {
+		short[] raw = frame.getRaw();
+		int w = frame.getWidth();
+		float[] t = frame.isLinear() ? null : frame.getTable();
+		for (int y = 0; y < frame.getHeight(); y++) {
+			int rowStart = frame.index(0, y);
+			if (t == null) {
+				minMax[0] = 0xFFFF;
+				minMax[1] = 0;
+				for (int i = rowStart; i < rowStart+w; i += FrameKernels.MAX_RUN) {
+					kernels.minMaxSum(raw, i, Math.min(i+FrameKernels.MAX_RUN, rowStart+w), minMax);
+				}
+				line[y] = (short) minMax[1];
+			} else {
+				short hottest = raw[rowStart];
+				float max = t[hottest & 0xFFFF];
+				for (int i = rowStart+1; i < rowStart+w; i++) {
+					float v = t[raw[i] & 0xFFFF];
+					if (v > max) {
+						max = v;
+						hottest = raw[i];
+					}
+				}
+				line[y] = hottest;
+			}
+		}
+	}
+
+	private void columnMax(ThermalFrame frame) {
+		short[] raw = frame.getRaw();
+		int w = frame.getWidth();
+		float[] t = frame.isLinear() ? null : frame.getTable();
+		if (columnMax.length != w) {
+			columnMax = new int[w];
+			columnHottest = new float[w];
+		}
+		int first = frame.index(0, 0);
+		for (int x = 0; x < w; x++) {
+			columnMax[x] = raw[first+x] & 0xFFFF;
+			if (t != null) columnHottest[x] = t[columnMax[x]];
+		}
+		for (int y = 1; y < frame.getHeight(); y++) {
+			int rowStart = frame.index(0, y);
+			if (t == null) {
+				for (int x = 0; x < w; x++) {
+					columnMax[x] = Math.max(columnMax[x], raw[rowStart+x] & 0xFFFF);
+				}
+			} else {
+				for (int x = 0; x < w; x++) {
+					int r = raw[rowStart+x] & 0xFFFF;
+					float v = t[r];
+					if (v > columnHottest[x]) {
+						columnHottest[x] = v;
+						columnMax[x] = r;
+					}
+				}
+			}
+		}
+		for (int x = 0; x < w; x++) line[x] = (short) columnMax[x];
+	}
+
+	private synchronized void append(Mode m, int p, long timestamp, float[] table) {
+		int n = line.length;
+		if (m != recordedMode || p != recordedPosition || n != length) {
+			recordedMode = m;
+			recordedPosition = p;
+			length = n;
+			int size = Math.multiplyExact(capacity, n);
+			if (values.length != size) values = new short[size];
+			count = 0;
+			generation++;
+		}
+		int slot = (int) (count%capacity);
+		System.arraycopy(line, 0, values, slot*n, n);
+		timestamps[slot] = timestamp;
+		this.table = table;
+		count++;
+	}
+
+	/**
+	 * Copies a line into dest, its raw values as unsigned shorts.
+	 * @param generation the generation the line was counted in
+	 * @param line from 0 for the first line recorded since the history was cleared
+	 * @return false if the history was cleared since, or the line is not kept
+	 */
+	public synchronized boolean readLine(long generation, long line, short[] dest) {
+		if (generation != this.generation || line < count-capacity || line < 0 || line >= count) return false;
+		System.arraycopy(values, (int) (line%capacity)*length, dest, 0, length);
+		return true;
+	}
+
+	/**
+	 * Incremented each time the history is cleared.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+	/**
+	 * Lines recorded since the history was cleared, the last {@link #getCapacity()} of them kept.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+	/**
+	 * Values per line of the history, 0 before the first frame.
+	 */
+	public synchronized int getLength() {
+		return length;
+	}
+	/**
+	 * The mode the history was recorded in, null before the first frame.
+	 */
+	public synchronized Mode getRecordedMode() {
+		return recordedMode;
+	}
+	/**
+	 * Row or column the history was recorded from, -1 for the max modes.
+	 */
+	public synchronized int getRecordedPosition() {
+		return recordedPosition;
+	}
+	/**
+	 * @see ThermalFrame#getTimestamp()
+	 */
+	public synchronized long getTimestamp(long line) {
+		return timestamps[(int) (line%capacity)];
+	}
+	/**
+	 * Temperatures by unsigned raw value of the last frame, null before the first one.
+	 */
+	public synchronized float[] getTable() {
+		return table;
+	}
+	public int getCapacity() {
+		return capacity;
+	}
+	/**
+	 * Bytes of the history for lines of the given length.
+	 */
+	public long getHistoryBytes(int length) {
+		return (long) capacity*(2L*length+8);
+	}
+
+}
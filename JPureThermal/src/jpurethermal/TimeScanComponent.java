@@ -0,0 +1,141 @@
+package jpurethermal;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+
+/**
+ * Displays the last lines of a {@link TimeScan} as a waterfall, the newest
+ * line on top. The image is itself a ring of rows: each new line is coloured
+ * into the row of the oldest one, and the image is drawn in two parts from
+ * the row of the newest one, so nothing already drawn is moved or coloured
+ * again. Lines are coloured with the displayed range of the frame they are
+ * drawn with.
+ */
+public class TimeScanComponent extends JComponent implements ChartPublisher.SnapshotView {
+	public static final int DEFAULT_ROWS = 512;
+
+	private final TimeScan scan;
+	private final int rows;
+	private int[] lut = ThermalImageComponent.buildPaletteLut(ThermalImageComponent.DEFAULT_PALETTE, ThermalImageComponent.DEFAULT_LUT_SIZE);
+	private BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+	private int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	private short[] line = new short[0];
+	private long generation = -1;
+	// next line of the scan to draw
+	private long next = 0;
+
+	public TimeScanComponent(TimeScan scan) {
+		this(scan, DEFAULT_ROWS);
+	}
+
+	/**
+	 * @param rows lines shown, the image is rows high whatever the component size
+	 */
+	public TimeScanComponent(TimeScan scan, int rows) {
+		if (rows < 1) throw new IllegalArgumentException("rows "+rows+" < 1");
+		this.scan = scan;
+		this.rows = rows;
+		setPreferredSize(new Dimension(200, 200));
+		setOpaque(true);
+		setBackground(Color.black);
+	}
+
+	public void setPalette(Color[] stops) {
+		lut = ThermalImageComponent.buildPaletteLut(stops, ThermalImageComponent.DEFAULT_LUT_SIZE);
+	}
+
+	/**
+	 * Colours the lines recorded since the last call, at most the rows of the
+	 * image, over [min, max]. Starts again from an empty image when the
+	 * history of the scan was cleared.
+	 */
+	public void update(double min, double max) {
+		long g = scan.getGeneration();
+		int length = scan.getLength();
+		if (length == 0) return;
+		if (g != generation || length != image.getWidth()) {
+			image = new BufferedImage(length, rows, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			line = new short[length];
+			generation = g;
+			next = 0;
+		}
+		float[] table = scan.getTable();
+		int[] colours = lut;
+		int last = colours.length-1;
+		double scale = max > min ? last/(max-min) : 0;
+		long count = scan.getCount();
+		for (long n = Math.max(next, count-rows); n < count; n++) {
+			if (!scan.readLine(g, n, line)) {
+				// cleared meanwhile, started again at the next call
+				generation = -1;
+				return;
+			}
+			int row = (rows-1-(int) (n%rows))*length;
+			for (int x = 0; x < length; x++) {
+				int k = (int) ((table[line[x] & 0xFFFF]-min)*scale);
+				if (k < 0) k = 0;
+				else if (k > last) k = last;
+				pixels[row+x] = colours[k];
+			}
+		}
+		next = count;
+	}
+
+	@Override
+	public Component getComponent() {
+		return this;
+	}
+
+	@Override
+	public void display(AnalysisSnapshot snapshot) {
+		update(snapshot.getPixMin(), snapshot.getPixMax());
+		repaint();
+	}
+
+	public TimeScan getTimeScan() {
+		return scan;
+	}
+	public int getRows() {
+		return rows;
+	}
+	/**
+	 * The ring of rows, the newest line at {@link #getNewestRow()}.
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+	/**
+	 * Row of the image of the newest line, the older ones below it then from the top.
+	 */
+	public int getNewestRow() {
+		return next == 0 ? 0 : rows-1-(int) ((next-1)%rows);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g;
+		int w = getWidth();
+		int h = getHeight();
+		g2.setColor(getBackground());
+		g2.fillRect(0, 0, w, h);
+		if (next == 0) return;
+
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		int top = getNewestRow();
+		int iw = image.getWidth();
+		// the rows from the newest one down, then the older ones from the top
+		int split = (int) ((long) (rows-top)*h/rows);
+		g2.drawImage(image, 0, 0, w, split, 0, top, iw, rows, null);
+		if (top > 0) g2.drawImage(image, 0, split, w, h, 0, 0, iw, top, null);
+	}
+
+}
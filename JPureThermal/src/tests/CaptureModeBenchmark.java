@@ -0,0 +1,124 @@
+package tests;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import org.freedesktop.gstreamer.ElementFactory;
+import org.freedesktop.gstreamer.Gst;
+import org.freedesktop.gstreamer.Version;
+
+import jpurethermal.FrameSource;
+import jpurethermal.GstFrameSource;
+import utils.Utils;
+
+/**
+ * Compares the two capture modes of the {@link GstFrameSource}, signal
+ * callbacks and pulling thread, on a videotestsrc: process CPU time per
+ * frame, and latency from the presentation timestamp of a live source to
+ * the delivery of the frame. A last run with a non live source gives the
+ * highest rate of each mode.
+ * <p>
+ * Needs the videotestsrc and appsink elements of gst-plugins-base, checked
+ * before running. Arguments: frame size and live frame rate, like 160x120 1000.
+ */
+public class CaptureModeBenchmark {
+	private static final long RUN_MS = 5_000;
+	private static final int MAX_SAMPLES = 1 << 20;
+
+	private static final com.sun.management.OperatingSystemMXBean os =
+			(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+	private static class MeasuringConsumer implements FrameSource.Consumer {
+		private final GstFrameSource source;
+		private final short[] copy;
+		private final long[] latencies = new long[MAX_SAMPLES];
+		private int count = 0;
+		private long frames = 0;
+
+		MeasuringConsumer(GstFrameSource source, int width, int height) {
+			this.source = source;
+			copy = new short[width*height];
+		}
+
+		@Override
+		public void frame(ShortBuffer sb, int width, int height, long timestamp, long captureNanos) {
+			// what the frame ring does
+			sb.get(copy, 0, Math.min(copy.length, sb.remaining()));
+			long now = source.getRunningTime();
+			if (now >= 0 && count < latencies.length) latencies[count++] = now-timestamp;
+			frames++;
+		}
+
+		long percentile(long[] sorted, double p) {
+			return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length-1, p*sorted.length)];
+		}
+
+		void print(String label, double seconds, long cpuNanos, boolean latency) {
+			StringBuilder line = new StringBuilder(String.format("  %-9s %8.1f frames/s %8.1f us CPU/frame",
+					label, frames/seconds, frames == 0 ? 0 : cpuNanos/1000.0/frames));
+			if (latency) {
+				long[] sorted = Arrays.copyOf(latencies, count);
+				Arrays.sort(sorted);
+				line.append(String.format("   latency p50 %6.1f us  p99 %7.1f us  max %7.1f us",
+						percentile(sorted, 0.5)/1000.0, percentile(sorted, 0.99)/1000.0, percentile(sorted, 1)/1000.0));
+			}
+			System.out.println(line);
+		}
+	}
+
+	private static void run(GstFrameSource.CaptureMode mode, int width, int height, int fps) throws InterruptedException {
+		GstFrameSource source = GstFrameSource.videoTest(width, height, fps);
+		source.setCaptureMode(mode);
+		MeasuringConsumer consumer = new MeasuringConsumer(source, width, height);
+		long cpuStart = os.getProcessCpuTime();
+		long start = System.nanoTime();
+		source.start(consumer);
+		Thread.sleep(RUN_MS);
+		source.stop();
+		double seconds = (System.nanoTime()-start)/1e9;
+		long cpu = os.getProcessCpuTime()-cpuStart;
+		consumer.print(mode.name().toLowerCase(), seconds, cpu, fps > 0);
+	}
+
+	/**
+	 * @return the names of the elements not installed
+	 */
+	private static String missingElements(String... names) {
+		StringBuilder missing = new StringBuilder();
+		for (String name : names) {
+			try {
+				ElementFactory.find(name);
+			} catch (IllegalArgumentException e) {
+				missing.append(missing.length() > 0 ? ", " : "").append(name);
+			}
+		}
+		return missing.toString();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Utils.configurePaths();
+		args = Gst.init(Version.BASELINE, "CaptureModeBenchmark", args);
+		String missing = missingElements("videotestsrc", "appsink");
+		if (!missing.isEmpty()) {
+			System.err.println("GStreamer elements not installed: "+missing+", from gst-plugins-base");
+			System.exit(1);
+		}
+		String[] wh = (args.length > 0 ? args[0] : "160x120").split("x");
+		int width = Integer.parseInt(wh[0]);
+		int height = Integer.parseInt(wh[1]);
+		int fps = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		// warm up
+		run(GstFrameSource.CaptureMode.CALLBACK, width, height, fps);
+		run(GstFrameSource.CaptureMode.PULL, width, height, fps);
+
+		System.out.println(width+"x"+height+", live videotestsrc at "+fps+" fps");
+		run(GstFrameSource.CaptureMode.CALLBACK, width, height, fps);
+		run(GstFrameSource.CaptureMode.PULL, width, height, fps);
+		System.out.println(width+"x"+height+", videotestsrc unthrottled");
+		run(GstFrameSource.CaptureMode.CALLBACK, width, height, 0);
+		run(GstFrameSource.CaptureMode.PULL, width, height, 0);
+	}
+
+}
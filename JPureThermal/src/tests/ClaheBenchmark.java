@@ -0,0 +1,58 @@
+package tests;
+
+import jpurethermal.ClaheEqualizer;
+import jpurethermal.HeadlessPureThermal;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Time and allocation per frame of the {@link ClaheEqualizer} for output
+ * buffers 1, 2 and 4 times the frame size, on the calling thread only and
+ * with the common fork/join pool, with the time of each phase of the last
+ * frame and the margin to the period of the sensor.
+ */
+public class ClaheBenchmark {
+	// up to 640x480, the output of larger sensors upscaled 4 times would not fit the default heap
+	private static final String[] DEFAULT_SIZES = {"160x120", "320x240", "640x480"};
+	private static final int[] SCALES = {1, 2, 4};
+
+	private final int width, height;
+	private final ThermalFrame[] frames;
+
+	public ClaheBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		frames = Measurement.frames(new SyntheticScene(width, height), 1);
+	}
+
+	private void measure(int scale, int parallelism) {
+		ClaheEqualizer clahe = new ClaheEqualizer();
+		clahe.setParallelism(parallelism);
+		int ow = width*scale, oh = height*scale;
+		double[] out = new double[ow*oh];
+		Measurement m = Measurement.of(n -> clahe.equalize(Measurement.cycle(frames, n), out, ow, oh));
+		// per output pixel
+		System.out.println(String.format("  x%d %4dx%-4d %2d chunks %s (range %6.1f, tiles %6.1f, interpolation %7.1f us)"
+				+ " %5.0fx the sensor rate",
+				scale, ow, oh, parallelism, m.perFrame(ow*oh), clahe.getRangeNanos()/1000.0, clahe.getTilesNanos()/1000.0,
+				clahe.getInterpolateNanos()/1000.0, m.getRate()/HeadlessPureThermal.SENSOR_RATE));
+	}
+
+	private void run() {
+		System.out.println(width+"x"+height);
+		int parallel = new ClaheEqualizer().getParallelism();
+		for (int scale : SCALES) {
+			measure(scale, 1);
+			if (parallel > 1) measure(scale, parallel);
+		}
+	}
+
+	public static void main(String[] args) {
+		System.out.println(Runtime.getRuntime().availableProcessors()+" processors");
+		Measurement.run(args, DEFAULT_SIZES, (w, h) -> {
+			new ClaheBenchmark(w, h).run();
+			return 0;
+		});
+	}
+
+}
@@ -0,0 +1,120 @@
+package tests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import jpurethermal.FrameDecoder;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Encodes synthetic frames in each supported format, rows padded to the
+ * default stride, and checks that the {@link FrameDecoder} gives back the
+ * values from buffers in both byte orders, leaving their order and position
+ * unchanged. Then measures the time and allocation per frame of decoding
+ * into the flat frame of the decoder and into a {@link ThermalFrame}.
+ * <p>
+ * An odd width exercises the padding of the rows.
+ */
+public class FrameDecoderBenchmark {
+	private static final String[] DEFAULT_SIZES = {"160x120", "161x120", "640x480"};
+	private static final String[] FORMATS = {
+			FrameDecoder.GRAY16_LE, FrameDecoder.GRAY16_BE, FrameDecoder.GRAY8, FrameDecoder.YUY2, FrameDecoder.NV12};
+
+	private final int width, height;
+	private final short[] values;
+	private int errors;
+
+	public FrameDecoderBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		values = new short[width*height];
+		new SyntheticScene(width, height).render(0, values, 0, width);
+	}
+
+	/**
+	 * The values of the frame, 8 bits for the luma formats, in a direct
+	 * buffer as mapped from GStreamer.
+	 */
+	private ByteBuffer encode(FrameDecoder decoder) {
+		String format = decoder.getFormat();
+		int stride = decoder.getStride();
+		boolean nv12 = format.equals(FrameDecoder.NV12);
+		// the UV plane of NV12, half the rows
+		int size = stride*height+(nv12 ? stride*((height+1)/2) : 0);
+		ByteBuffer bb = ByteBuffer.allocateDirect(size);
+		for (int y = 0; y < height; y++) {
+			int row = y*stride;
+			for (int x = 0; x < width; x++) {
+				int v = values[y*width+x] & 0xFFFF;
+				switch (format) {
+				case FrameDecoder.GRAY16_LE:
+					bb.put(row+2*x, (byte) v);
+					bb.put(row+2*x+1, (byte) (v >> 8));
+					break;
+				case FrameDecoder.GRAY16_BE:
+					bb.put(row+2*x, (byte) (v >> 8));
+					bb.put(row+2*x+1, (byte) v);
+					break;
+				case FrameDecoder.YUY2:
+					bb.put(row+2*x, (byte) (v >> 8));
+					bb.put(row+2*x+1, (byte) 0x80);
+					break;
+				default:
+					bb.put(row+x, (byte) (v >> 8));
+				}
+			}
+		}
+		for (int i = stride*height; i < size; i++) bb.put(i, (byte) 0x80);
+		return bb;
+	}
+
+	private int expected(String format, int i) {
+		int v = values[i] & 0xFFFF;
+		return format.startsWith("GRAY16") ? v : v >> 8;
+	}
+
+	private void check(FrameDecoder decoder, ByteBuffer bb) {
+		String format = decoder.getFormat();
+		ThermalFrame frame = new ThermalFrame(width, height);
+		for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+			bb.order(order);
+			ShortBuffer sb = decoder.decode(bb);
+			decoder.decode(bb, frame.getRaw(), 0, frame.getStride());
+			int bad = 0;
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int e = expected(format, y*width+x);
+					if ((sb.get(y*width+x) & 0xFFFF) != e || (frame.getRaw()[frame.index(x, y)] & 0xFFFF) != e) bad++;
+				}
+			}
+			if (bb.order() != order || bb.position() != 0) {
+				System.out.println("  "+format+": buffer changed to "+bb.order()+" position "+bb.position());
+				bad++;
+			}
+			if (bad > 0) System.out.println("  "+format+" from "+order+": "+bad+" WRONG VALUES");
+			errors += bad;
+		}
+		// as mapped from GStreamer, in the native order
+		bb.order(ByteOrder.nativeOrder());
+	}
+
+	private int run() {
+		System.out.println(width+"x"+height);
+		ThermalFrame frame = new ThermalFrame(width, height);
+		for (String format : FORMATS) {
+			FrameDecoder decoder = FrameDecoder.forFormat(format, width, height);
+			ByteBuffer bb = encode(decoder);
+			check(decoder, bb);
+			Measurement.of(n -> decoder.decode(bb)).print(format+", flat frame", width*height);
+			Measurement.of(n -> decoder.decode(bb, frame.getRaw(), 0, frame.getStride())).print(format+", thermal frame", width*height);
+		}
+		return errors;
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, DEFAULT_SIZES, (w, h) -> new FrameDecoderBenchmark(w, h).run());
+	}
+
+}
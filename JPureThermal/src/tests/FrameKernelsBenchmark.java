@@ -0,0 +1,133 @@
+package tests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jpurethermal.FrameKernels;
+import jpurethermal.Radiometry;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Checks that the vector {@link FrameKernels} give the same results as the
+ * scalar ones, on rows of every length and offset with random and extreme
+ * values, then compares their time per pixel over the rows of synthetic
+ * frames. Without the vector kernels only the scalar ones are timed.
+ * <p>
+ * Run with --add-modules jdk.incubator.vector, and -XX:UseAVX=2 or
+ * -XX:UseAVX=0 on an x86 with AVX-512 to compare AVX2 and SSE.
+ */
+public class FrameKernelsBenchmark {
+	private static final String[] DEFAULT_SIZES = {"160x120", "640x480", "1280x960"};
+	private static final float[] TABLE = Radiometry.linearTable(ThermalFrame.KELVIN_OFFSET, ThermalFrame.CENTI);
+
+	private interface Kernel {
+		void row(FrameKernels kernels, short[] raw, float[] t, int from, int to);
+	}
+
+	private final int width, height;
+	private final short[][] raws = new short[Measurement.SCENE_FRAMES][];
+	private final float[][] temperatures = new float[Measurement.SCENE_FRAMES][];
+	private final float[] out;
+	private final int[] minMax = new int[2];
+	private float threshold;
+	private long sink;
+
+	public FrameKernelsBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		ThermalFrame[] frames = Measurement.frames(new SyntheticScene(width, height), 1);
+		for (int i = 0; i < frames.length; i++) {
+			raws[i] = frames[i].getRaw();
+			temperatures[i] = frames[i].getTemperatures().clone();
+			float max = -Float.MAX_VALUE;
+			for (float v : temperatures[i]) max = Math.max(max, v);
+			// the hot spot only, like the relative threshold of the hotspots
+			threshold = max-2;
+		}
+		out = new float[width*height];
+	}
+
+	private static int check(FrameKernels scalar, FrameKernels vector) {
+		Random random = new Random(42);
+		int errors = 0;
+		short[] raw = new short[300];
+		float[] t = new float[300];
+		float[] expected = new float[300], actual = new float[300];
+		for (int round = 0; round < 200; round++) {
+			for (int i = 0; i < raw.length; i++) {
+				int kind = random.nextInt(8);
+				raw[i] = (short) (kind == 0 ? 0 : kind == 1 ? 0xFFFF : random.nextInt(65536));
+				t[i] = kind == 2 ? Float.NaN : (random.nextFloat()-0.5f)*100;
+			}
+			float threshold = (random.nextFloat()-0.5f)*110;
+			for (int from = 0; from < 40; from++) {
+				for (int to = from; to < raw.length; to += 1+random.nextInt(20)) {
+					int[] a = {0xFFFF, 0}, b = {0xFFFF, 0};
+					if (scalar.minMaxSum(raw, from, to, a) != vector.minMaxSum(raw, from, to, b) || !Arrays.equals(a, b)) errors++;
+					Arrays.fill(expected, 0);
+					Arrays.fill(actual, 0);
+					scalar.lookup(raw, from, to, TABLE, expected);
+					vector.lookup(raw, from, to, TABLE, actual);
+					if (!Arrays.equals(expected, actual)) errors++;
+					if (scalar.firstAtLeast(t, from, to, threshold) != vector.firstAtLeast(t, from, to, threshold)) errors++;
+				}
+			}
+		}
+		// longest run, the sum close to 2^31
+		short[] full = new short[FrameKernels.MAX_RUN];
+		Arrays.fill(full, (short) 0xFFFF);
+		full[17] = 0;
+		int[] a = {0xFFFF, 0}, b = {0xFFFF, 0};
+		if (scalar.minMaxSum(full, 0, full.length, a) != vector.minMaxSum(full, 0, full.length, b) || !Arrays.equals(a, b)) errors++;
+		return errors;
+	}
+
+	private double nsPerPixel(FrameKernels kernels, Kernel kernel) {
+		return Measurement.of(n -> frame(kernels, kernel, (int) (n%raws.length))).getNanosPerPixel(width*height);
+	}
+
+	private void frame(FrameKernels kernels, Kernel kernel, int f) {
+		short[] raw = raws[f];
+		float[] t = temperatures[f];
+		for (int y = 0; y < height; y++) {
+			kernel.row(kernels, raw, t, y*width, y*width+width);
+		}
+	}
+
+	private void run(FrameKernels scalar, FrameKernels vector) {
+		System.out.println(width+"x"+height);
+		Kernel lookup = (k, raw, t, from, to) -> k.lookup(raw, from, to, TABLE, out);
+		Kernel minMaxSum = (k, raw, t, from, to) -> sink += k.minMaxSum(raw, from, to, minMax);
+		Kernel threshold = (k, raw, t, from, to) -> {
+			// every pixel above, as the hotspot labeling
+			for (int i = k.firstAtLeast(t, from, to, this.threshold); i < to; i = k.firstAtLeast(t, i+1, to, this.threshold)) sink++;
+		};
+		String[] names = {"lookup", "min/max/sum", "threshold"};
+		Kernel[] kernels = {lookup, minMaxSum, threshold};
+		for (int i = 0; i < kernels.length; i++) {
+			double s = nsPerPixel(scalar, kernels[i]);
+			if (vector == null) {
+				System.out.println(String.format("  %-12s scalar %6.3f ns/pixel", names[i], s));
+			} else {
+				double v = nsPerPixel(vector, kernels[i]);
+				System.out.println(String.format("  %-12s scalar %6.3f ns/pixel, vector %6.3f ns/pixel, %5.2fx", names[i], s, v, s/v));
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		FrameKernels scalar = FrameKernels.scalar();
+		FrameKernels vector = FrameKernels.vector();
+		System.out.println("Kernels: "+FrameKernels.get()+(vector == null ? ", vector kernels not available" : ""));
+		if (vector != null) {
+			int errors = check(scalar, vector);
+			System.out.println(errors == 0 ? "same results as the scalar kernels" : errors+" ERRORS");
+			if (errors > 0) System.exit(1);
+		}
+		for (int[] size : Measurement.sizes(args, DEFAULT_SIZES)) {
+			new FrameKernelsBenchmark(size[0], size[1]).run(scalar, vector);
+		}
+	}
+
+}
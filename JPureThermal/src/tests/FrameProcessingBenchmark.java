@@ -0,0 +1,180 @@
+package tests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import cern.jdve.data.DefaultDataSet;
+import cern.jdve.data.DefaultDataSet3D;
+import jpurethermal.AnalysisSnapshot;
+import jpurethermal.ChartPublisher;
+import jpurethermal.PureThermalAppSinkListener;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalAnalyzer;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Time and allocation per frame of each stage of the processing done for a
+ * GRAY16_LE frame, without GStreamer nor Swing: copy of the buffer, conversion
+ * to temperatures, temporal filter (none by default), min/max, histogram and projections, snapshot publication
+ * and update of the jdve data sets.
+ * <p>
+ * Runs headless. Allocations are the bytes allocated by the benchmark
+ * thread, as counted by the JVM.
+ */
+public class FrameProcessingBenchmark {
+	private static final long WARMUP_NS = 2_000_000_000L;
+	private static final long MEASURE_NS = 3_000_000_000L;
+
+	private enum Stage {
+		COPY("buffer copy"), CONVERSION("conversion"), FILTER("temporal filter"), MIN_MAX("min/max"), RANGE("range"),
+		BINNING("histogram+proj."), PUBLICATION("publication"), DATA_SETS("data sets");
+
+		final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+	}
+
+	private final int width, height;
+	private final ByteBuffer[] buffers = new ByteBuffer[Measurement.SCENE_FRAMES];
+	private final ThermalFrame frame;
+	private final ThermalAnalyzer analyzer = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+	private final AnalysisSnapshot snapshot = new AnalysisSnapshot();
+	private final DefaultDataSet histogramDataSet = new DefaultDataSet("Histogram", new double[] {0,1}, new double[] {0,1});
+	private final DefaultDataSet3D imageDataSet = new DefaultDataSet3D("Image");
+	private final DefaultDataSet3D horizontalProjectionDataSet = new DefaultDataSet3D("Horizontal Projection");
+	private final DefaultDataSet3D verticalProjectionDataSet = new DefaultDataSet3D("Vertical Projection");
+
+	private final long[] nanos = new long[Stage.values().length];
+	private final long[] bytes = new long[Stage.values().length];
+	private long frames;
+	private long stageStartNanos, stageStartBytes;
+
+	public FrameProcessingBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		frame = new ThermalFrame(width, height);
+		analyzer.addSink(new ChartPublisher());
+		SyntheticScene scene = new SyntheticScene(width, height);
+		short[] scratch = new short[width*height];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = ByteBuffer.allocateDirect(width*height*2).order(ByteOrder.LITTLE_ENDIAN);
+			scene.renderGray16LE(i*10, scratch, buffers[i]);
+		}
+	}
+
+	private void begin() {
+		stageStartBytes = Measurement.allocatedBytes();
+		stageStartNanos = System.nanoTime();
+	}
+
+	private void end(Stage stage) {
+		long now = System.nanoTime();
+		nanos[stage.ordinal()] += now-stageStartNanos;
+		bytes[stage.ordinal()] += Measurement.allocatedBytes()-stageStartBytes;
+	}
+
+	private void processFrame(long n) {
+		begin();
+		ByteBuffer bb = buffers[(int) (n%buffers.length)];
+		bb.rewind();
+		ShortBuffer sb = bb.asShortBuffer();
+		frame.read(sb);
+		frame.setSequence(n);
+		end(Stage.COPY);
+
+		begin();
+		frame.getTemperatures();
+		end(Stage.CONVERSION);
+
+		begin();
+		analyzer.filter(frame);
+		end(Stage.FILTER);
+
+		begin();
+		analyzer.findMinMax(frame);
+		end(Stage.MIN_MAX);
+
+		begin();
+		analyzer.adaptRange(frame);
+		end(Stage.RANGE);
+
+		begin();
+		analyzer.bin(frame);
+		end(Stage.BINNING);
+
+		begin();
+		analyzer.publish(frame);
+		end(Stage.PUBLICATION);
+
+		// what the EDT does with the newest snapshot, for every chart
+		snapshot.fill(frame, analyzer.getPixMin(), analyzer.getPixMax(), analyzer.getHistogramX(), analyzer.getHistogramY(),
+				analyzer.getHorProjection(), analyzer.getVertProjection());
+		begin();
+		imageDataSet.set(snapshot.getImageXScale(), snapshot.getImageYScale(), snapshot.getImage(), false, false);
+		histogramDataSet.set(snapshot.getHistogramX(), snapshot.getHistogramY());
+		horizontalProjectionDataSet.set(snapshot.getHistogramX(), snapshot.getVertPixelScale(), snapshot.getHorProjection(), false, false);
+		verticalProjectionDataSet.set(snapshot.getHorPixelScale(), snapshot.getHistogramX(), snapshot.getVertProjection(), false, false);
+		end(Stage.DATA_SETS);
+	}
+
+	private void run(long durationNs) {
+		Arrays.fill(nanos, 0);
+		Arrays.fill(bytes, 0);
+		frames = 0;
+		long stop = System.nanoTime()+durationNs;
+		while (System.nanoTime() < stop) {
+			for (int i = 0; i < 16; i++) processFrame(frames++);
+		}
+	}
+
+	/**
+	 * Cost of one begin/end pair alone, taken off each stage.
+	 */
+	private static long[] measurementOverhead() {
+		FrameProcessingBenchmark empty = new FrameProcessingBenchmark(1, 1);
+		int count = 100_000;
+		for (int i = 0; i < count; i++) {
+			empty.begin();
+			empty.end(Stage.COPY);
+		}
+		empty.nanos[0] = 0;
+		empty.bytes[0] = 0;
+		for (int i = 0; i < count; i++) {
+			empty.begin();
+			empty.end(Stage.COPY);
+		}
+		return new long[] {empty.nanos[0]/count, empty.bytes[0]/count};
+	}
+
+	private void print(long[] overhead) {
+		double totalUs = 0;
+		double totalBytes = 0;
+		System.out.println(String.format("%dx%d, %d frames", width, height, frames));
+		for (Stage stage : Stage.values()) {
+			double us = Math.max(0, nanos[stage.ordinal()]/(double) frames-overhead[0])/1000.0;
+			double b = Math.max(0, bytes[stage.ordinal()]/(double) frames-overhead[1]);
+			totalUs += us;
+			totalBytes += b;
+			System.out.println(String.format("  %-16s %10.2f us/frame %12.0f B/frame", stage.label, us, b));
+		}
+		System.out.println(String.format("  %-16s %10.2f us/frame %12.0f B/frame, %.0f frames/s",
+				"total", totalUs, totalBytes, 1e6/totalUs));
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		long[] overhead = measurementOverhead();
+
+		for (int[] size : Measurement.sizes(args, Measurement.SIZES)) {
+			FrameProcessingBenchmark bench = new FrameProcessingBenchmark(size[0], size[1]);
+			bench.run(WARMUP_NS);
+			bench.run(MEASURE_NS);
+			bench.print(overhead);
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package tests;
+
+import java.util.Arrays;
+
+import jpurethermal.FusedFrameKernel;
+import jpurethermal.HistogramBinner;
+import jpurethermal.PureThermalAppSinkListener;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Checks that the {@link FusedFrameKernel} gives the same min, max,
+ * histogram and projections as the separate passes of the conversion, the
+ * min/max and the {@link HistogramBinner}, from the raw values and from the
+ * temperatures and for 1 to 4 bands. Then compares the time and allocation
+ * per frame of the separate passes with the fused sweeps on the calling
+ * thread and split in bands, up to frames large enough to be split.
+ */
+public class FusedKernelBenchmark {
+	private static final String[] DEFAULT_SIZES = {"160x120", "640x480", "1280x960", "2560x1920"};
+	private static final int BINS = PureThermalAppSinkListener.HISTOGRAM_RESOLUTION;
+
+	private final int width, height;
+	private final ThermalFrame[] frames;
+	private final HistogramBinner binner = new HistogramBinner(BINS);
+	private final double[] histogramY = new double[BINS];
+	private final double[][] horProjection, vertProjection;
+	private final double[] expectedHistogram = new double[BINS];
+	private final double[][] expectedHor, expectedVert;
+	private double min, max;
+	private int errors;
+
+	public FusedKernelBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		frames = Measurement.frames(new SyntheticScene(width, height), 10);
+		horProjection = new double[height][BINS];
+		vertProjection = new double[BINS][width];
+		expectedHor = new double[height][BINS];
+		expectedVert = new double[BINS][width];
+	}
+
+	/**
+	 * The separate passes, the range of the bins inside the range of the frame.
+	 */
+	private void separate(ThermalFrame frame) {
+		float[] t = frame.getTemperatures();
+		min = Double.MAX_VALUE;
+		max = -Double.MAX_VALUE;
+		for (int y = 0; y < height; y++) {
+			int rowStart = frame.index(0, y);
+			for (int i = rowStart; i < rowStart+width; i++) {
+				float v = t[i];
+				if (v > max) max = v;
+				if (v < min) min = v;
+			}
+		}
+		binner.bin(frame, low(min, max), high(min, max), expectedHistogram, expectedHor, expectedVert);
+	}
+
+	private void fused(FusedFrameKernel kernel, ThermalFrame frame, boolean raw) {
+		kernel.range(frame, raw);
+		double min = kernel.getMin(), max = kernel.getMax();
+		kernel.bin(frame, raw, low(min, max), high(min, max), histogramY, horProjection, vertProjection);
+	}
+
+	private static double low(double min, double max) {
+		return min+(max-min)*0.1;
+	}
+	private static double high(double min, double max) {
+		return max-(max-min)*0.2;
+	}
+
+	private void check() {
+		for (boolean raw : new boolean[] {true, false}) {
+			for (int bands = 1; bands <= 4; bands++) {
+				FusedFrameKernel kernel = new FusedFrameKernel(binner);
+				kernel.setParallelism(bands);
+				kernel.setParallelThreshold(0);
+				for (ThermalFrame frame : frames) {
+					separate(frame);
+					// derived again by the kernel
+					frame.rawChanged();
+					fused(kernel, frame, raw);
+					if (kernel.getMin() != min || kernel.getMax() != max
+							|| !Arrays.equals(histogramY, expectedHistogram)
+							|| !Arrays.deepEquals(horProjection, expectedHor)
+							|| !Arrays.deepEquals(vertProjection, expectedVert)) {
+						if (errors++ < 10) System.out.println("  different results "+(raw ? "raw" : "temperatures")+" "+bands+" bands");
+					}
+				}
+			}
+		}
+		System.out.println(errors == 0 ? "  same results for 1 to 4 bands" : "  "+errors+" ERRORS");
+	}
+
+	private void measure(String name, java.util.function.Consumer<ThermalFrame> run) {
+		// converted again each frame, as a new frame from the camera
+		Measurement.of(n -> Measurement.cycle(frames, n).rawChanged(), n -> run.accept(Measurement.cycle(frames, n)))
+				.print(name, width*height);
+	}
+
+	private int run() {
+		System.out.println(width+"x"+height);
+		check();
+		measure("separate passes", this::separate);
+		int parallel = new FusedFrameKernel(binner).getParallelism();
+		for (boolean raw : new boolean[] {false, true}) {
+			FusedFrameKernel sequential = new FusedFrameKernel(binner);
+			sequential.setParallelism(1);
+			measure("fused, "+(raw ? "raw" : "temperatures")+", 1 band", f -> fused(sequential, f, raw));
+			if (parallel > 1) {
+				FusedFrameKernel bands = new FusedFrameKernel(binner);
+				bands.setParallelThreshold(0);
+				measure("fused, "+(raw ? "raw" : "temperatures")+", "+parallel+" bands", f -> fused(bands, f, raw));
+			}
+		}
+		return errors;
+	}
+
+	public static void main(String[] args) {
+		System.out.println(Runtime.getRuntime().availableProcessors()+" processors");
+		Measurement.run(args, DEFAULT_SIZES, (w, h) -> new FusedKernelBenchmark(w, h).run());
+	}
+
+}
@@ -51,13 +51,17 @@ import org.freedesktop.gstreamer.Caps;
 import org.freedesktop.gstreamer.Element;
 import org.freedesktop.gstreamer.FlowReturn;
 import org.freedesktop.gstreamer.Sample;
-import org.freedesktop.gstreamer.Structure;
 import org.freedesktop.gstreamer.elements.AppSink;
 
 import cern.jdve.data.DataSet;
 import cern.jdve.data.DataSet3D;
 import cern.jdve.data.DefaultDataSet;
 import cern.jdve.data.DefaultDataSet3D;
+import jpurethermal.FrameDecoder;
+import jpurethermal.FrameDecoderCache;
+import jpurethermal.HistogramBinner;
+import jpurethermal.ThermalFrame;
+import jpurethermal.ThermalFrameDataSet;
 
 /**
  * A Swing component for displaying video from a GStreamer pipeline.
@@ -70,7 +74,7 @@ public class GstVideoComponentTest {
 
 	private int bufferWidth, bufferHeight, pixCount;
 	private DefaultDataSet histogramDataSet = new DefaultDataSet("Histogram", new double[] {0,1}, new double[] {0,1});
-	private DefaultDataSet3D imageDataSet = new DefaultDataSet3D("Image");
+	private ThermalFrameDataSet imageDataSet = new ThermalFrameDataSet("Image");
 	private DefaultDataSet3D horizontalProjectionDataSet = new DefaultDataSet3D("Horizontal Projection");
 	private DefaultDataSet3D verticalProjectionDataSet = new DefaultDataSet3D("Vertical Projection");
 	private double pixMin = 0;
@@ -108,7 +112,7 @@ public class GstVideoComponentTest {
 	public DefaultDataSet getHistogramDataSet() {
 		return histogramDataSet;
 	}
-	public DefaultDataSet3D getImageDataSet() {
+	public ThermalFrameDataSet getImageDataSet() {
 		return imageDataSet;
 	}
 	public DefaultDataSet3D gethorizontalProjectionDataSet() {
@@ -124,7 +128,10 @@ public class GstVideoComponentTest {
 		private int fps = 0;
 		private double[] histogramX = new double[HISTOGRAM_RESOLUTION];
 		private double[] histogramY = new double[HISTOGRAM_RESOLUTION];
-		private double[][] image = new double[8][8];
+		private ThermalFrame frame = new ThermalFrame(8, 8);
+		private final FrameDecoderCache decoders = new FrameDecoderCache();
+		private long sequence = 0;
+		private HistogramBinner histogramBinner = new HistogramBinner(HISTOGRAM_RESOLUTION, Double.MAX_VALUE);
 		private double[][] horProjection = new double[8][8];
 		private double[][] vertProjection = new double[8][8];
 		private double[] vertPixelScale = new double[8];
@@ -138,17 +145,18 @@ public class GstVideoComponentTest {
 		@Override
 		public FlowReturn newSample(AppSink elem) {
 			Sample sample = elem.pullSample();
-			Structure capsStruct = sample.getCaps().getStructure(0);
-			int w = capsStruct.getInteger("width");
-			int h = capsStruct.getInteger("height");
-			double pixValue;
+			FrameDecoder decoder = decoders.get(sample.getCaps());
+			int w = decoder.getWidth();
+			int h = decoder.getHeight();
+			float pixValue;
 			
 			// if update dimensions changed
 			if( h!=bufferHeight || w!=bufferWidth) { 
 				bufferHeight = h;
 				bufferWidth = w;
 				pixCount = h*w;
-				image = new double[bufferHeight][bufferWidth];
+				frame = new ThermalFrame(bufferWidth, bufferHeight);
+				frame.setConversion(0, 1/256.0);
 				vertProjection = new double[HISTOGRAM_RESOLUTION][bufferWidth];
 				horProjection = new double[bufferHeight][HISTOGRAM_RESOLUTION];
 				vertPixelScale = new double[bufferHeight];
@@ -164,17 +172,19 @@ public class GstVideoComponentTest {
 				min = Double.MAX_VALUE;
 				max = Double.MIN_VALUE;
 				
-				// scan the buffer and map to image array
+				// the luma of the buffer to the frame
+				decoder.decode(bb, frame.getRaw(), 0, frame.getStride());
+				frame.rawChanged();
+				frame.setSequence(sequence++);
+				frame.setTimestamp(buffer.getPresentationTimestamp());
+				float[] luma = frame.getTemperatures();
 				for (int i = 0; i < pixCount; i++) {
-					pixValue = Byte.toUnsignedInt(bb.get(i*2));
-					pixValue /= 256.0;
+					pixValue = luma[i];
 					if (pixValue > max) max = pixValue;
 					if (pixValue < min) min = pixValue;
-					image[i/bufferWidth][i%bufferWidth] = pixValue;
-					
 				}
 				
-				imageDataSet.set(horPixelScale, vertPixelScale, image, false, false);
+				imageDataSet.set(frame);
 				if(max > pixMax) pixMax+= (max-pixMax)/32;
 				else pixMax -= (pixMax-max)/32;
 				if (min < pixMin) pixMin -= (pixMin-min)/32;
@@ -189,25 +199,7 @@ public class GstVideoComponentTest {
 //					histogramX[i] = i;
 //				}
 				
-				Arrays.fill(histogramY, 0.0);
-				for (int i = 0; i < horProjection.length; i++) {
-					Arrays.fill(horProjection[i], 0.0);
-				}
-				for (int i = 0; i < vertProjection.length; i++) {
-					Arrays.fill(vertProjection[i], 0.0);
-				}
-				
-				for (int heightIdx = 0; heightIdx < bufferHeight; heightIdx++) {
-					for (int widthIdx = 0; widthIdx < bufferWidth; widthIdx++) {
-						for (int k = 0; k < histogramX.length-1; k++) {
-							if (image[heightIdx][widthIdx] >= histogramX[k] && image[heightIdx][widthIdx] < histogramX[k+1] ) {
-								histogramY[k]++;
-								horProjection[heightIdx][k]++;
-								vertProjection[histogramX.length-k-1][widthIdx]++;
-							}
-						}
-					}
-				}
+				histogramBinner.bin(frame, pixMin, pixMax, histogramY, horProjection, vertProjection);
 				
 				histogramDataSet.set(histogramX, histogramY);
 				horizontalProjectionDataSet.set(histogramX, vertPixelScale, horProjection, false, false);
@@ -234,15 +226,16 @@ public class GstVideoComponentTest {
 		@Override
 		public FlowReturn newPreroll(AppSink elem) {
 			Sample sample = elem.pullPreroll();
-			Structure capsStruct = sample.getCaps().getStructure(0);
-			int w = capsStruct.getInteger("width");
-			int h = capsStruct.getInteger("height");
+			FrameDecoder decoder = decoders.get(sample.getCaps());
+			int w = decoder.getWidth();
+			int h = decoder.getHeight();
 
 			if( h!=bufferHeight || w!=bufferWidth) { 
 				bufferHeight = h;
 				bufferWidth = w;
 				pixCount = h*w;
-				image = new double[bufferHeight][bufferWidth];
+				frame = new ThermalFrame(bufferWidth, bufferHeight);
+				frame.setConversion(0, 1/256.0);
 				vertProjection = new double[HISTOGRAM_RESOLUTION][bufferWidth];
 				horProjection = new double[bufferHeight][HISTOGRAM_RESOLUTION];
 				vertPixelScale = new double[bufferHeight];
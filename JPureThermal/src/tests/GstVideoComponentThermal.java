@@ -1,19 +1,21 @@
 package tests;
 
 import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
-import java.util.Arrays;
 
 import org.freedesktop.gstreamer.Buffer;
 import org.freedesktop.gstreamer.Caps;
 import org.freedesktop.gstreamer.Element;
 import org.freedesktop.gstreamer.FlowReturn;
 import org.freedesktop.gstreamer.Sample;
-import org.freedesktop.gstreamer.Structure;
 import org.freedesktop.gstreamer.elements.AppSink;
 
 import cern.jdve.data.DefaultDataSet;
 import cern.jdve.data.DefaultDataSet3D;
+import jpurethermal.FrameDecoder;
+import jpurethermal.FrameDecoderCache;
+import jpurethermal.HistogramBinner;
+import jpurethermal.ThermalFrame;
+import jpurethermal.ThermalFrameDataSet;
 
 public class GstVideoComponentThermal {
 	public static final int HISTOGRAM_RESOLUTION = 128;
@@ -22,7 +24,7 @@ public class GstVideoComponentThermal {
 
 	private int bufferWidth, bufferHeight, pixCount;
 	private DefaultDataSet histogramDataSet = new DefaultDataSet("Histogram", new double[] {0,1}, new double[] {0,1});
-	private DefaultDataSet3D imageDataSet = new DefaultDataSet3D("Image");
+	private ThermalFrameDataSet imageDataSet = new ThermalFrameDataSet("Image");
 	private DefaultDataSet3D horizontalProjectionDataSet = new DefaultDataSet3D("Horizontal Projection");
 	private DefaultDataSet3D verticalProjectionDataSet = new DefaultDataSet3D("Vertical Projection");
 	private double pixMin = 0;
@@ -60,7 +62,7 @@ public class GstVideoComponentThermal {
 	public DefaultDataSet getHistogramDataSet() {
 		return histogramDataSet;
 	}
-	public DefaultDataSet3D getImageDataSet() {
+	public ThermalFrameDataSet getImageDataSet() {
 		return imageDataSet;
 	}
 	public DefaultDataSet3D gethorizontalProjectionDataSet() {
@@ -76,7 +78,10 @@ public class GstVideoComponentThermal {
 		private int fps = 0;
 		private double[] histogramX = new double[HISTOGRAM_RESOLUTION];
 		private double[] histogramY = new double[HISTOGRAM_RESOLUTION];
-		private double[][] image = new double[8][8];
+		private ThermalFrame frame = new ThermalFrame(8, 8);
+		private final FrameDecoderCache decoders = new FrameDecoderCache();
+		private long sequence = 0;
+		private HistogramBinner histogramBinner = new HistogramBinner(HISTOGRAM_RESOLUTION, Double.MAX_VALUE);
 		private double[][] horProjection = new double[8][8];
 		private double[][] vertProjection = new double[8][8];
 		private double[] vertPixelScale = new double[8];
@@ -90,16 +95,16 @@ public class GstVideoComponentThermal {
 		@Override
 		public FlowReturn newSample(AppSink elem) {
 			Sample sample = elem.pullSample();
-			Structure capsStruct = sample.getCaps().getStructure(0);
-			int w = capsStruct.getInteger("width");
-			int h = capsStruct.getInteger("height");
-			double pixValue;
+			FrameDecoder decoder = decoders.get(sample.getCaps());
+			int w = decoder.getWidth();
+			int h = decoder.getHeight();
+			float pixValue;
 			
 			if( h!=bufferHeight || w!=bufferWidth) { 
 				bufferHeight = h;
 				bufferWidth = w;
 				pixCount = h*w;
-				image = new double[bufferHeight][bufferWidth];
+				frame = new ThermalFrame(bufferWidth, bufferHeight);
 				vertProjection = new double[HISTOGRAM_RESOLUTION][bufferWidth];
 				horProjection = new double[bufferHeight][HISTOGRAM_RESOLUTION];
 				vertPixelScale = new double[bufferHeight];
@@ -110,21 +115,23 @@ public class GstVideoComponentThermal {
 
 			Buffer buffer = sample.getBuffer();
 			ByteBuffer bb = buffer.map(false);
-			ShortBuffer sb = bb.asShortBuffer();
 
-			if (sb != null) {
+			if (bb != null) {
 				min = Double.MAX_VALUE;
 				max = Double.MIN_VALUE;
 				
-				for (int i = 0; i < sb.capacity(); i++) {
-					pixValue = Short.toUnsignedInt(sb.get(i));
-					pixValue = (pixValue-27315.0)*0.01;
+				decoder.decode(bb, frame.getRaw(), 0, frame.getStride());
+				frame.rawChanged();
+				frame.setSequence(sequence++);
+				frame.setTimestamp(buffer.getPresentationTimestamp());
+				float[] temperatures = frame.getTemperatures();
+				for (int i = 0; i < pixCount; i++) {
+					pixValue = temperatures[i];
 					if (pixValue > max) max = pixValue;
 					if (pixValue < min) min = pixValue;
-					image[i/bufferWidth][i%bufferWidth] = pixValue;
 				}
 				
-				imageDataSet.set(horPixelScale, vertPixelScale, image, false, false);
+				imageDataSet.set(frame);
 				if(max > pixMax) pixMax+= (max-pixMax)/4;
 				else pixMax -= (pixMax-max)/4;
 				if (min < pixMin) pixMin -= (pixMin-min)/4;
@@ -139,25 +146,7 @@ public class GstVideoComponentThermal {
 //					histogramX[i] = i;
 //				}
 				
-				Arrays.fill(histogramY, 0.0);
-				for (int i = 0; i < horProjection.length; i++) {
-					Arrays.fill(horProjection[i], 0.0);
-				}
-				for (int i = 0; i < vertProjection.length; i++) {
-					Arrays.fill(vertProjection[i], 0.0);
-				}
-				
-				for (int heightIdx = 0; heightIdx < bufferHeight; heightIdx++) {
-					for (int widthIdx = 0; widthIdx < bufferWidth; widthIdx++) {
-						for (int k = 0; k < histogramX.length-1; k++) {
-							if (image[heightIdx][widthIdx] >= histogramX[k] && image[heightIdx][widthIdx] < histogramX[k+1] ) {
-								histogramY[k]++;
-								horProjection[heightIdx][k]++;
-								vertProjection[histogramX.length-k-1][widthIdx]++;
-							}
-						}
-					}
-				}
+				histogramBinner.bin(frame, pixMin, pixMax, histogramY, horProjection, vertProjection);
 				
 				histogramDataSet.set(histogramX, histogramY);
 				horizontalProjectionDataSet.set(histogramX, vertPixelScale, horProjection, false, false);
@@ -182,15 +171,15 @@ public class GstVideoComponentThermal {
 		@Override
 		public FlowReturn newPreroll(AppSink elem) {
 			Sample sample = elem.pullPreroll();
-			Structure capsStruct = sample.getCaps().getStructure(0);
-			int w = capsStruct.getInteger("width");
-			int h = capsStruct.getInteger("height");
+			FrameDecoder decoder = decoders.get(sample.getCaps());
+			int w = decoder.getWidth();
+			int h = decoder.getHeight();
 
 			if( h!=bufferHeight || w!=bufferWidth) { 
 				bufferHeight = h;
 				bufferWidth = w;
 				pixCount = h*w;
-				image = new double[bufferHeight][bufferWidth];
+				frame = new ThermalFrame(bufferWidth, bufferHeight);
 				vertProjection = new double[HISTOGRAM_RESOLUTION][bufferWidth];
 				horProjection = new double[bufferHeight][HISTOGRAM_RESOLUTION];
 				vertPixelScale = new double[bufferHeight];
@@ -202,9 +191,8 @@ public class GstVideoComponentThermal {
 
 			Buffer buffer = sample.getBuffer();
 			ByteBuffer bb = buffer.map(false);
-			ShortBuffer sb = bb.asShortBuffer();
 
-			if (sb != null) {
+			if (bb != null) {
 
 				buffer.unmap();
 			}
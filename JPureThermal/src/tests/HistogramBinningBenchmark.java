@@ -0,0 +1,107 @@
+package tests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jpurethermal.HistogramBinner;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Compares the per frame cost of the former bin search loop with the
+ * {@link HistogramBinner} on a synthetic 160x120 Lepton frame.
+ */
+public class HistogramBinningBenchmark {
+	public static final int HISTOGRAM_RESOLUTION = 128;
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final int WARMUP = 200;
+	private static final int FRAMES = 1000;
+
+	private ThermalFrame frame = new ThermalFrame(WIDTH, HEIGHT);
+	private double[][] image = new double[HEIGHT][WIDTH];
+	private double[] histogramX = new double[HISTOGRAM_RESOLUTION];
+	private double[] histogramY = new double[HISTOGRAM_RESOLUTION];
+	private double[][] horProjection = new double[HEIGHT][HISTOGRAM_RESOLUTION];
+	private double[][] vertProjection = new double[HISTOGRAM_RESOLUTION][WIDTH];
+	private HistogramBinner histogramBinner = new HistogramBinner(HISTOGRAM_RESOLUTION);
+	private double pixMin = Double.MAX_VALUE;
+	private double pixMax = -Double.MAX_VALUE;
+
+	public HistogramBinningBenchmark() {
+		Random random = new Random(42);
+		for (int heightIdx = 0; heightIdx < HEIGHT; heightIdx++) {
+			for (int widthIdx = 0; widthIdx < WIDTH; widthIdx++) {
+				double value = 22.0 + 3.0*random.nextGaussian() + 10.0*Math.sin(widthIdx/20.0);
+				frame.setRaw(widthIdx, heightIdx, (int) Math.round(value/ThermalFrame.CENTI + ThermalFrame.KELVIN_OFFSET));
+			}
+		}
+		for (int heightIdx = 0; heightIdx < HEIGHT; heightIdx++) {
+			for (int widthIdx = 0; widthIdx < WIDTH; widthIdx++) {
+				double value = frame.getTemperature(widthIdx, heightIdx);
+				if (value < pixMin) pixMin = value;
+				if (value > pixMax) pixMax = value;
+				image[heightIdx][widthIdx] = value;
+			}
+		}
+		double stepSize = (pixMax-pixMin)/histogramX.length;
+		for (int i = 0; i < histogramX.length; i++) {
+			histogramX[i] = pixMin+(stepSize*i);
+		}
+	}
+
+	/**
+	 * The bin search as it was done in PureThermalAppSinkListener.newSample
+	 */
+	private void searchBins() {
+		Arrays.fill(histogramY, 0.0);
+		for (int i = 0; i < horProjection.length; i++) {
+			Arrays.fill(horProjection[i], 0.0);
+		}
+		for (int i = 0; i < vertProjection.length; i++) {
+			Arrays.fill(vertProjection[i], 0.0);
+		}
+		for (int heightIdx = 0; heightIdx < HEIGHT; heightIdx++) {
+			for (int widthIdx = 0; widthIdx < WIDTH; widthIdx++) {
+				for (int k = 0; k < histogramX.length-1; k++) {
+					if (image[heightIdx][widthIdx] >= histogramX[k] && image[heightIdx][widthIdx] < histogramX[k+1] ) {
+						histogramY[k]++;
+						if(horProjection[heightIdx][k] < 16) horProjection[heightIdx][k]++;
+						if (vertProjection[histogramX.length-k-1][widthIdx] < 16) vertProjection[histogramX.length-k-1][widthIdx]++;
+					}
+				}
+			}
+		}
+	}
+
+	private void computeBins() {
+		histogramBinner.bin(frame, pixMin, pixMax, histogramY, horProjection, vertProjection);
+	}
+
+	private double countBinned() {
+		double count = 0;
+		for (double c : histogramY) count += c;
+		return count;
+	}
+
+	private double timePerFrameUs(Runnable r) {
+		for (int i = 0; i < WARMUP; i++) r.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < FRAMES; i++) r.run();
+		return (System.nanoTime()-start)/1000.0/FRAMES;
+	}
+
+	public static void main(String[] args) {
+		HistogramBinningBenchmark bench = new HistogramBinningBenchmark();
+
+		double searchUs = bench.timePerFrameUs(bench::searchBins);
+		double searchCount = bench.countBinned();
+		double computeUs = bench.timePerFrameUs(bench::computeBins);
+		double computeCount = bench.countBinned();
+
+		System.out.println(WIDTH+"x"+HEIGHT+" frame, "+HISTOGRAM_RESOLUTION+" bins");
+		System.out.println(String.format("bin search:  %10.1f us/frame, %6.0f of %d pixels binned", searchUs, searchCount, WIDTH*HEIGHT));
+		System.out.println(String.format("bin compute: %10.1f us/frame, %6.0f of %d pixels binned", computeUs, computeCount, WIDTH*HEIGHT));
+		System.out.println(String.format("speedup: %.1fx", searchUs/computeUs));
+	}
+
+}
@@ -0,0 +1,70 @@
+package tests;
+
+import jpurethermal.HotspotDetector;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Time and allocation per frame of the {@link HotspotDetector} on the moving
+ * hot spot of the {@link SyntheticScene}, for thresholds giving one compact
+ * region, a large region with a noisy border, and on a flat noisy scene a
+ * threshold one standard deviation above the mean, which gives thousands of
+ * small regions.
+ */
+public class HotspotBenchmark {
+	private final int width, height;
+
+	public HotspotBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	private void measure(String label, ThermalFrame[] frames, float threshold) {
+		HotspotDetector detector = new HotspotDetector();
+		detector.setMinArea(1);
+		Measurement m = Measurement.of(n -> detect(detector, frames, n, threshold));
+		// regions of each frame of the scene, tracked from the first one
+		HotspotDetector counter = new HotspotDetector();
+		counter.setMinArea(1);
+		long blobs = 0;
+		for (int i = 0; i < frames.length; i++) {
+			detect(counter, frames, i, threshold);
+			blobs += counter.getHotspotCount();
+		}
+		System.out.println(String.format("  %-22s %s %8.0f frames/s %7.1f regions",
+				label, m.perFrame(width*height), m.getRate(), (double) blobs/frames.length));
+	}
+
+	private static void detect(HotspotDetector detector, ThermalFrame[] frames, long n, float threshold) {
+		ThermalFrame frame = Measurement.cycle(frames, n);
+		frame.setSequence(n);
+		detector.detect(frame, threshold);
+	}
+
+	private void run() {
+		System.out.println(width+"x"+height);
+		// a few degrees of the circle of the spot between two frames
+		ThermalFrame[] scene = Measurement.frames(new SyntheticScene(width, height), 1);
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for (float t : scene[0].getTemperatures()) {
+			min = Math.min(min, t);
+			max = Math.max(max, t);
+		}
+		measure("spot, 0.8 of range", scene, min+0.8f*(max-min));
+		measure("spot, 0.5 of range", scene, min+0.5f*(max-min));
+		measure("half frame, 25\u00B0C", scene, 25);
+
+		SyntheticScene flat = new SyntheticScene(width, height);
+		flat.setGradient(0);
+		flat.setHotSpot(22);
+		measure("noise, mean+1 std", Measurement.frames(flat, 1), 22+0.15f);
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, Measurement.SIZES, (w, h) -> {
+			new HotspotBenchmark(w, h).run();
+			return 0;
+		});
+	}
+
+}
@@ -0,0 +1,108 @@
+package tests;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Random;
+
+import cern.jdve.data.DefaultDataSet3D;
+import cern.jdve.graphic.CustomPalette;
+import jpurethermal.ThermalImageComponent;
+
+/**
+ * Frame time of the thermal image painted the jdve contour way and by the
+ * {@link ThermalImageComponent}, for a 160x120 frame drawn at 480x360.
+ * <p>
+ * A jdve Chart needs a native peer to paint, so to run headless the contour
+ * path is reproduced with the same calls ContourChartRenderer makes per
+ * frame: data set update, z range scan, one palette lookup per pixel through
+ * getZ and getColor, then a scaled draw of the image.
+ */
+public class ImageRenderingBenchmark {
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final int VIEW_WIDTH = 480;
+	private static final int VIEW_HEIGHT = 360;
+	private static final int WARMUP = 100;
+	private static final int FRAMES = 500;
+
+	private double[][] frames = new double[4][WIDTH*HEIGHT];
+	private double[] horPixelScale = new double[WIDTH];
+	private double[] vertPixelScale = new double[HEIGHT];
+	private BufferedImage target = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+	private Graphics2D g = target.createGraphics();
+
+	private DefaultDataSet3D imageDataSet = new DefaultDataSet3D("Image");
+	private CustomPalette palette = new CustomPalette();
+	private BufferedImage contourImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+	private ThermalImageComponent imageComponent = new ThermalImageComponent();
+
+	public ImageRenderingBenchmark() {
+		Random random = new Random(42);
+		for (double[] frame : frames) {
+			for (int i = 0; i < frame.length; i++) {
+				frame[i] = 22.0 + 3.0*random.nextGaussian() + 10.0*Math.sin((i%WIDTH)/20.0);
+			}
+		}
+		for(int i=0; i<horPixelScale.length; i++) horPixelScale[i] = i;
+		for(int i=0; i<vertPixelScale.length; i++) vertPixelScale[i] = i;
+
+		palette.setCustomPalette(ThermalImageComponent.DEFAULT_PALETTE);
+
+		imageComponent.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+	}
+
+	private void contourFrame(int n) {
+		imageDataSet.set(horPixelScale, vertPixelScale, frames[n%frames.length], false, false);
+		double zMin = Double.MAX_VALUE;
+		double zMax = -Double.MAX_VALUE;
+		for (int i = 0; i < WIDTH; i++) {
+			for (int j = 0; j < HEIGHT; j++) {
+				double z = imageDataSet.getZ(i, j);
+				if (z < zMin) zMin = z;
+				if (z > zMax) zMax = z;
+			}
+		}
+		palette.setValueRange(zMin, zMax);
+		DataBuffer dt = contourImage.getRaster().getDataBuffer();
+		int dtIndex = 0;
+		for (int i = HEIGHT-1; i >= 0; i--) {
+			for (int j = 0; j < WIDTH; j++) {
+				dt.setElem(dtIndex++, palette.getColor(imageDataSet.getZ(j, i)).getRGB());
+			}
+		}
+		g.drawImage(contourImage, 0, 0, VIEW_WIDTH, VIEW_HEIGHT, null);
+	}
+
+	private void directFrame(int n, boolean bilinear) {
+		imageComponent.setBilinear(bilinear);
+		imageComponent.render(frames[n%frames.length], WIDTH, HEIGHT, 10.0, 35.0);
+		imageComponent.paint(g);
+	}
+
+	private interface FrameTask {
+		void run(int n);
+	}
+
+	private static double timePerFrameUs(FrameTask task) {
+		for (int i = 0; i < WARMUP; i++) task.run(i);
+		long start = System.nanoTime();
+		for (int i = 0; i < FRAMES; i++) task.run(i);
+		return (System.nanoTime()-start)/1000.0/FRAMES;
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		ImageRenderingBenchmark bench = new ImageRenderingBenchmark();
+
+		double contourUs = timePerFrameUs(bench::contourFrame);
+		double nearestUs = timePerFrameUs(n -> bench.directFrame(n, false));
+		double bilinearUs = timePerFrameUs(n -> bench.directFrame(n, true));
+
+		System.out.println(WIDTH+"x"+HEIGHT+" frame painted at "+VIEW_WIDTH+"x"+VIEW_HEIGHT);
+		System.out.println(String.format("jdve contour path: %11.1f us/frame", contourUs));
+		System.out.println(String.format("direct, nearest:    %10.1f us/frame", nearestUs));
+		System.out.println(String.format("direct, bilinear:   %10.1f us/frame", bilinearUs));
+	}
+
+}
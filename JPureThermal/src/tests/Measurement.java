@@ -0,0 +1,167 @@
+package tests;
+
+import java.lang.management.ManagementFactory;
+
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Time and allocation per call of a workload on the calling thread, after a
+ * warm-up, for the benchmarks. Allocations are the bytes allocated by the
+ * thread, as counted by the JVM.
+ * <p>
+ * The number of the call goes on from the warm-up to the measurement, to
+ * cycle through the frames of a scene, and an untimed step can prepare each
+ * call, like a new frame from the camera.
+ * <p>
+ * The benchmarks run for the sizes given as arguments, like 160x120 640x480,
+ * else for their default ones: the Lepton size and larger hypothetical
+ * sensors unless they say otherwise.
+ */
+class Measurement {
+	static final long WARMUP_NS = 1_000_000_000L;
+	static final long MEASURE_NS = 2_000_000_000L;
+	static final String[] SIZES = {"160x120", "320x240", "640x480", "1280x960"};
+	static final int SCENE_FRAMES = 8;
+
+	private static final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	static {
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	interface Call {
+		void run(long n);
+	}
+
+	/**
+	 * A benchmark for one size, returning its number of errors.
+	 */
+	interface Benchmark {
+		int run(int width, int height);
+	}
+
+	private final long count, nanos, bytes;
+
+	private Measurement(long count, long nanos, long bytes) {
+		this.count = count;
+		this.nanos = nanos;
+		this.bytes = bytes;
+	}
+
+	static Measurement of(Call call) {
+		return of(null, call);
+	}
+
+	/**
+	 * @param prepare run before each call and not measured, or null
+	 */
+	static Measurement of(Call prepare, Call call) {
+		long n = 0;
+		long end = System.nanoTime()+WARMUP_NS;
+		while (System.nanoTime() < end) {
+			if (prepare != null) prepare.run(n);
+			call.run(n++);
+		}
+		long nanos = 0, bytes = 0, count = 0;
+		long threadId = Thread.currentThread().getId();
+		end = System.nanoTime()+MEASURE_NS;
+		while (System.nanoTime() < end) {
+			if (prepare != null) prepare.run(n);
+			long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			call.run(n++);
+			nanos += System.nanoTime()-start;
+			bytes += threadBean.getThreadAllocatedBytes(threadId)-startBytes;
+			count++;
+		}
+		return new Measurement(count, nanos, bytes);
+	}
+
+	/**
+	 * Bytes allocated so far by the calling thread.
+	 */
+	static long allocatedBytes() {
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs the benchmark for each size, and exits with 1 if there were errors.
+	 */
+	static void run(String[] args, String[] defaults, Benchmark benchmark) {
+		int errors = 0;
+		for (int[] size : sizes(args, defaults)) {
+			errors += benchmark.run(size[0], size[1]);
+		}
+		if (errors > 0) {
+			System.out.println(errors+" errors");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The sizes given as arguments, else the default ones.
+	 * @return the width and height of each size
+	 */
+	static int[][] sizes(String[] args, String[] defaults) {
+		String[] sizes = args.length > 0 ? args : defaults;
+		int[][] wh = new int[sizes.length][];
+		for (int i = 0; i < sizes.length; i++) {
+			String[] s = sizes[i].split("x");
+			wh[i] = new int[] {Integer.parseInt(s[0]), Integer.parseInt(s[1])};
+		}
+		return wh;
+	}
+
+	/**
+	 * SCENE_FRAMES frames of the scene, step apart.
+	 */
+	static ThermalFrame[] frames(SyntheticScene scene, int step) {
+		ThermalFrame[] frames = new ThermalFrame[SCENE_FRAMES];
+		for (int i = 0; i < SCENE_FRAMES; i++) {
+			frames[i] = new ThermalFrame(scene.getWidth(), scene.getHeight());
+			scene.render(i*step, frames[i].getRaw(), 0, scene.getWidth());
+			frames[i].rawChanged();
+		}
+		return frames;
+	}
+
+	/**
+	 * The frame of call n, cycling through the frames.
+	 */
+	static <T> T cycle(T[] frames, long n) {
+		return frames[(int) (n%frames.length)];
+	}
+
+	long getCount() {
+		return count;
+	}
+	double getMicros() {
+		return nanos/1000.0/count;
+	}
+	double getNanosPerPixel(int pixels) {
+		return nanos/(double) count/pixels;
+	}
+	long getBytes() {
+		return bytes/count;
+	}
+	/**
+	 * Calls per second.
+	 */
+	double getRate() {
+		return count*1e9/nanos;
+	}
+
+	/**
+	 * Time, time per pixel and allocation per frame.
+	 */
+	String perFrame(int pixels) {
+		return String.format("%9.2f us/frame %6.2f ns/pixel %6d B/frame", getMicros(), getNanosPerPixel(pixels), getBytes());
+	}
+
+	void print(String label, int pixels) {
+		System.out.println(String.format("  %-28s %s", label, perFrame(pixels)));
+	}
+
+}
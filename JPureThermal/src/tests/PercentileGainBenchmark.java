@@ -0,0 +1,94 @@
+package tests;
+
+import java.util.Arrays;
+
+import jpurethermal.PercentileGain;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalAnalyzer;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Time and allocation per frame of the histogram build and of the percentile
+ * search of the {@link PercentileGain}, against percentiles found by sorting
+ * a copy of the raw values, which also checks the results.
+ * <p>
+ * A few pixels of the synthetic scene are replaced by very hot ones, and the
+ * displayed range reached by the min/max and percentile modes of the
+ * {@link ThermalAnalyzer} is printed for comparison.
+ */
+public class PercentileGainBenchmark {
+	private static final int HOT_PIXELS = 3;
+	private static final double[] PERCENTILES = {0.01, 0.99};
+
+	private final int width, height;
+	private final ThermalFrame[] frames;
+	private final PercentileGain gain = new PercentileGain();
+	private final char[] sorted;
+	private int checks, errors;
+
+	public PercentileGainBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		frames = Measurement.frames(new SyntheticScene(width, height), 1);
+		for (int i = 0; i < frames.length; i++) {
+			// 377 degrees, like a lamp or a dead pixel
+			for (int k = 0; k < HOT_PIXELS; k++) {
+				frames[i].setRaw((k*97+i*13)%width, (k*31+i*7)%height, 65000);
+			}
+		}
+		sorted = new char[width*height];
+	}
+
+	private void build(long n) {
+		gain.build(Measurement.cycle(frames, n));
+	}
+
+	private void search() {
+		for (double p : PERCENTILES) gain.percentile(p);
+	}
+
+	private void sort(long n) {
+		short[] raw = Measurement.cycle(frames, n).getRaw();
+		for (int i = 0; i < sorted.length; i++) sorted[i] = (char) raw[i];
+		Arrays.sort(sorted);
+	}
+
+	private void check(long n) {
+		build(n);
+		sort(n);
+		for (double p : PERCENTILES) {
+			int rank = (int) Math.max(1, Math.ceil(p*sorted.length));
+			checks++;
+			if (gain.percentile(p) != sorted[rank-1]) errors++;
+		}
+	}
+
+	private void range(ThermalAnalyzer.RangeMode mode) {
+		ThermalAnalyzer analyzer = new ThermalAnalyzer(64);
+		analyzer.setRangeMode(mode);
+		for (int i = 0; i < 100; i++) {
+			ThermalFrame frame = Measurement.cycle(frames, i);
+			analyzer.findMinMax(frame);
+			analyzer.adaptRange(frame);
+		}
+		System.out.println(String.format("  %-22s %.2f .. %.2f \u00B0C", "range "+mode.name().toLowerCase(),
+				analyzer.getPixMin(), analyzer.getPixMax()));
+	}
+
+	private int run() {
+		System.out.println(width+"x"+height);
+		Measurement.of(this::build).print("histogram build", width*height);
+		Measurement.of(n -> search()).print("percentile search", width*height);
+		Measurement.of(this::sort).print("sort", width*height);
+		for (int i = 0; i < frames.length; i++) check(i);
+		System.out.println(String.format("  %d percentiles checked against the sort, %d errors", checks, errors));
+		range(ThermalAnalyzer.RangeMode.MIN_MAX);
+		range(ThermalAnalyzer.RangeMode.PERCENTILE);
+		return errors;
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, Measurement.SIZES, (w, h) -> new PercentileGainBenchmark(w, h).run());
+	}
+
+}
@@ -0,0 +1,216 @@
+package tests;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import jpurethermal.PureThermalAppSinkListener;
+import jpurethermal.Radiometry;
+import jpurethermal.Roi;
+import jpurethermal.RoiEngine;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalAnalyzer;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Checks that the statistics computed from the raw values are the same as
+ * from the temperatures: min, max, range, histogram and projections bit for
+ * bit, the mean within rounding, and the regions of interest bit for bit
+ * against a rescan with long sums. Then compares the time and allocation
+ * per frame of the analysis in both domains, conversion included.
+ * <p>
+ * The checks run with the default conversion, one crossing 0 degrees, a
+ * frame with a stride and the linear radiometries, then check that the
+ * analysis of a {@link PureThermalAppSinkListener} takes the raw path with
+ * its default radiometry and leaves it for an emissivity below 1, and that
+ * a frame keeps the conversion it took.
+ */
+public class RawDomainBenchmark {
+	private static final int CHECK_FRAMES = 32;
+	private static final int ROI_COUNT = 50;
+
+	private final int width, height;
+	private final SyntheticScene scene;
+	private int errors;
+
+	public RawDomainBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		scene = new SyntheticScene(width, height);
+		scene.setNoise(0.5);
+	}
+
+	private void check(String name, int stride, double offset, double scale) {
+		check(name, stride, frame -> frame.setConversion(offset, scale));
+	}
+
+	private void check(String name, int stride, Radiometry radiometry) {
+		check(name, stride, frame -> frame.setRadiometry(radiometry));
+	}
+
+	private void check(String name, int stride, Consumer<ThermalFrame> conversion) {
+		ThermalFrame frame = new ThermalFrame(width, height, stride);
+		conversion.accept(frame);
+		ThermalAnalyzer raw = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+		ThermalAnalyzer reference = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+		reference.setRawDomain(false);
+		RoiEngine rawRois = new RoiEngine();
+		RoiEngine referenceRois = new RoiEngine();
+		raw.addSink(rawRois);
+		reference.addSink(referenceRois);
+		Random random = new Random(42);
+		for (int i = 0; i < ROI_COUNT; i++) {
+			int w = 1+random.nextInt(width/2);
+			int h = 1+random.nextInt(height/2);
+			int x = random.nextInt(width-w+1);
+			int y = random.nextInt(height-h+1);
+			rawRois.addRoi("roi"+i, x, y, w, h);
+			referenceRois.addRoi("roi"+i, x, y, w, h);
+		}
+
+		double meanError = 0;
+		int before = errors;
+		for (int n = 0; n < CHECK_FRAMES; n++) {
+			scene.render(n, frame.getRaw(), 0, stride);
+			frame.rawChanged();
+			raw.process(frame);
+			reference.process(frame);
+			if (!raw.isRawDomainUsed() || reference.isRawDomainUsed()) fail(name, n, "domain not selected");
+			if (raw.getMin() != reference.getMin() || raw.getMax() != reference.getMax()) fail(name, n, "min/max");
+			if (raw.getPixMin() != reference.getPixMin() || raw.getPixMax() != reference.getPixMax()) fail(name, n, "range");
+			if (!Arrays.equals(raw.getHistogramY(), reference.getHistogramY())) fail(name, n, "histogram");
+			if (!Arrays.deepEquals(raw.getHorProjection(), reference.getHorProjection())) fail(name, n, "horizontal projection");
+			if (!Arrays.deepEquals(raw.getVertProjection(), reference.getVertProjection())) fail(name, n, "vertical projection");
+			meanError = Math.max(meanError, Math.abs(raw.getMean()-reference.getMean()));
+			checkRois(name, n, frame, rawRois.getRois());
+		}
+		System.out.println(String.format("  %-26s %s, max mean difference to the temperatures %.1e",
+				name, errors == before ? "same results" : (errors-before)+" ERRORS", meanError));
+	}
+
+	/**
+	 * The same formulas as the raw tables of the {@link RoiEngine} on sums of
+	 * each region, which must give the same doubles.
+	 */
+	private void checkRois(String name, int n, ThermalFrame frame, Roi[] rois) {
+		short[] r = frame.getRaw();
+		int base = r[0] & 0xFFFF;
+		for (Roi roi : rois) {
+			long sum = 0, squares = 0;
+			int min = 0xFFFF, max = 0;
+			for (int y = roi.getY(); y < roi.getY()+roi.getHeight(); y++) {
+				for (int x = roi.getX(); x < roi.getX()+roi.getWidth(); x++) {
+					int v = r[frame.index(x, y)] & 0xFFFF;
+					sum += v-base;
+					squares += (long) (v-base)*(v-base);
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+			}
+			int count = roi.getWidth()*roi.getHeight();
+			double m = (double) sum/count;
+			double mean = (m+base-frame.getOffset())*frame.getScale();
+			double variance = Math.max(0, (double) squares/count-m*m)*frame.getScale()*frame.getScale();
+			if (roi.getMean() != mean || roi.getVariance() != variance
+					|| roi.getMin() != frame.toTemperature(min) || roi.getMax() != frame.toTemperature(max)) {
+				fail(name, n, roi.toString());
+			}
+		}
+	}
+
+	/**
+	 * The domain of the analysis of a listener fed like by a camera.
+	 */
+	private void checkListener() {
+		PureThermalAppSinkListener listener = new PureThermalAppSinkListener();
+		listener.setPrintRate(false);
+		short[] raw = new short[width*height];
+		long n = 0;
+		try {
+			for (boolean linear : new boolean[] {true, false}) {
+				if (!linear) listener.getRadiometry().setEmissivity(0.95);
+				long processed = listener.getProcessedCount();
+				long deadline = System.nanoTime()+5_000_000_000L;
+				while (listener.getProcessedCount() < processed+4 && System.nanoTime() < deadline) {
+					scene.render(n, raw, 0, width);
+					listener.frame(ShortBuffer.wrap(raw), width, height, n++, System.nanoTime());
+					Thread.sleep(5);
+				}
+				String name = linear ? "listener" : "listener, emissivity 0.95";
+				if (listener.getProcessedCount() < processed+4) fail(name, 0, "frames, none analysed");
+				else if (listener.getAnalyzer().isRawDomainUsed() != linear) fail(name, 0, "domain");
+				else System.out.println(String.format("  %-26s %s domain", name, linear ? "raw" : "temperatures"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			listener.stop();
+		}
+	}
+
+	/**
+	 * A radiometry changed between two frames: the frame analysed keeps the
+	 * conversion taken with its raw values, the next one takes the new one.
+	 */
+	private void checkConversionTaken() {
+		String name = "emissivity changed";
+		Radiometry radiometry = new Radiometry();
+		ThermalFrame frame = new ThermalFrame(width, height);
+		scene.render(0, frame.getRaw(), 0, width);
+		frame.setRadiometry(radiometry);
+		frame.rawChanged();
+		ThermalFrame reference = new ThermalFrame(width, height);
+		System.arraycopy(frame.getRaw(), 0, reference.getRaw(), 0, width*height);
+		reference.setRadiometry(new Radiometry());
+		reference.rawChanged();
+		ThermalAnalyzer analyzer = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+		ThermalAnalyzer referenceAnalyzer = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+
+		radiometry.setEmissivity(0.95);
+		analyzer.process(frame);
+		referenceAnalyzer.process(reference);
+		if (!analyzer.isRawDomainUsed() || analyzer.getMean() != referenceAnalyzer.getMean()
+				|| analyzer.getPixMin() != referenceAnalyzer.getPixMin() || analyzer.getPixMax() != referenceAnalyzer.getPixMax()) {
+			fail(name, 0, "conversion, not the one taken with the frame");
+		}
+		frame.rawChanged();
+		analyzer.process(frame);
+		if (analyzer.isRawDomainUsed() || frame.getConversion() != radiometry.getConversion()) fail(name, 1, "conversion, not the new one");
+		else System.out.println(String.format("  %-26s from the next frame", name));
+	}
+
+	private void fail(String name, int n, String what) {
+		if (errors++ < 10) System.out.println("  "+name+" frame "+n+": different "+what);
+	}
+
+	private void measure(boolean rawDomain) {
+		ThermalFrame[] frames = Measurement.frames(scene, 1);
+		ThermalAnalyzer analyzer = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+		analyzer.setRawDomain(rawDomain);
+		// converted again each frame, as a new frame from the camera
+		Measurement.of(n -> Measurement.cycle(frames, n).rawChanged(), n -> analyzer.process(Measurement.cycle(frames, n)))
+				.print(rawDomain ? "raw" : "temperatures", width*height);
+	}
+
+	private int run() {
+		System.out.println(width+"x"+height);
+		check("centi-Kelvin", width, ThermalFrame.KELVIN_OFFSET, ThermalFrame.CENTI);
+		check("around 0, 0.02/count", width, 29300, 0.02);
+		check("stride", width+5, 0, 0.0025);
+		check("radiometry", width, new Radiometry());
+		Radiometry fahrenheit = new Radiometry();
+		fahrenheit.setUnit(Radiometry.Unit.FAHRENHEIT);
+		check("radiometry, \u00B0F", width, fahrenheit);
+		checkListener();
+		checkConversionTaken();
+		measure(false);
+		measure(true);
+		return errors;
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, Measurement.SIZES, (w, h) -> new RawDomainBenchmark(w, h).run());
+	}
+
+}
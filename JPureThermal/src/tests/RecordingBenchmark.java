@@ -0,0 +1,161 @@
+package tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import jpurethermal.RawRecorder;
+import jpurethermal.RawRecording;
+import jpurethermal.SyntheticScene;
+
+/**
+ * Sustained write throughput of the {@link RawRecorder}, with each sync
+ * policy, against a FileOutputStream writing the same frames, which needs
+ * the frame copied to a byte array first. Checks first that frames given
+ * in buffers with more values after them, in either byte order, are
+ * recorded exactly, up to the end of the segments.
+ * <p>
+ * Arguments: directory to write to (default the temporary directory), then
+ * frame sizes like 160x120 640x480. The files are deleted at the end.
+ */
+public class RecordingBenchmark {
+	private static final long BYTES_PER_RUN = 256L << 20;
+	private static final int SCENE_FRAMES = 16;
+
+	private final int width, height;
+	private final File directory;
+	private final ShortBuffer[] frames = new ShortBuffer[SCENE_FRAMES];
+	private final int count;
+
+	public RecordingBenchmark(File directory, int width, int height) {
+		this.directory = directory;
+		this.width = width;
+		this.height = height;
+		count = (int) Math.max(100, BYTES_PER_RUN/(2L*width*height));
+		SyntheticScene scene = new SyntheticScene(width, height);
+		short[] scratch = new short[width*height];
+		for (int i = 0; i < frames.length; i++) {
+			ByteBuffer bb = ByteBuffer.allocateDirect(2*width*height).order(ByteOrder.LITTLE_ENDIAN);
+			scene.renderGray16LE(i, scratch, bb);
+			frames[i] = bb.asShortBuffer();
+		}
+	}
+
+	private double recorder(RawRecorder.SyncPolicy policy) throws IOException {
+		String name = "bench-"+policy.name().toLowerCase();
+		long start = System.nanoTime();
+		try (RawRecorder recorder = new RawRecorder(directory, name)) {
+			recorder.setSyncPolicy(policy);
+			recorder.setSyncInterval(64);
+			for (int i = 0; i < count; i++) {
+				ShortBuffer sb = frames[i%frames.length];
+				sb.rewind();
+				recorder.append(sb, width, height, i*111_111_111L);
+			}
+		}
+		double seconds = (System.nanoTime()-start)/1e9;
+		check(name);
+		delete(name);
+		return seconds;
+	}
+
+	private double fileOutputStream(boolean sync) throws IOException {
+		File file = new File(directory, "bench-stream.raw");
+		byte[] bytes = new byte[2*width*height];
+		ShortBuffer copy = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		long start = System.nanoTime();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			for (int i = 0; i < count; i++) {
+				ShortBuffer sb = frames[i%frames.length];
+				sb.rewind();
+				copy.clear();
+				copy.put(sb);
+				out.write(bytes);
+			}
+			if (sync) out.getFD().sync();
+		}
+		double seconds = (System.nanoTime()-start)/1e9;
+		file.delete();
+		return seconds;
+	}
+
+	private void check(String name) throws IOException {
+		try (RawRecording recording = new RawRecording(directory, name)) {
+			if (recording.getFrameCount() != count) throw new IllegalStateException(recording.getFrameCount()+" frames read, "+count+" written");
+			long n = count/2;
+			ShortBuffer expected = frames[(int) (n%frames.length)];
+			expected.rewind();
+			if (!recording.getPixels(n).equals(expected)) throw new IllegalStateException("frame "+n+" differs");
+		}
+	}
+
+	/**
+	 * Frames followed by padding in their buffers of the given order, in
+	 * short segments so that frames land at the end of them.
+	 */
+	private void checkPadded(ByteOrder order) throws IOException {
+		String name = "bench-padded";
+		int frameCount = 3*SCENE_FRAMES;
+		ShortBuffer padded = ByteBuffer.allocateDirect(2*(width*height+3*width)).order(order).asShortBuffer();
+		try (RawRecorder recorder = new RawRecorder(directory, name)) {
+			recorder.setSegmentFrames(SCENE_FRAMES/2);
+			recorder.setIndexInterval(4);
+			for (int i = 0; i < frameCount; i++) {
+				ShortBuffer frame = frames[i%frames.length];
+				frame.rewind();
+				padded.clear();
+				padded.put(frame);
+				while (padded.hasRemaining()) padded.put((short) 0x7FFF);
+				padded.rewind();
+				recorder.append(padded, width, height, i);
+				if (padded.position() != 0 || padded.limit() != padded.capacity()) throw new IllegalStateException("buffer of frame "+i+" changed");
+			}
+		}
+		try (RawRecording recording = new RawRecording(directory, name)) {
+			if (recording.getFrameCount() != frameCount) throw new IllegalStateException(recording.getFrameCount()+" padded frames read, "+frameCount+" written");
+			for (int i = 0; i < frameCount; i++) {
+				ShortBuffer expected = frames[i%frames.length];
+				expected.rewind();
+				if (!recording.getPixels(i).equals(expected)) throw new IllegalStateException("padded frame "+i+" differs");
+			}
+		}
+		delete(name);
+		System.out.println("  padded "+order+" buffers: "+frameCount+" frames recorded exactly");
+	}
+
+	private void delete(String name) {
+		File[] files = directory.listFiles((dir, f) -> f.startsWith(name+"."));
+		if (files != null) for (File f : files) f.delete();
+	}
+
+	private void print(String label, double seconds) {
+		double mb = 2.0*width*height*count/1e6;
+		System.out.println(String.format("  %-28s %9.1f MB/s %10.0f frames/s", label, mb/seconds, count/seconds));
+	}
+
+	public static void main(String[] args) throws IOException {
+		File directory = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+		String[] sizes = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[] {"160x120", "640x480"};
+		for (String size : sizes) {
+			String[] wh = size.split("x");
+			RecordingBenchmark bench = new RecordingBenchmark(directory, Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+			// warm up
+			bench.recorder(RawRecorder.SyncPolicy.NONE);
+			bench.fileOutputStream(false);
+
+			System.out.println(size+", "+bench.count+" frames to "+directory);
+			bench.checkPadded(ByteOrder.LITTLE_ENDIAN);
+			bench.checkPadded(ByteOrder.BIG_ENDIAN);
+			bench.print("FileOutputStream", bench.fileOutputStream(false));
+			bench.print("FileOutputStream + sync", bench.fileOutputStream(true));
+			bench.print("RawRecorder, sync none", bench.recorder(RawRecorder.SyncPolicy.NONE));
+			bench.print("RawRecorder, sync segment", bench.recorder(RawRecorder.SyncPolicy.SEGMENT));
+			bench.print("RawRecorder, sync every 64", bench.recorder(RawRecorder.SyncPolicy.INTERVAL));
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package tests;
+
+import java.util.Random;
+
+import jpurethermal.Roi;
+import jpurethermal.RoiEngine;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Compares the per frame cost of the statistics of many regions of interest
+ * computed by rescanning their pixels with the {@link RoiEngine}, for
+ * regions of random sizes from 8x8 to a quarter of the frame. Also checks
+ * that both give the same results.
+ */
+public class RoiBenchmark {
+	private static final String[] DEFAULT_SIZES = {"160x120", "640x480"};
+	private static final int[] ROI_COUNTS = {10, 100, 500};
+
+	private final ThermalFrame frame;
+	private final RoiEngine engine = new RoiEngine();
+	private final Roi[] rois;
+	private final double[] means, variances;
+	private final float[] mins, maxs;
+
+	public RoiBenchmark(int width, int height, int count) {
+		frame = new ThermalFrame(width, height);
+		new SyntheticScene(width, height).render(0, frame.getRaw(), 0, width);
+		frame.rawChanged();
+		Random random = new Random(42);
+		engine.setSeriesCapacity(16);
+		for (int i = 0; i < count; i++) {
+			int w = 8+random.nextInt(Math.max(1, width/4-8));
+			int h = 8+random.nextInt(Math.max(1, height/4-8));
+			engine.addRoi("roi"+i, random.nextInt(width-w), random.nextInt(height-h), w, h);
+		}
+		rois = engine.getRois();
+		means = new double[count];
+		variances = new double[count];
+		mins = new float[count];
+		maxs = new float[count];
+	}
+
+	private void rescan() {
+		float[] t = frame.getTemperatures();
+		for (int r = 0; r < rois.length; r++) {
+			Roi roi = rois[r];
+			double sum = 0, squares = 0;
+			float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+			for (int y = roi.getY(); y < roi.getY()+roi.getHeight(); y++) {
+				int row = frame.index(0, y);
+				for (int x = roi.getX(); x < roi.getX()+roi.getWidth(); x++) {
+					float v = t[row+x];
+					sum += v;
+					squares += v*v;
+					if (v < min) min = v;
+					if (v > max) max = v;
+				}
+			}
+			int n = roi.getWidth()*roi.getHeight();
+			means[r] = sum/n;
+			variances[r] = squares/n-means[r]*means[r];
+			mins[r] = min;
+			maxs[r] = max;
+		}
+	}
+
+	private void run() {
+		double rescanUs = Measurement.of(n -> rescan()).getMicros();
+		double engineUs = Measurement.of(n -> engine.compute(frame)).getMicros();
+		double buildUs = engine.getBuildNanos()/1000.0;
+
+		double meanError = 0, varianceError = 0, minMaxError = 0;
+		for (int r = 0; r < rois.length; r++) {
+			meanError = Math.max(meanError, Math.abs(rois[r].getMean()-means[r]));
+			varianceError = Math.max(varianceError, Math.abs(rois[r].getVariance()-variances[r]));
+			minMaxError = Math.max(minMaxError, Math.max(Math.abs(rois[r].getMin()-mins[r]), Math.abs(rois[r].getMax()-maxs[r])));
+		}
+		System.out.println(String.format("  %4d regions: rescan %9.1f us/frame, engine %8.1f us/frame (tables %6.1f us), %5.1fx"
+				+ "  max error mean %.1e variance %.1e min/max %.1e",
+				rois.length, rescanUs, engineUs, buildUs, rescanUs/engineUs, meanError, varianceError, minMaxError));
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, DEFAULT_SIZES, (w, h) -> {
+			System.out.println(w+"x"+h);
+			for (int count : ROI_COUNTS) {
+				new RoiBenchmark(w, h, count).run();
+			}
+			return 0;
+		});
+	}
+
+}
@@ -0,0 +1,208 @@
+package tests;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jpurethermal.AnalysisSnapshot;
+import jpurethermal.Radiometry;
+import jpurethermal.SnapshotPool;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Publishes snapshots as fast as possible while readers acquire the latest
+ * one and check it: every value of the image, range, histogram and
+ * projections is derived from the sequence of the frame, so a snapshot
+ * filled while read shows values of two frames. The readers also check that
+ * the versions they see never go back, and the allocation of the writer and
+ * of the readers is measured.
+ * <p>
+ * Then runs the same readers on a single snapshot filled in place, to show
+ * that the check does see torn frames. The number of readers and the seconds
+ * of each run can be given as arguments, like 4 5.
+ */
+public class SnapshotStressTest {
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final int BINS = 128;
+	private static final int WARMUP_READS = 1000;
+	private static final float[] CELSIUS = Radiometry.linearTable(ThermalFrame.KELVIN_OFFSET, ThermalFrame.CENTI);
+
+	private static final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final int readerCount;
+	private final long durationNanos;
+
+	public SnapshotStressTest(int readerCount, int seconds) {
+		this.readerCount = readerCount;
+		this.durationNanos = seconds*1_000_000_000L;
+	}
+
+	/**
+	 * Fills the frame and the results of frame k.
+	 */
+	private static class Writer {
+		final ThermalFrame frame = new ThermalFrame(WIDTH, HEIGHT);
+		final double[] histogramX = new double[BINS];
+		final double[] histogramY = new double[BINS];
+		final double[][] horProjection = new double[HEIGHT][BINS];
+		final double[][] vertProjection = new double[BINS][WIDTH];
+		long k = 0;
+
+		void fill(AnalysisSnapshot snapshot) {
+			int base = (int) (k%1000);
+			short[] raw = frame.getRaw();
+			for (int i = 0; i < raw.length; i++) raw[i] = (short) (27315+base+i%7);
+			frame.rawChanged();
+			frame.setSequence(k);
+			for (int j = 0; j < BINS; j++) {
+				histogramX[j] = k+j;
+				histogramY[j] = 2*k+j;
+				Arrays.fill(vertProjection[j], base);
+			}
+			for (double[] row : horProjection) Arrays.fill(row, base);
+			snapshot.fill(frame, k, k+0.5, histogramX, histogramY, horProjection, vertProjection);
+			k++;
+		}
+	}
+
+	/**
+	 * True if the values of the snapshot are not all of its sequence.
+	 */
+	private static boolean torn(AnalysisSnapshot s) {
+		long k = s.getSequence();
+		int base = (int) (k%1000);
+		if (s.getPixMin() != k || s.getPixMax() != k+0.5 || s.getImageMin() != k || s.getImageMax() != k+0.5) return true;
+		double[] image = s.getImage();
+		for (int i = 0; i < image.length; i++) {
+			if (image[i] != CELSIUS[27315+base+i%7]) return true;
+		}
+		double[] x = s.getHistogramX(), y = s.getHistogramY();
+		for (int j = 0; j < x.length; j++) {
+			if (x[j] != k+j || y[j] != 2*k+j) return true;
+		}
+		for (double v : s.getHorProjection()) if (v != base) return true;
+		for (double v : s.getVertProjection()) if (v != base) return true;
+		return s.getSequence() != k;
+	}
+
+	private interface Source {
+		AnalysisSnapshot acquire();
+		void release(AnalysisSnapshot s);
+	}
+
+	private class Reader extends Thread {
+		final Source source;
+		final AtomicBoolean running;
+		long reads, tornReads, backwards, bytes;
+
+		Reader(Source source, AtomicBoolean running) {
+			this.source = source;
+			this.running = running;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long lastVersion = -1;
+			long startBytes = 0;
+			while (running.get()) {
+				if (reads == WARMUP_READS) startBytes = threadBean.getThreadAllocatedBytes(getId());
+				AnalysisSnapshot s = source.acquire();
+				if (s == null) continue;
+				if (torn(s)) tornReads++;
+				if (s.getVersion() < lastVersion) backwards++;
+				lastVersion = s.getVersion();
+				reads++;
+				source.release(s);
+			}
+			if (reads > WARMUP_READS) bytes = threadBean.getThreadAllocatedBytes(getId())-startBytes;
+		}
+	}
+
+	/**
+	 * @return the torn reads and versions going back
+	 */
+	private long run(String name, Source source, Runnable writeOne) throws InterruptedException {
+		AtomicBoolean running = new AtomicBoolean(true);
+		Reader[] readers = new Reader[readerCount];
+		for (int i = 0; i < readerCount; i++) {
+			readers[i] = new Reader(source, running);
+			readers[i].start();
+		}
+		long writerId = Thread.currentThread().getId();
+		long start = System.nanoTime();
+		// the snapshots take their size in the first frames
+		long warmEnd = start+durationNanos/10, end = start+durationNanos;
+		for (int n = 0; n < 4*(readerCount+2) || System.nanoTime() < warmEnd; n++) writeOne.run();
+		long frames = 0;
+		long startBytes = threadBean.getThreadAllocatedBytes(writerId);
+		while (System.nanoTime() < end) {
+			writeOne.run();
+			frames++;
+		}
+		long writerBytes = threadBean.getThreadAllocatedBytes(writerId)-startBytes;
+		running.set(false);
+		long reads = 0, torn = 0, backwards = 0, readerBytes = 0, measuredReads = 0;
+		for (Reader r : readers) {
+			r.join();
+			reads += r.reads;
+			torn += r.tornReads;
+			backwards += r.backwards;
+			readerBytes += r.bytes;
+			measuredReads += Math.max(0, r.reads-WARMUP_READS);
+		}
+		System.out.println(String.format("  %-10s %8d frames %9d reads %7d torn %3d back   writer %d B/frame, readers %.3f B/read",
+				name, frames, reads, torn, backwards, frames > 0 ? writerBytes/frames : 0, measuredReads > 0 ? (double) readerBytes/measuredReads : 0));
+		return torn+backwards;
+	}
+
+	private long run() throws InterruptedException {
+		System.out.println(readerCount+" readers, "+Runtime.getRuntime().availableProcessors()+" processors");
+		SnapshotPool pool = new SnapshotPool(readerCount+2);
+		Writer poolWriter = new Writer();
+		long errors = run("pool", new Source() {
+			@Override
+			public AnalysisSnapshot acquire() {
+				return pool.acquire();
+			}
+			@Override
+			public void release(AnalysisSnapshot s) {
+				pool.release(s);
+			}
+		}, () -> {
+			AnalysisSnapshot back = pool.getBackBuffer();
+			if (back == null) {
+				Thread.yield();
+				return;
+			}
+			poolWriter.fill(back);
+			pool.publish();
+		});
+		System.out.println("  "+pool.getPublishedCount()+" published, "+pool.getSkippedCount()+" skipped with all snapshots held");
+
+		AnalysisSnapshot shared = new AnalysisSnapshot();
+		Writer sharedWriter = new Writer();
+		sharedWriter.fill(shared);
+		run("in place", new Source() {
+			@Override
+			public AnalysisSnapshot acquire() {
+				return shared;
+			}
+			@Override
+			public void release(AnalysisSnapshot s) {
+			}
+		}, () -> sharedWriter.fill(shared));
+		return errors;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int readers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		long errors = new SnapshotStressTest(readers, seconds).run();
+		System.out.println(errors == 0 ? "no torn snapshot" : errors+" ERRORS");
+		if (errors > 0) System.exit(1);
+	}
+
+}
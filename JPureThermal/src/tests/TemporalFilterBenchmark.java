@@ -0,0 +1,94 @@
+package tests;
+
+import jpurethermal.SyntheticScene;
+import jpurethermal.TemporalFilter;
+import jpurethermal.ThermalFrame;
+
+/**
+ * Time and allocation per frame of the modes of the {@link TemporalFilter},
+ * and the noise left in the filtered frames of a still scene: RMS difference
+ * to the same scene rendered without noise, in degrees.
+ */
+public class TemporalFilterBenchmark {
+	// enough frames of noise to settle the longest windows
+	private static final int NOISY_FRAMES = 32;
+
+	private final int width, height;
+	private final short[][] noisy = new short[NOISY_FRAMES][];
+	private final float[] clean;
+	private final ThermalFrame frame;
+	private float[] temperatures;
+
+	public TemporalFilterBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		frame = new ThermalFrame(width, height);
+		SyntheticScene scene = new SyntheticScene(width, height);
+		// the same frame, with new noise each time
+		for (int i = 0; i < NOISY_FRAMES; i++) {
+			noisy[i] = new short[width*height];
+			scene.render(0, noisy[i], 0, width);
+		}
+		scene.setNoise(0);
+		ThermalFrame reference = new ThermalFrame(width, height);
+		scene.render(0, reference.getRaw(), 0, width);
+		clean = reference.getTemperatures();
+	}
+
+	private float[] next(long n) {
+		System.arraycopy(Measurement.cycle(noisy, n), 0, frame.getRaw(), 0, width*height);
+		frame.rawChanged();
+		return frame.getTemperatures();
+	}
+
+	private void measure(String label, TemporalFilter filter) {
+		// time of the filter only, the conversion of the next frame excluded
+		Measurement m = Measurement.of(n -> temperatures = next(n), n -> filter.apply(temperatures));
+		// the filter settled, over the frames of the scene
+		double squares = 0;
+		for (int i = 0; i < NOISY_FRAMES; i++) {
+			float[] t = next(i);
+			filter.apply(t);
+			squares += squareError(t, clean);
+		}
+		double rms = Math.sqrt(squares/NOISY_FRAMES/(width*height));
+		System.out.println(String.format("  %-18s %s  noise %5.3f \u00B0C rms", label, m.perFrame(width*height), rms));
+	}
+
+	private static double squareError(float[] t, float[] reference) {
+		double sum = 0;
+		for (int i = 0; i < t.length; i++) {
+			double d = t[i]-reference[i];
+			sum += d*d;
+		}
+		return sum;
+	}
+
+	private void run() {
+		System.out.println(width+"x"+height);
+		measure("none", new TemporalFilter());
+		for (float alpha : new float[] {0.5f, 0.25f}) {
+			TemporalFilter filter = new TemporalFilter(TemporalFilter.Mode.EMA);
+			filter.setAlpha(alpha);
+			measure("ema alpha "+alpha, filter);
+		}
+		for (int window : new int[] {4, 8}) {
+			TemporalFilter filter = new TemporalFilter(TemporalFilter.Mode.MEAN);
+			filter.setWindow(window);
+			measure("mean of "+window, filter);
+		}
+		for (int window : new int[] {3, 5, 7}) {
+			TemporalFilter filter = new TemporalFilter(TemporalFilter.Mode.MEDIAN);
+			filter.setWindow(window);
+			measure("median of "+window, filter);
+		}
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, Measurement.SIZES, (w, h) -> {
+			new TemporalFilterBenchmark(w, h).run();
+			return 0;
+		});
+	}
+
+}
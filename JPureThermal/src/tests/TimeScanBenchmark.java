@@ -0,0 +1,134 @@
+package tests;
+
+import jpurethermal.PureThermalAppSinkListener;
+import jpurethermal.Radiometry;
+import jpurethermal.SyntheticScene;
+import jpurethermal.ThermalAnalyzer;
+import jpurethermal.ThermalFrame;
+import jpurethermal.TimeScan;
+import jpurethermal.TimeScanComponent;
+
+/**
+ * Checks the lines recorded by the {@link TimeScan} in each mode against the
+ * frames, with the linear conversion and with a radiometry, and that a full
+ * ring keeps exactly the last lines. Then measures the time and allocation
+ * per frame of recording a line and of colouring it into the waterfall of a
+ * {@link TimeScanComponent}, and the heap of the history.
+ */
+public class TimeScanBenchmark {
+	private static final String[] DEFAULT_SIZES = {"160x120", "640x480"};
+	private static final double LEPTON_RATE = 8.7;
+
+	private final int width, height;
+	private final ThermalFrame[] frames;
+	private final ThermalAnalyzer analyzer = new ThermalAnalyzer(PureThermalAppSinkListener.HISTOGRAM_RESOLUTION);
+	private int errors;
+
+	public TimeScanBenchmark(int width, int height) {
+		this.width = width;
+		this.height = height;
+		frames = Measurement.frames(new SyntheticScene(width, height), 10);
+	}
+
+	/**
+	 * The value expected at i of the line of the frame, compared as temperatures for the max modes.
+	 */
+	private float expected(ThermalFrame frame, TimeScan.Mode mode, int position, int i) {
+		switch (mode) {
+		case ROW:
+			return frame.getTemperature(i, position);
+		case COLUMN:
+			return frame.getTemperature(position, i);
+		case ROW_MAX:
+			float max = -Float.MAX_VALUE;
+			for (int x = 0; x < width; x++) max = Math.max(max, frame.getTemperature(x, i));
+			return max;
+		default:
+			max = -Float.MAX_VALUE;
+			for (int y = 0; y < height; y++) max = Math.max(max, frame.getTemperature(i, y));
+			return max;
+		}
+	}
+
+	private void check(String conversion, Radiometry radiometry) {
+		int bad = 0;
+		for (TimeScan.Mode mode : TimeScan.Mode.values()) {
+			TimeScan scan = new TimeScan(frames.length);
+			scan.setMode(mode);
+			scan.setPosition(mode == TimeScan.Mode.ROW ? height/3 : width/3);
+			short[] line = new short[Math.max(width, height)];
+			for (ThermalFrame frame : frames) {
+				frame.setRadiometry(radiometry);
+				scan.result(frame, analyzer);
+				long n = scan.getCount()-1;
+				scan.readLine(scan.getGeneration(), n, line);
+				for (int i = 0; i < scan.getLength(); i++) {
+					if (frame.toTemperature(line[i]) != expected(frame, mode, scan.getRecordedPosition(), i)) bad++;
+				}
+			}
+		}
+		System.out.println("  "+conversion+": "+(bad == 0 ? "same lines" : bad+" WRONG VALUES"));
+		errors += bad;
+		for (ThermalFrame frame : frames) frame.setRadiometry(null);
+	}
+
+	private void checkRing() {
+		int capacity = 100;
+		TimeScan scan = new TimeScan(capacity);
+		scan.setMode(TimeScan.Mode.ROW);
+		short[] line = new short[width];
+		int bad = 0;
+		for (int n = 0; n < 2*capacity+50; n++) {
+			ThermalFrame frame = Measurement.cycle(frames, n);
+			frame.setTimestamp(n);
+			scan.result(frame, analyzer);
+		}
+		long count = scan.getCount();
+		long g = scan.getGeneration();
+		if (scan.readLine(g, count-capacity-1, line) || scan.readLine(g, count, line)) bad++;
+		for (long n = count-capacity; n < count; n++) {
+			if (!scan.readLine(g, n, line) || scan.getTimestamp(n) != n) bad++;
+			ThermalFrame frame = Measurement.cycle(frames, n);
+			for (int x = 0; x < width; x++) {
+				if (line[x] != frame.getRaw()[frame.index(x, height/2)]) bad++;
+			}
+		}
+		scan.setMode(TimeScan.Mode.COLUMN);
+		scan.result(frames[0], analyzer);
+		if (scan.getGeneration() == g || scan.getCount() != 1 || scan.readLine(g, 0, line)) bad++;
+		System.out.println("  ring: "+(bad == 0 ? "last "+capacity+" lines kept, cleared on change" : bad+" ERRORS"));
+		errors += bad;
+	}
+
+	private int run() {
+		System.out.println(width+"x"+height);
+		check("linear", null);
+		Radiometry radiometry = new Radiometry();
+		// not linear, compared through the table
+		radiometry.setEmissivity(0.95);
+		check("radiometry", radiometry);
+		checkRing();
+		for (TimeScan.Mode mode : TimeScan.Mode.values()) {
+			TimeScan scan = new TimeScan();
+			scan.setMode(mode);
+			Measurement.of(n -> scan.result(Measurement.cycle(frames, n), analyzer)).print(mode+", record", width*height);
+		}
+		TimeScan scan = new TimeScan();
+		TimeScanComponent component = new TimeScanComponent(scan);
+		Measurement.of(n -> {
+			scan.result(Measurement.cycle(frames, n), analyzer);
+			component.update(20, 40);
+		}).print("ROW_MAX, record and colour", width*height);
+		for (int length : new int[] {width, height}) {
+			long bytes = scan.getHistoryBytes(length);
+			System.out.println(String.format("  history of %d lines of %d values: %.1f MB, %.1f h at %.1f frames/s",
+					scan.getCapacity(), length, bytes/1e6, scan.getCapacity()/LEPTON_RATE/3600, LEPTON_RATE));
+		}
+		return errors;
+	}
+
+	public static void main(String[] args) {
+		Measurement.run(args, DEFAULT_SIZES, (w, h) -> new TimeScanBenchmark(w, h).run());
+	}
+
+}